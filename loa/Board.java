@@ -1,7 +1,7 @@
 
 package loa;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Formatter;
 import java.util.NoSuchElementException;
@@ -11,15 +11,25 @@ import static loa.Piece.*;
 import static loa.Direction.*;
 
 /** Represents the state of a game of Lines of Action.
+ *
+ *  A board may have any size supported by Geometry; the standard size is
+ *  M.  The pieces are kept as bit sets in the layout the Geometry
+ *  chooses: one long per side for sizes up to 8, and two (a low and a
+ *  high word) for larger ones.  The choice is made when the size is set,
+ *  and the move generator works directly on either layout.
  *  @author Peter Lee
  */
 class Board implements Iterable<Move> {
 
-    /** Size of a board. */
+    /** Size of a standard board. */
     static final int M = 8;
 
-    /** Pattern describing a valid square designator (cr). */
-    static final Pattern ROW_COL = Pattern.compile("^[a-h][1-8]$");
+    /** Number of squares on a standard board. */
+    static final int SQUARES = M * M;
+
+    /** Pattern describing a valid square designator (cr) on a board of
+     *  any supported size. */
+    static final Pattern ROW_COL = Pattern.compile("^[a-j](10|[1-9])$");
 
     /** Directions array that holds all possible directions. */
     static final Direction[] DIRECTIONS =
@@ -31,7 +41,8 @@ class Board implements Iterable<Move> {
      *  and in which the player playing TURN is to move. The resulting
      *  Board has
      *        get(col, row) == INITIALCONTENTS[row-1][col-1]
-     *  Assumes that PLAYER is not null and INITIALCONTENTS is MxM.
+     *  Assumes that PLAYER is not null and INITIALCONTENTS is NxN for
+     *  some size N supported by Geometry.
      *
      *  CAUTION: The natural written notation for arrays initializers puts
      *  the BOTTOM row of INITIALCONTENTS at the top.
@@ -42,7 +53,13 @@ class Board implements Iterable<Move> {
 
     /** A new board in the standard initial position. */
     Board() {
+        this(M);
+    }
 
+    /** A new SIZE x SIZE board in its initial position.  Throws
+     *  IllegalArgumentException if Geometry does not support SIZE. */
+    Board(int size) {
+        setGeometry(Geometry.of(size));
         clear();
     }
 
@@ -52,57 +69,210 @@ class Board implements Iterable<Move> {
         copyFrom(board);
     }
 
-    /** Set my state to CONTENTS with SIDE to move. */
+    /** A Board whose contents and side to move are copied from BOARD.
+     *  The move history is copied as well iff HISTORY. */
+    Board(Board board, boolean history) {
+        copyFrom(board, history);
+    }
+
+    /** A Board in position POSITION, with no move history. */
+    Board(Position position) {
+        copyFrom(position);
+    }
+
+    /** Set my state to CONTENTS with SIDE to move.  My size becomes that
+     *  of CONTENTS. */
     void initialize(Piece[][] contents, Piece side) {
-        _moves.clear();
-        _currentBoard = new Piece[M][M];
-        for (int r = 1; r <= M; r += 1) {
-            for (int c = 1; c <= M; c += 1) {
+        setGeometry(Geometry.of(contents.length));
+        _ply = 0;
+        _black = _white = _blackHigh = _whiteHigh = 0;
+        if (_wide) {
+            Arrays.fill(_lines, 0);
+        }
+        _key = 0;
+        _turn = BP;
+        for (int r = 1; r <= contents.length; r += 1) {
+            for (int c = 1; c <= contents.length; c += 1) {
                 set(c, r, contents[r - 1][c - 1]);
             }
         }
-        _turn = side;
+        setTurn(side);
     }
 
-    /** Set me to the initial configuration. */
+    /** Set me to the initial configuration for my size. */
     void clear() {
-        initialize(INITIAL_PIECES, BP);
+        initialize(_geometry.initialContents(), BP);
+    }
+
+    /** Make GEOMETRY my shape, if it is not already. */
+    private void setGeometry(Geometry geometry) {
+        if (geometry != _geometry) {
+            _geometry = geometry;
+            _table = geometry.lines();
+            _wide = geometry.wide();
+            _lines = _wide ? new int[2 * _table.lineCount()] : null;
+        }
+    }
+
+    /** Return my size (the number of rows and of columns). */
+    int size() {
+        return _geometry.size();
+    }
+
+    /** Return my shape. */
+    Geometry geometry() {
+        return _geometry;
     }
 
     /** Set my state to a copy of BOARD. */
     void copyFrom(Board board) {
-        _currentBoard = new Piece[M][M];
+        copyFrom(board, true);
+    }
+
+    /** Set my contents and side to move to those of BOARD.  Copy BOARD's
+     *  move history as well iff HISTORY; otherwise, start with an empty
+     *  history.  Without history, this costs a handful of word copies,
+     *  which makes it suitable for forking positions in copy-make
+     *  searches. */
+    void copyFrom(Board board, boolean history) {
         if (board == this) {
+            if (!history) {
+                clearHistory();
+            }
             return;
         }
-        _moves.clear();
-        _moves.addAll(board._moves);
+        setGeometry(board._geometry);
+        _black = board._black;
+        _white = board._white;
+        _blackHigh = board._blackHigh;
+        _whiteHigh = board._whiteHigh;
+        if (_wide) {
+            System.arraycopy(board._lines, 0, _lines, 0, _lines.length);
+        }
         _turn = board._turn;
-        for (int r = 1; r <= _currentBoard.length; r += 1) {
-            for (int c = 1;
-                 c <= _currentBoard.length; c += 1) {
-                this._currentBoard[r - 1][c - 1]
-                        = board._currentBoard[r - 1][c - 1];
+        _key = board._key;
+        if (history) {
+            copyHistory(board);
+        } else {
+            clearHistory();
+        }
+    }
+
+    /** Set my state to POSITION, with no move history. */
+    void copyFrom(Position position) {
+        setGeometry(position.geometry());
+        _black = position.black();
+        _white = position.white();
+        _blackHigh = position.blackHigh();
+        _whiteHigh = position.whiteHigh();
+        _turn = position.turn();
+        _key = position.key();
+        if (_wide) {
+            Arrays.fill(_lines, 0);
+            for (int sq = 0; sq < _geometry.bits(); sq += 1) {
+                Piece p = pieceAt(sq);
+                if (p != EMP) {
+                    toggleLines(p.ordinal(), sq);
+                }
             }
         }
+        clearHistory();
+    }
+
+    /** Set my state to a copy of BOARD with no history, and then make
+     *  MOVE, which must be legal on BOARD (copy-make). */
+    void copyMake(Board board, Move move) {
+        copyFrom(board, false);
+        makeMove(move);
+    }
+
+    /** Return a snapshot of my current contents and side to move. */
+    Position position() {
+        return new Position(_geometry, _black, _white, _blackHigh,
+                            _whiteHigh, _turn, _key);
+    }
+
+    /** Copy the undo stack of BOARD into mine. */
+    private void copyHistory(Board board) {
+        _ply = board._ply;
+        ensureCapacity(_ply);
+        System.arraycopy(board._undoMoves, 0, _undoMoves, 0, _ply);
+        System.arraycopy(board._undoKeys, 0, _undoKeys, 0, _ply);
+        System.arraycopy(board._undoBlack, 0, _undoBlack, 0, _ply);
+        System.arraycopy(board._undoWhite, 0, _undoWhite, 0, _ply);
+        System.arraycopy(board._undoBlackHigh, 0, _undoBlackHigh, 0, _ply);
+        System.arraycopy(board._undoWhiteHigh, 0, _undoWhiteHigh, 0, _ply);
+        System.arraycopy(board._undoTurns, 0, _undoTurns, 0, _ply);
+    }
+
+    /** Forget all moves made so far, keeping the current position. */
+    private void clearHistory() {
+        Arrays.fill(_undoMoves, 0, _ply, null);
+        _ply = 0;
+    }
+
+    /** Return the square index (a value in the range 0 .. SQUARES - 1)
+     *  of column C, row R on a standard board, where 1 <= C,R <= M.
+     *  Squares are numbered by rows, starting from a1.  This is also the
+     *  index in the narrow layout of any smaller board; see Geometry.sq
+     *  for boards of arbitrary size. */
+    static int sq(int c, int r) {
+        return (r - 1) * M + c - 1;
     }
 
-    /** Return the contents of column C, row R, where 1 <= C,R <= 8,
+    /** Return the column number (1 .. M) of square index SQ. */
+    static int sqCol(int sq) {
+        return sq % M + 1;
+    }
+
+    /** Return the row number (1 .. M) of square index SQ. */
+    static int sqRow(int sq) {
+        return sq / M + 1;
+    }
+
+    /** Return the contents of column C, row R, where 1 <= C,R <= size(),
      *  where column 1 corresponds to column 'a' in the standard
      *  notation. */
     Piece get(int c, int r) {
-        return _currentBoard[r - 1][c - 1];
+        return pieceAt(_geometry.sq(c, r));
+    }
+
+    /** Return the contents of the square with index SQ in my layout. */
+    private Piece pieceAt(int sq) {
+        long b = 1L << sq;
+        if (sq < WORD) {
+            return (_black & b) != 0 ? BP : (_white & b) != 0 ? WP : EMP;
+        } else {
+            return (_blackHigh & b) != 0 ? BP
+                : (_whiteHigh & b) != 0 ? WP : EMP;
+        }
+    }
+
+    /** Return the set of squares occupied by SIDE, as a bit set in which
+     *  bit geometry().sq(c, r) corresponds to column C, row R.  In the
+     *  wide layout, this is the low word of the set. */
+    long bits(Piece side) {
+        return side == BP ? _black : side == WP ? _white : 0;
+    }
+
+    /** Return the high word of the set of squares occupied by SIDE in the
+     *  wide layout, in which bit geometry().sq(c, r) - 64 corresponds to
+     *  column C, row R.  This is always 0 in the narrow layout. */
+    long bitsHigh(Piece side) {
+        return side == BP ? _blackHigh : side == WP ? _whiteHigh : 0;
     }
 
     /** Return the contents of the square SQ.  SQ must be the
-     *  standard printed designation of a square (having the form cr,
-     *  where c is a letter from a-h and r is a digit from 1-8). */
+     *  standard printed designation of a square on this board (having
+     *  the form cr, where c is a letter from a-j and r is a numeral from
+     *  1-10). */
     Piece get(String sq) {
         return get(col(sq), row(sq));
     }
 
-    /** Return the column number (a value in the range 1-8) for SQ.
-     *  SQ is as for {@link get(String)}. */
+    /** Return the column number (a value in the range 1-10) for SQ.
+     *  SQ is as for {@link get(String)}, except that it need not lie on
+     *  any particular board. */
     static int col(String sq) {
         if (!ROW_COL.matcher(sq).matches()) {
             throw new IllegalArgumentException("bad square designator");
@@ -110,21 +280,52 @@ class Board implements Iterable<Move> {
         return sq.charAt(0) - 'a' + 1;
     }
 
-    /** Return the row number (a value in the range 1-8) for SQ.
-     *  SQ is as for {@link get(String)}. */
+    /** Return the row number (a value in the range 1-10) for SQ.
+     *  SQ is as for {@link col(String)}. */
     static int row(String sq) {
         if (!ROW_COL.matcher(sq).matches()) {
             throw new IllegalArgumentException("bad square designator");
         }
-        return sq.charAt(1) - '0';
+        return Integer.parseInt(sq.substring(1));
     }
 
     /** Set the square at column C, row R to V, and make NEXT the next side
      *  to move, if it is not null. */
     void set(int c, int r, Piece v, Piece next) {
-        _currentBoard[r - 1][c - 1] = v;
+        int sq = _geometry.sq(c, r);
+        Piece old = pieceAt(sq);
+        if (old != v) {
+            long b = 1L << sq;
+            if (old != EMP) {
+                _key ^= _geometry.zobrist(old.ordinal(), sq);
+                if (_wide) {
+                    toggleLines(old.ordinal(), sq);
+                }
+            }
+            if (v != EMP) {
+                _key ^= _geometry.zobrist(v.ordinal(), sq);
+                if (_wide) {
+                    toggleLines(v.ordinal(), sq);
+                }
+            }
+            if (sq < WORD) {
+                _black = v == BP ? _black | b : _black & ~b;
+                _white = v == WP ? _white | b : _white & ~b;
+            } else {
+                _blackHigh = v == BP ? _blackHigh | b : _blackHigh & ~b;
+                _whiteHigh = v == WP ? _whiteHigh | b : _whiteHigh & ~b;
+            }
+        }
         if (next != null) {
-            _turn = next;
+            setTurn(next);
+        }
+    }
+
+    /** Make SIDE the side to move, keeping my key up to date. */
+    private void setTurn(Piece side) {
+        if (side != _turn) {
+            _key ^= _geometry.zobristTurn();
+            _turn = side;
         }
     }
 
@@ -133,34 +334,149 @@ class Board implements Iterable<Move> {
         set(c, r, v, null);
     }
 
+    /** Add or remove (whichever applies) a piece with ordinal PIECE on
+     *  square SQ in the line patterns of the wide layout. */
+    private void toggleLines(int piece, int sq) {
+        int base = piece * _table.lineCount();
+        for (int line = 0; line < LineTable.LINES; line += 1) {
+            _lines[base + _table.lineIndex(line, sq)] ^=
+                1 << _table.position(line, sq);
+        }
+    }
+
     /** Assuming isLegal(MOVE), make MOVE. */
     void makeMove(Move move) {
         assert isLegal(move);
-        _moves.add(move);
-        Piece replaced = move.replacedPiece();
-        int c0 = move.getCol0(), c1 = move.getCol1();
-        int r0 = move.getRow0(), r1 = move.getRow1();
-        if (replaced != EMP) {
-            set(c1, r1, EMP);
-        }
-        set(c1, r1, move.movedPiece());
-        set(c0, r0, EMP);
+        push(move);
+        int from = _geometry.sq(move.getCol0(), move.getRow0()),
+            to = _geometry.sq(move.getCol1(), move.getRow1());
+        int moved = move.movedPiece().ordinal(),
+            replaced = move.replacedPiece().ordinal();
+        _key = keyAfter(move);
+        flip(moved, from);
+        flip(moved, to);
+        if (replaced != EMP.ordinal()) {
+            flip(replaced, to);
+        }
         _turn = _turn.opposite();
+    }
 
+    /** Add or remove (whichever applies) a piece with ordinal PIECE on
+     *  square SQ, without changing the key. */
+    private void flip(int piece, int sq) {
+        long b = 1L << sq;
+        if (sq < WORD) {
+            if (piece == BP.ordinal()) {
+                _black ^= b;
+            } else {
+                _white ^= b;
+            }
+        } else if (piece == BP.ordinal()) {
+            _blackHigh ^= b;
+        } else {
+            _whiteHigh ^= b;
+        }
+        if (_wide) {
+            toggleLines(piece, sq);
+        }
+    }
+
+    /** Give the move to the other side without moving a piece.  This is
+     *  not a legal move in the game; it is a "null move" for searches
+     *  that ask what the opponent could do if given two moves in a row.
+     *  Like a normal move, it is undone by retract, and lastMove
+     *  returns null until it is. */
+    void pass() {
+        push(null);
+        setTurn(_turn.opposite());
     }
 
     /** Retract (unmake) one move, returning to the state immediately before
-     *  that move.  Requires that movesMade () > 0. */
+     *  that move.  Requires that movesMade () > 0.  The position and its
+     *  derived state are restored from the undo stack rather than
+     *  recomputed, so this takes constant time and never allocates. */
     void retract() {
         assert movesMade() > 0;
-        Move move = _moves.remove(_moves.size() - 1);
-        Piece replaced = move.replacedPiece();
-        int c0 = move.getCol0(), c1 = move.getCol1();
-        int r0 = move.getRow0(), r1 = move.getRow1();
-        Piece movedPiece = move.movedPiece();
-        set(c1, r1, replaced);
-        set(c0, r0, movedPiece);
-        _turn = _turn.opposite();
+        _ply -= 1;
+        Move move = _undoMoves[_ply];
+        _undoMoves[_ply] = null;
+        if (_wide && move != null) {
+            int from = _geometry.sq(move.getCol0(), move.getRow0()),
+                to = _geometry.sq(move.getCol1(), move.getRow1());
+            int moved = move.movedPiece().ordinal();
+            toggleLines(moved, from);
+            toggleLines(moved, to);
+            if (move.replacedPiece() != EMP) {
+                toggleLines(move.replacedPiece().ordinal(), to);
+            }
+        }
+        _black = _undoBlack[_ply];
+        _white = _undoWhite[_ply];
+        _blackHigh = _undoBlackHigh[_ply];
+        _whiteHigh = _undoWhiteHigh[_ply];
+        _key = _undoKeys[_ply];
+        _turn = _undoTurns[_ply];
+    }
+
+    /** Record MOVE and all of my current derived state on the undo
+     *  stack, in preparation for making MOVE. */
+    private void push(Move move) {
+        ensureCapacity(_ply + 1);
+        _undoMoves[_ply] = move;
+        _undoKeys[_ply] = _key;
+        _undoBlack[_ply] = _black;
+        _undoWhite[_ply] = _white;
+        _undoBlackHigh[_ply] = _blackHigh;
+        _undoWhiteHigh[_ply] = _whiteHigh;
+        _undoTurns[_ply] = _turn;
+        _ply += 1;
+    }
+
+    /** Make sure the undo stack can hold at least N entries.  Growth is
+     *  the only place the undo stack allocates. */
+    private void ensureCapacity(int n) {
+        if (n > _undoMoves.length) {
+            int size = Math.max(n, 2 * _undoMoves.length);
+            _undoMoves = Arrays.copyOf(_undoMoves, size);
+            _undoKeys = Arrays.copyOf(_undoKeys, size);
+            _undoBlack = Arrays.copyOf(_undoBlack, size);
+            _undoWhite = Arrays.copyOf(_undoWhite, size);
+            _undoBlackHigh = Arrays.copyOf(_undoBlackHigh, size);
+            _undoWhiteHigh = Arrays.copyOf(_undoWhiteHigh, size);
+            _undoTurns = Arrays.copyOf(_undoTurns, size);
+        }
+    }
+
+    /** Return the most recent unretracted move, or null if none or if it
+     *  was a pass. */
+    Move lastMove() {
+        return _ply == 0 ? null : _undoMoves[_ply - 1];
+    }
+
+    /** Return a 64-bit hash key of the current position (contents and
+     *  side to move).  Equal positions have equal keys. */
+    long key() {
+        return _key;
+    }
+
+    /** Return the key() that would result from making MOVE, which must
+     *  be legal, without making it. */
+    long keyAfter(Move move) {
+        int moved = move.movedPiece().ordinal(),
+            replaced = move.replacedPiece().ordinal();
+        int from = _geometry.sq(move.getCol0(), move.getRow0()),
+            to = _geometry.sq(move.getCol1(), move.getRow1());
+        long key = _key ^ _geometry.zobristTurn()
+            ^ _geometry.zobrist(moved, from) ^ _geometry.zobrist(moved, to);
+        if (replaced != EMP.ordinal()) {
+            key ^= _geometry.zobrist(replaced, to);
+        }
+        return key;
+    }
+
+    /** Return the number of SIDE's pieces on the board. */
+    int pieceCount(Piece side) {
+        return Long.bitCount(bits(side)) + Long.bitCount(bitsHigh(side));
     }
 
     /** Return the Piece representing who is next to move. */
@@ -170,23 +486,60 @@ class Board implements Iterable<Move> {
 
     /** Return true iff MOVE is legal for the player currently on move. */
     boolean isLegal(Move move) {
-        if (_turn == EMP) {
+        if (_turn == EMP || move == null
+            || !_geometry.inBounds(move.getCol0(), move.getRow0())
+            || !_geometry.inBounds(move.getCol1(), move.getRow1())) {
             return false;
-        } else if (move == null) {
+        }
+        int from = _geometry.sq(move.getCol0(), move.getRow0()),
+            to = _geometry.sq(move.getCol1(), move.getRow1());
+        if (pieceAt(from) != move.movedPiece()
+            || pieceAt(to) != move.replacedPiece()) {
+            return isLegalAlong(move);
+        }
+        if (move.movedPiece() != _turn) {
             return false;
-        } else if (pieceCountAlong(move) != move.length()) {
+        }
+        for (int line = 0; line < LineTable.LINES; line += 1) {
+            int t = targets(from, line);
+            if ((t & LineTable.NONE) == to || (t >>> 8) == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the destinations of a move of the side to move's piece on
+     *  square SQ along LINE, packed as for LineTable.targets. */
+    private int targets(int sq, int line) {
+        if (_wide) {
+            int count = _table.lineCount();
+            int own = _turn.ordinal() * count + _table.lineIndex(line, sq),
+                enemy = _turn.opposite().ordinal() * count
+                    + _table.lineIndex(line, sq);
+            return _table.lookup(sq, line, _lines[own], _lines[enemy]);
+        }
+        return _table.targets(sq, line, bits(_turn),
+                              bits(_turn.opposite()));
+    }
+
+    /** Return true iff MOVE is legal for the player currently on move,
+     *  counting and checking pieces along its line square by square.
+     *  Used for moves that were created on some other position. */
+    private boolean isLegalAlong(Move move) {
+        if (pieceCountAlong(move) != move.length()) {
             return false;
         } else if (blocked(move)) {
             return false;
         }
-        return move != null;
+        return true;
     }
 
    /** Function that checks if pieces are in bounds of the board.
     * @param i the pieces coordinates on board
     * @return i the integer coordinates*/
     boolean isInBounds(int i) {
-        return i >= 1 && i <= M;
+        return i >= 1 && i <= _geometry.size();
     }
 
 
@@ -195,6 +548,51 @@ class Board implements Iterable<Move> {
         return new MoveIterator();
     }
 
+    /** Store all legal moves from this position into MOVES, starting at
+     *  index 0, and return the number stored.  MOVES must have room for
+     *  MAX_MOVES moves.  Moves of each piece are produced in order of the
+     *  pieces' square indices; those of one piece are produced in the
+     *  order of GEN_ORDER. */
+    int legalMoves(Move[] moves) {
+        if (_turn == EMP) {
+            return 0;
+        }
+        long own = bits(_turn), enemy = bits(_turn.opposite());
+        int n = 0;
+        for (long b = own; b != 0; b &= b - 1) {
+            n = pieceMoves(Long.numberOfTrailingZeros(b), own, enemy, moves,
+                           n);
+        }
+        for (long b = bitsHigh(_turn); b != 0; b &= b - 1) {
+            n = pieceMoves(WORD + Long.numberOfTrailingZeros(b), own, enemy,
+                           moves, n);
+        }
+        return n;
+    }
+
+    /** Store the legal moves of the piece on square FROM into MOVES,
+     *  starting at index N, and return the index after the last one
+     *  stored.  OWN and ENEMY are the low words of the squares occupied
+     *  by the side to move and its opponent. */
+    private int pieceMoves(int from, long own, long enemy, Move[] moves,
+                           int n) {
+        int moved = _turn.ordinal();
+        int start = _geometry.universal(from);
+        for (int k = 0; k < GEN_ORDER.length; k += 2) {
+            int t = _wide ? targets(from, GEN_ORDER[k])
+                : _table.targets(from, GEN_ORDER[k], own, enemy);
+            int to = (t >>> GEN_ORDER[k + 1]) & LineTable.NONE;
+            if (to != LineTable.NONE) {
+                int replaced = pieceAt(to).ordinal();
+                moves[n] = Move.get(Move.index(start,
+                                               _geometry.universal(to),
+                                               moved, replaced));
+                n += 1;
+            }
+        }
+        return n;
+    }
+
     @Override
     public Iterator<Move> iterator() {
         return legalMoves();
@@ -214,59 +612,257 @@ class Board implements Iterable<Move> {
         return false;
     }
 
-    /** Return true iff SIDE's pieces are continguous. */
-    int piecesContiguous(Piece side) {
-        int counter = 0;
-        boolean[][] bitMap = new boolean[M][M];
-        for (int i = 0; isInBounds(i + 1); i++) {
-            for (int j = 0; isInBounds(j + 1); j++) {
-                if (!bitMap[i][j]) {
-                    bitMap[i][j] = true;
-                    if (_currentBoard[i][j] == side) {
-                        counter++;
-                        checkNeighbors(i, j, bitMap, side);
+    /** Return the side that has won in the current position, or null if
+     *  neither has.  A side wins when all its pieces are contiguous; if a
+     *  move leaves both sides contiguous, the side that made it wins. */
+    Piece winner() {
+        Piece mover = _turn.opposite();
+        if (piecesContiguous(mover) == 1) {
+            return mover;
+        } else if (piecesContiguous(_turn) == 1) {
+            return _turn;
+        } else {
+            return null;
+        }
+    }
+
+    /** Return a move that makes all pieces of the side to move contiguous,
+     *  or null if there is none (or if they are contiguous already).
+     *
+     *  Only a few moves need to be examined.  A move from square F to
+     *  square T connects iff T is adjacent to every group of pieces left
+     *  after removing F.  So T must lie in the neighborhood of every
+     *  group other than F's, which is usually empty unless there are few
+     *  groups close together.  We try destinations of F only within that
+     *  set, and verify candidates with a full connectivity check. */
+    Move winningMove() {
+        if (_wide) {
+            return wideWinningMove();
+        }
+        long own = bits(_turn), enemy = bits(_turn.opposite());
+        int n = 0;
+        for (long rest = own; rest != 0; n += 1) {
+            long group = rest & -rest, prev;
+            do {
+                prev = group;
+                group = neighborhood(group) & rest;
+            } while (group != prev);
+            _groups[n] = group;
+            rest &= ~group;
+        }
+        if (n <= 1) {
+            return null;
+        }
+        for (int g = 0; g < n; g += 1) {
+            long targets = ~own;
+            for (int h = 0; h < n && targets != 0; h += 1) {
+                if (h != g) {
+                    targets &= neighborhood(_groups[h]);
+                }
+            }
+            for (long b = _groups[g]; b != 0 && targets != 0; b &= b - 1) {
+                long from = b & -b;
+                long rest = _groups[g] & ~from;
+                long t = rest == 0 ? targets : targets & neighborhood(rest);
+                if (t == 0) {
+                    continue;
+                }
+                int sq = Long.numberOfTrailingZeros(from);
+                t &= _table.destinations(sq, own, enemy);
+                for (; t != 0; t &= t - 1) {
+                    long to = t & -t;
+                    if (components((own & ~from) | to) == 1) {
+                        return moveFrom(sq, Long.numberOfTrailingZeros(to));
                     }
                 }
             }
         }
-        return counter;
+        return null;
+    }
+
+    /** Return the move of the side to move from square FROM to square
+     *  TO. */
+    private Move moveFrom(int from, int to) {
+        return Move.get(Move.index(_geometry.universal(from),
+                                   _geometry.universal(to), _turn.ordinal(),
+                                   pieceAt(to).ordinal()));
     }
 
-    /** Recursive function to check neighbors in all directions.
-     * @param i the bound of the rows
-     * @param j the bound of the columns
-     * @param bitMap boolean array that checks piece on board
-     * @param side current player*/
-    private void checkNeighbors(int i, int j, boolean[][] bitMap, Piece side) {
-        for (Direction direction : DIRECTIONS) {
-            int row = i + direction.dr;
-            int col = j + direction.dc;
-            if (isInBounds(row + 1)
-                    && isInBounds(col + 1)
-                    && !bitMap[row][col]) {
-                bitMap[row][col] = true;
-                if (_currentBoard[row][col] == side) {
-                    checkNeighbors(row, col, bitMap, side);
+    /** Return winningMove() in the wide layout.  The method is the same,
+     *  with each set of squares held in two words. */
+    private Move wideWinningMove() {
+        long ownLo = _turn == BP ? _black : _white,
+            ownHi = _turn == BP ? _blackHigh : _whiteHigh;
+        int n = 0;
+        for (long restLo = ownLo, restHi = ownHi; (restLo | restHi) != 0;
+             n += 1) {
+            long groupLo = restLo & -restLo,
+                groupHi = restLo == 0 ? restHi & -restHi : 0;
+            long prevLo, prevHi;
+            do {
+                prevLo = groupLo;
+                prevHi = groupHi;
+                groupLo = Geometry.wideNeighborhoodLo(prevLo, prevHi) & restLo;
+                groupHi = Geometry.wideNeighborhoodHi(prevLo, prevHi) & restHi;
+            } while (groupLo != prevLo || groupHi != prevHi);
+            _groups[n] = groupLo;
+            _groupsHigh[n] = groupHi;
+            restLo &= ~groupLo;
+            restHi &= ~groupHi;
+        }
+        if (n <= 1) {
+            return null;
+        }
+        for (int g = 0; g < n; g += 1) {
+            long targetsLo = ~ownLo, targetsHi = ~ownHi;
+            for (int h = 0; h < n; h += 1) {
+                if (h != g) {
+                    targetsLo &= Geometry.wideNeighborhoodLo(_groups[h],
+                                                             _groupsHigh[h]);
+                    targetsHi &= Geometry.wideNeighborhoodHi(_groups[h],
+                                                             _groupsHigh[h]);
                 }
             }
+            if ((targetsLo | targetsHi) == 0) {
+                continue;
+            }
+            for (int w = 0; w < 2; w += 1) {
+                long b = w == 0 ? _groups[g] : _groupsHigh[g];
+                for (; b != 0; b &= b - 1) {
+                    int sq = w * WORD + Long.numberOfTrailingZeros(b);
+                    Move move = wideConnectingMove(sq, _groups[g],
+                                                   _groupsHigh[g],
+                                                   targetsLo, targetsHi);
+                    if (move != null) {
+                        return move;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return a move in the wide layout of the side to move's piece on
+     *  square SQ, in the group (GROUPLO, GROUPHI), to a square in
+     *  (TARGETSLO, TARGETSHI) that connects all its pieces, or null if
+     *  there is none. */
+    private Move wideConnectingMove(int sq, long groupLo, long groupHi,
+                                    long targetsLo, long targetsHi) {
+        long ownLo = _turn == BP ? _black : _white,
+            ownHi = _turn == BP ? _blackHigh : _whiteHigh;
+        long from = 1L << sq;
+        boolean low = sq < WORD;
+        long restLo = groupLo & ~(low ? from : 0),
+            restHi = groupHi & ~(low ? 0 : from);
+        long tLo = targetsLo, tHi = targetsHi;
+        if ((restLo | restHi) != 0) {
+            tLo &= Geometry.wideNeighborhoodLo(restLo, restHi);
+            tHi &= Geometry.wideNeighborhoodHi(restLo, restHi);
+        }
+        if ((tLo | tHi) == 0) {
+            return null;
+        }
+        for (int k = 0; k < GEN_ORDER.length; k += 2) {
+            int to = (targets(sq, GEN_ORDER[k]) >>> GEN_ORDER[k + 1])
+                & LineTable.NONE;
+            if (to == LineTable.NONE
+                || ((to < WORD ? tLo : tHi) & (1L << to)) == 0) {
+                continue;
+            }
+            long afterLo = (ownLo & ~(low ? from : 0))
+                | (to < WORD ? 1L << to : 0),
+                afterHi = (ownHi & ~(low ? 0 : from))
+                | (to < WORD ? 0 : 1L << to);
+            if (wideComponents(afterLo, afterHi) == 1) {
+                return moveFrom(sq, to);
+            }
+        }
+        return null;
+    }
+
+    /** Return the number of connected groups formed by SIDE's pieces
+     *  (so that 1 means SIDE's pieces are contiguous).  Results are
+     *  shared through CONNECTIVITY, so asking again about a side whose
+     *  pieces have not moved costs only a lookup. */
+    int piecesContiguous(Piece side) {
+        return connectivity().components(bits(side), bitsHigh(side));
+    }
+
+    /** Return the number of pieces in SIDE's largest connected group. */
+    int largestGroup(Piece side) {
+        return connectivity().largest(bits(side), bitsHigh(side));
+    }
+
+    /** Return the number of connected groups in the set of squares whose
+     *  low word is LO and high word is HI (0 in the narrow layout), in my
+     *  layout.  Like piecesContiguous, for sets that are not on the
+     *  board. */
+    int components(long lo, long hi) {
+        return connectivity().components(lo, hi);
+    }
+
+    /** Return the connectivity cache for my layout. */
+    private ConnectivityCache connectivity() {
+        return _wide ? WIDE_CONNECTIVITY : CONNECTIVITY;
+    }
+
+    /** Return the number of 8-connected groups in the set of squares
+     *  BITS. */
+    static int components(long bits) {
+        int counter = 0;
+        while (bits != 0) {
+            long group = bits & -bits, prev;
+            do {
+                prev = group;
+                group = neighborhood(group) & bits;
+            } while (group != prev);
+            bits &= ~group;
+            counter += 1;
         }
-        return;
+        return counter;
+    }
+
+    /** Return the number of 8-connected groups in the set of squares in
+     *  the wide layout whose low word is LO and high word HI. */
+    static int wideComponents(long lo, long hi) {
+        int counter = 0;
+        while ((lo | hi) != 0) {
+            long groupLo = lo & -lo, groupHi = lo == 0 ? hi & -hi : 0;
+            long prevLo, prevHi;
+            do {
+                prevLo = groupLo;
+                prevHi = groupHi;
+                groupLo = Geometry.wideNeighborhoodLo(prevLo, prevHi) & lo;
+                groupHi = Geometry.wideNeighborhoodHi(prevLo, prevHi) & hi;
+            } while (groupLo != prevLo || groupHi != prevHi);
+            lo &= ~groupLo;
+            hi &= ~groupHi;
+            counter += 1;
+        }
+        return counter;
+    }
+
+    /** Return the set of squares in BITS or adjacent (in any of the eight
+     *  directions) to a square in BITS, in the narrow layout. */
+    static long neighborhood(long bits) {
+        long row = bits | ((bits << 1) & ~FILE_A) | ((bits >>> 1) & ~FILE_H);
+        return row | (row << M) | (row >>> M);
     }
 
     /** Return the total number of moves that have been made (and not
-     *  retracted).  Each valid call to makeMove with a normal move increases
-     *  this number by 1. */
+     *  retracted).  Each valid call to makeMove with a normal move, and
+     *  each call to pass, increases this number by 1. */
     int movesMade() {
-        return _moves.size();
+        return _ply;
     }
 
     @Override
     public String toString() {
         Formatter out = new Formatter();
         out.format("===%n");
-        for (int r = M; r >= 1; r -= 1) {
+        for (int r = size(); r >= 1; r -= 1) {
             out.format("    ");
-            for (int c = 1; c <= M; c += 1) {
+            for (int c = 1; c <= size(); c += 1) {
                 out.format("%s ", get(c, r).abbrev());
             }
             out.format("%n");
@@ -317,40 +913,17 @@ class Board implements Iterable<Move> {
     private int pieceCountAlong(int c, int r, Direction dir) {
         int counter = -1;
         for (; isInBounds(c) && isInBounds(r); c += dir.dc, r -= dir.dr) {
-            if (_currentBoard[r - 1][c - 1] != EMP) {
+            if (get(c, r) != EMP) {
                 counter += 1;
             }
         }
         return counter;
     }
 
-    /** Returns the opposite direction.
-     * @param directions the direction the moving piece */
-    private Direction oppositeDirectionsIncr(Direction directions) {
-        if (directions == N) {
-            return S;
-        }  else if (directions == S) {
-            return N;
-        }  else if (directions == W) {
-            return E;
-        }  else if (directions == E) {
-            return W;
-        }  else if (directions == SW) {
-            return NE;
-        }  else if (directions == NE) {
-            return SW;
-        }  else if (directions == NW) {
-            return SE;
-        }  else if (directions == SE) {
-            return NW;
-        }
-        return directions;
-    }
-
     /** Return true iff MOVE is blocked by an opposing piece or by a
      *  friendly piece on the target square. */
     private boolean blocked(Move move) {
-        if (_currentBoard[move.getRow1() - 1][move.getCol1() - 1] == _turn) {
+        if (get(move.getCol1(), move.getRow1()) == _turn) {
             return true;
         }
         if (move == null) {
@@ -405,95 +978,130 @@ class Board implements Iterable<Move> {
         int counter = pieceCountAlong(move);
         for (; counter > 0; row -= directions.dr,
                 col += directions.dc, counter--) {
-            if (_currentBoard[row - 1][col - 1] == _turn.opposite()) {
+            if (get(col, row) == _turn.opposite()) {
                 return true;
             }
         }
         return false;
     }
 
-    /** The standard initial configuration for Lines of Action. */
-    static final Piece[][] INITIAL_PIECES = {
-        { EMP, BP,  BP,  BP,  BP,  BP,  BP,  EMP },
-        { WP,  EMP, EMP, EMP, EMP, EMP, EMP, WP  },
-        { WP,  EMP, EMP, EMP, EMP, EMP, EMP, WP  },
-        { WP,  EMP, EMP, EMP, EMP, EMP, EMP, WP  },
-        { WP,  EMP, EMP, EMP, EMP, EMP, EMP, WP  },
-        { WP,  EMP, EMP, EMP, EMP, EMP, EMP, WP  },
-        { WP,  EMP, EMP, EMP, EMP, EMP, EMP, WP  },
-        { EMP, BP,  BP,  BP,  BP,  BP,  BP,  EMP }
+    /** Connectivity results shared by all boards in the narrow and wide
+     *  layouts, respectively. */
+    private static final ConnectivityCache
+        CONNECTIVITY = new ConnectivityCache(1 << 16, false),
+        WIDE_CONNECTIVITY = new ConnectivityCache(1 << 14, true);
+
+    /** Number of squares in each word of a layout. */
+    private static final int WORD = 64;
+
+    /** Initial capacity of the undo stack. */
+    private static final int INITIAL_UNDO_CAPACITY = 256;
+
+    /** Squares in column a. */
+    static final long FILE_A = 0x0101010101010101L;
+    /** Squares in column h. */
+    static final long FILE_H = FILE_A << (M - 1);
+
+    /** Number of squares on the largest board. */
+    private static final int MAX_SQUARES =
+        Geometry.MAX_SIZE * Geometry.MAX_SIZE;
+
+    /** An upper bound on the number of legal moves in any position on a
+     *  board of any size. */
+    static final int MAX_MOVES = 8 * MAX_SQUARES;
+
+    /** The order in which legalMoves produces the moves of one piece, as
+     *  pairs (line, shift), where shift selects the forward (0) or
+     *  backward (8) destination returned by LineTable.targets.  This is
+     *  clockwise from the move toward row 1. */
+    private static final int[] GEN_ORDER = {
+        LineTable.COLUMN, 8, LineTable.ANTIDIAGONAL, 0,
+        LineTable.ROW, 0, LineTable.DIAGONAL, 0,
+        LineTable.COLUMN, 0, LineTable.ANTIDIAGONAL, 8,
+        LineTable.ROW, 8, LineTable.DIAGONAL, 8
     };
 
-    /** List of all unretracted moves on this board, in order. */
-    private final ArrayList<Move> _moves = new ArrayList<>();
+    /** My shape. */
+    private Geometry _geometry;
+    /** The line tables of _geometry. */
+    private LineTable _table;
+    /** True iff _geometry uses the wide layout. */
+    private boolean _wide;
     /** Current side on move. */
     private Piece _turn;
-    /** Two dimensional array that holds all pieces. */
-    private Piece[][] _currentBoard;
+    /** Squares occupied by black and white pieces, respectively, as bit
+     *  sets indexed by square index: the low words of the sets. */
+    private long _black, _white;
+    /** The high words of the sets of black and white pieces in the wide
+     *  layout (always 0 in the narrow layout). */
+    private long _blackHigh, _whiteHigh;
+    /** In the wide layout, the pattern of the pieces of each color on
+     *  each line, indexed by piece ordinal * lineCount() + line number
+     *  (see LineTable.lineIndex); null in the narrow layout.  These are
+     *  updated by set and, since a move changes at most three squares,
+     *  restored by retract from the move itself rather than saved on the
+     *  undo stack. */
+    private int[] _lines;
+    /** Hash key of the current position. */
+    private long _key;
+    /** Scratch space for the groups found by winningMove: their low and
+     *  high words. */
+    private final long[] _groups = new long[MAX_SQUARES],
+        _groupsHigh = new long[MAX_SQUARES];
+
+    /* The undo stack holds one entry per unretracted move, stored as
+     * parallel arrays.  Entry k holds the k-th move made and the derived
+     * state of the board immediately before it was made.  Any new
+     * incrementally maintained state should get its own array here,
+     * saved in push and restored in retract. */
+
+    /** Number of unretracted moves (the depth of the undo stack). */
+    private int _ply;
+    /** Moves made, in order. */
+    private Move[] _undoMoves = new Move[INITIAL_UNDO_CAPACITY];
+    /** Keys before each move. */
+    private long[] _undoKeys = new long[INITIAL_UNDO_CAPACITY];
+    /** Black pieces before each move. */
+    private long[] _undoBlack = new long[INITIAL_UNDO_CAPACITY];
+    /** White pieces before each move. */
+    private long[] _undoWhite = new long[INITIAL_UNDO_CAPACITY];
+    /** High words of the black pieces before each move. */
+    private long[] _undoBlackHigh = new long[INITIAL_UNDO_CAPACITY];
+    /** High words of the white pieces before each move. */
+    private long[] _undoWhiteHigh = new long[INITIAL_UNDO_CAPACITY];
+    /** Sides to move before each move. */
+    private Piece[] _undoTurns = new Piece[INITIAL_UNDO_CAPACITY];
 
     /** An iterator returning the legal moves from the current board. */
     private class MoveIterator implements Iterator<Move> {
-        /** Current piece under consideration. */
-        private int _c, _r;
-        /** Next direction of current piece to return. */
-        private Direction _dir;
-        /** Next move. */
-        private Move _move;
+        /** Legal moves, in order. */
+        private final Move[] _moves = new Move[MAX_MOVES];
+        /** Number of legal moves. */
+        private final int _size;
+        /** Index of the next move to return. */
+        private int _next;
 
         /** A new move iterator for turn(). */
         MoveIterator() {
-            _c = 1; _r = 1; _dir = N;
-            incr();
+            _size = legalMoves(_moves);
         }
 
         @Override
         public boolean hasNext() {
-            return _move != null;
+            return _next < _size;
         }
 
         @Override
         public Move next() {
-            if (_move == null) {
+            if (_next >= _size) {
                 throw new NoSuchElementException("no legal move");
             }
-
-            Move move = _move;
-            incr();
-            return move;
+            _next += 1;
+            return _moves[_next - 1];
         }
 
         @Override
         public void remove() {
         }
-
-        /** Advance to the next legal move. */
-        private void incr() {
-            for (int i = _r; isInBounds(i); i++) {
-                for (int j = _c; isInBounds(j); j++) {
-                    if (_currentBoard[i - 1][j - 1] == _turn) {
-                        while (_dir != null) {
-                            int spaces = 1;
-                            spaces += pieceCountAlong(j, i, _dir);
-                            spaces += pieceCountAlong(j, i,
-                                    oppositeDirectionsIncr(_dir));
-                            Move newMove = Move.create(j, i,
-                                    j + spaces * _dir.dc ,
-                                    i - spaces * _dir.dr , Board.this);
-                            if (isLegal(newMove)) {
-                                _r = i;
-                                _c = j;
-                                _move = newMove;
-                                _dir = _dir.succ();
-                                return;
-                            }
-                            _dir = _dir.succ();
-                        }
-                        _dir = _dir.N;
-                    }
-                }
-                _c = 1;
-            }
-            _move = null;
-        }
     }
 }
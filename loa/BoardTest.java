@@ -133,6 +133,215 @@ public class BoardTest {
 
     }
 
+    @Test
+    public void retractTest() {
+        Board b = new Board();
+        long key0 = b.key();
+        Move move = Move.create(4, 1, 4, 3, b);
+        b.makeMove(move);
+        assertEquals(1, b.movesMade());
+        assertEquals(move, b.lastMove());
+        assertEquals(false, key0 == b.key());
+        Move move1 = Move.create(1, 3, 4, 3, b);
+        b.makeMove(move1);
+        assertEquals(11, b.pieceCount(BP));
+        b.retract();
+        assertEquals(12, b.pieceCount(BP));
+        assertEquals(BP, b.get(4, 3));
+        assertEquals(WP, b.turn());
+        b.retract();
+        assertEquals(0, b.movesMade());
+        assertEquals(key0, b.key());
+        assertEquals(BP, b.get(4, 1));
+        assertEquals(EMP, b.get(4, 3));
+        assertEquals(BP, b.turn());
+    }
+
+    @Test
+    public void passTest() {
+        Board b = new Board();
+        long key0 = b.key();
+        b.pass();
+        assertEquals(WP, b.turn());
+        assertEquals(1, b.movesMade());
+        assertNull(b.lastMove());
+        assertEquals(false, key0 == b.key());
+        b.makeMove(Move.create(1, 2, 3, 4, b));
+        b.retract();
+        b.retract();
+        assertEquals(BP, b.turn());
+        assertEquals(key0, b.key());
+        assertEquals(new Board().position(), b.position());
+    }
+
+    @Test
+    public void connectivityTest() {
+        ConnectivityCache cache = new ConnectivityCache(4, false);
+        long bits = 0b111L | (1L << 20) | (1L << 21) | (1L << 63);
+        for (int i = 0; i < 2; i += 1) {
+            assertEquals(3, cache.components(bits, 0));
+            assertEquals(3, cache.largest(bits, 0));
+        }
+        assertEquals(0, cache.components(0, 0));
+        assertEquals(0, cache.largest(0, 0));
+        ConnectivityCache wide = new ConnectivityCache(4, true);
+        assertEquals(2, wide.components(1L << 10, 1L << 2));
+        assertEquals(1, wide.components(1L << 63, 1L << 10));
+        assertEquals(2, wide.largest(1L << 63, 1L << 10));
+        Board b = new Board();
+        assertEquals(2, b.piecesContiguous(BP));
+        assertEquals(6, b.largestGroup(WP));
+    }
+
+    @Test
+    public void keyTest() {
+        Board b = new Board();
+        Board b1 = new Board();
+        b.makeMove(Move.create(4, 1, 4, 3, b));
+        b1.set(4, 1, EMP);
+        b1.set(4, 3, BP, WP);
+        assertEquals(b1.key(), b.key());
+    }
+
+    @Test
+    public void copyTest() {
+        Board b = new Board();
+        b.makeMove(Move.create(4, 1, 4, 3, b));
+        b.copyFrom(b);
+        assertEquals(BP, b.get(4, 3));
+        assertEquals(1, b.movesMade());
+        Board b1 = new Board(b, false);
+        assertEquals(0, b1.movesMade());
+        assertEquals(b.key(), b1.key());
+        assertEquals(b.position(), b1.position());
+        Board b2 = new Board(b);
+        assertEquals(1, b2.movesMade());
+        b2.retract();
+        assertEquals(new Board().position(), b2.position());
+        Board b3 = new Board(b.position());
+        assertEquals(WP, b3.turn());
+        assertEquals(BP, b3.get(4, 3));
+        Board b4 = new Board();
+        b4.copyMake(b, Move.create(1, 3, 4, 3, b));
+        assertEquals(WP, b4.get(4, 3));
+        assertEquals(1, b4.movesMade());
+        assertEquals(BP, b.get(4, 3));
+    }
+
+    @Test
+    public void winningMoveTest() {
+        Board b = new Board();
+        assertEquals(null, b.winningMove());
+        Piece[][] contents = new Piece[M][M];
+        for (Piece[] row : contents) {
+            java.util.Arrays.fill(row, EMP);
+        }
+        contents[0][0] = BP;
+        contents[1][2] = BP;
+        contents[4][4] = WP;
+        contents[7][7] = WP;
+        Board b1 = new Board(contents, BP);
+        Move move = b1.winningMove();
+        assertEquals(true, b1.isLegal(move));
+        b1.makeMove(move);
+        assertEquals(1, b1.piecesContiguous(BP));
+        Board b2 = new Board(contents, WP);
+        assertEquals(null, b2.winningMove());
+    }
+
+    @Test
+    public void sizeTest() {
+        for (int size = Geometry.MIN_SIZE; size <= Geometry.MAX_SIZE;
+             size += 1) {
+            Board b = new Board(size);
+            assertEquals(size, b.size());
+            assertEquals(2 * (size - 2), b.pieceCount(BP));
+            Move[] moves = new Move[MAX_MOVES];
+            int n = b.legalMoves(moves);
+            assertEquals(6 * (size - 2), n);
+            long key0 = b.key();
+            Position p0 = b.position();
+            for (int i = 0; i < n; i += 1) {
+                assertEquals(true, b.isLegal(moves[i]));
+                b.makeMove(moves[i]);
+                b.retract();
+            }
+            assertEquals(key0, b.key());
+            assertEquals(p0, b.position());
+        }
+        Board b = new Board(10);
+        Move move = Move.create("c10-c8", b);
+        assertEquals(true, b.isLegal(move));
+        assertEquals(null, Move.create("c10-c8", new Board()));
+        b.makeMove(move);
+        assertEquals(BP, b.get("c8"));
+        assertEquals(false, b.isLegal(Move.create("c8-c10", b)));
+        Board b1 = new Board(b.position());
+        Board b2 = new Board(10);
+        b2.set(3, 10, EMP);
+        b2.set(3, 8, BP, WP);
+        assertEquals(b2.key(), b.key());
+        assertEquals(b.position(), b1.position());
+        Move[] m1 = new Move[MAX_MOVES], m2 = new Move[MAX_MOVES];
+        assertEquals(b.legalMoves(m1), b1.legalMoves(m2));
+        assertEquals(java.util.Arrays.asList(m1),
+                     java.util.Arrays.asList(m2));
+    }
+
+    @Test
+    public void wideWinningMoveTest() {
+        Piece[][] contents = new Piece[10][10];
+        for (Piece[] row : contents) {
+            java.util.Arrays.fill(row, EMP);
+        }
+        contents[4][7] = BP;
+        contents[5][9] = BP;
+        contents[4][4] = WP;
+        contents[9][9] = WP;
+        Board b = new Board(contents, WP);
+        assertEquals(null, b.winningMove());
+        b = new Board(contents, BP);
+        Move move = b.winningMove();
+        assertEquals(true, b.isLegal(move));
+        b.makeMove(move);
+        assertEquals(1, b.piecesContiguous(BP));
+        assertEquals(BP, b.winner());
+    }
+
+    @Test
+    public void moveTableTest() throws InterruptedException {
+        Board b = new Board(10);
+        Move m = Move.create(1, 2, 4, 5, b);
+        assertEquals(m, Move.get(m.index()));
+        assertEquals(null, Move.get(Move.index(0, 0, 0, 1)));
+        assertEquals(null, Move.get(Move.index(0, 12, 0, 1)));
+        assertEquals(null, Move.get(Move.index(0, 1, 0, 0)));
+        int index = Move.index(99, 0, 1, 0);
+        Move[] found = new Move[4];
+        Thread[] threads = new Thread[found.length];
+        for (int i = 0; i < threads.length; i += 1) {
+            int k = i;
+            threads[i] = new Thread(() -> found[k] = Move.get(index));
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        for (Move move : found) {
+            assertEquals(true, move == found[0]);
+        }
+        assertEquals("j10-a1", found[0].toString());
+        assertEquals(WP, found[0].movedPiece());
+    }
+
+    @Test
+    public void fuzzTest() {
+        MoveFuzzer fuzzer = new MoveFuzzer(1, 2, 0);
+        assertEquals(null, fuzzer.run(2000, 0));
+        assertEquals(true, fuzzer.positions() >= 2000);
+        ReferenceBoard ref = new ReferenceBoard(new Board());
+        assertEquals(36, ref.legalMoves().length);
+    }
 
     public static void main(String[] args) {
         System.exit(ucb.junit.textui.runClasses(BoardTest.class));
@@ -0,0 +1,116 @@
+package loa;
+
+/** A cache of the connectivity of sets of pieces: for a bitboard of one
+ *  side's pieces, the number of connected groups and the size of the
+ *  largest.  Since the result depends only on that side's pieces, it can
+ *  be reused whenever the side's pieces are where they were before, as
+ *  they always are after the other side's moves.  Each cache serves one
+ *  layout (see Geometry): in the narrow layout a bitboard is one long,
+ *  and in the wide layout two.
+ *
+ *  The cache is direct-mapped, indexed by a hash of the bitboard.  Each
+ *  slot holds three longs: the result, and each word of the bitboard
+ *  XORed with the result.  An entry is used only if they XOR back to the
+ *  bitboard being looked up, which both verifies the key exactly and lets
+ *  threads share the cache without locks (a torn entry simply fails to
+ *  match).
+ *  @author Peter Lee
+ */
+class ConnectivityCache {
+
+    /** A cache with at least ENTRIES slots for bitboards in the wide
+     *  layout iff WIDE, and otherwise in the narrow layout. */
+    ConnectivityCache(int entries, boolean wide) {
+        int size = Integer.highestOneBit(Math.max(2, entries - 1)) << 1;
+        _shift = Long.numberOfLeadingZeros(size) + 1;
+        _slots = new long[3 * size];
+        _wide = wide;
+    }
+
+    /** Return the number of connected groups in the set of squares whose
+     *  low word is LO and high word is HI (0 in the narrow layout). */
+    int components(long lo, long hi) {
+        return (int) lookup(lo, hi) & COUNT_MASK;
+    }
+
+    /** Return the number of pieces in the largest connected group in
+     *  the set of squares (LO, HI). */
+    int largest(long lo, long hi) {
+        return (int) (lookup(lo, hi) >>> LARGEST_SHIFT) & COUNT_MASK;
+    }
+
+    /** Return the packed result for (LO, HI), computing and recording it
+     *  if it is not already present. */
+    private long lookup(long lo, long hi) {
+        long hash = (lo ^ Long.rotateLeft(hi, 32)) * HASH_MULTIPLIER;
+        int slot = 3 * (int) (hash >>> _shift);
+        long data = _slots[slot + 2];
+        if ((_slots[slot] ^ data) == lo && (_slots[slot + 1] ^ data) == hi
+            && data != 0) {
+            return data;
+        }
+        data = _wide ? computeWide(lo, hi) : compute(lo);
+        _slots[slot] = lo ^ data;
+        _slots[slot + 1] = hi ^ data;
+        _slots[slot + 2] = data;
+        return data;
+    }
+
+    /** Return the packed result for BITS in the narrow layout. */
+    private static long compute(long bits) {
+        int count = 0, largest = 0;
+        while (bits != 0) {
+            long group = bits & -bits, prev;
+            do {
+                prev = group;
+                group = Board.neighborhood(group) & bits;
+            } while (group != prev);
+            bits &= ~group;
+            count += 1;
+            largest = Math.max(largest, Long.bitCount(group));
+        }
+        return VALID | ((long) largest << LARGEST_SHIFT) | count;
+    }
+
+    /** Return the packed result for (LO, HI) in the wide layout. */
+    private static long computeWide(long lo, long hi) {
+        int count = 0, largest = 0;
+        while ((lo | hi) != 0) {
+            long groupLo = lo & -lo, groupHi = lo == 0 ? hi & -hi : 0;
+            long prevLo, prevHi;
+            do {
+                prevLo = groupLo;
+                prevHi = groupHi;
+                groupLo = Geometry.wideNeighborhoodLo(prevLo, prevHi) & lo;
+                groupHi = Geometry.wideNeighborhoodHi(prevLo, prevHi) & hi;
+            } while (groupLo != prevLo || groupHi != prevHi);
+            lo &= ~groupLo;
+            hi &= ~groupHi;
+            count += 1;
+            largest = Math.max(largest, Long.bitCount(groupLo)
+                               + Long.bitCount(groupHi));
+        }
+        return VALID | ((long) largest << LARGEST_SHIFT) | count;
+    }
+
+    /* A result is packed as the count in the low-order byte, the largest
+     * group size in the next, and a bit that makes every result
+     * nonzero. */
+
+    /** Mask for one packed field. */
+    private static final int COUNT_MASK = 0xFF;
+    /** Position of the largest group size. */
+    private static final int LARGEST_SHIFT = 8;
+    /** Bit set in every result. */
+    private static final long VALID = 1L << 16;
+    /** Multiplier for hashing bitboards (Fibonacci hashing). */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** Amount by which a hash is shifted to yield a slot number. */
+    private final int _shift;
+    /** Triples of words (lo ^ result, hi ^ result, result). */
+    private final long[] _slots;
+    /** True iff bitboards are in the wide layout. */
+    private final boolean _wide;
+
+}
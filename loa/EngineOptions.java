@@ -0,0 +1,215 @@
+package loa;
+
+/** Settings for the automated players: the number of search threads, the
+ *  size of the transposition table, the time and depth limits for each
+ *  move, whether to ponder, which selective search techniques to use, how
+ *  many lines to show when analyzing, the endgame tablebase, and any
+ *  transposition table the players share.
+ *  A Game keeps one set of options, shared by all the players it creates,
+ *  so changes made during a game take effect at the next move.
+ *  @author Peter Lee
+ */
+class EngineOptions {
+
+    /** Default options: one thread, a DEFAULT_HASH-megabyte table, a
+     *  search depth of DEFAULT_DEPTH with no time limit, no pondering,
+     *  and both null-move pruning and late-move reductions. */
+    EngineOptions() {
+    }
+
+    /** Set the option named NAME to VALUE, as for the setoption command.
+     *  Numeric options take decimal numerals; the others take "on" or
+     *  "off".  Throws IllegalArgumentException if NAME or VALUE is
+     *  invalid. */
+    void set(String name, String value) {
+        switch (name) {
+        case "threads":
+            _threads = number(name, value, 1, MAX_THREADS);
+            break;
+        case "hash":
+            _hashMegabytes = number(name, value, 1, MAX_HASH);
+            break;
+        case "time":
+            _moveMillis = number(name, value, 0, Integer.MAX_VALUE);
+            break;
+        case "depth":
+            _maxDepth = number(name, value, 0, MAX_DEPTH);
+            _depthSet = true;
+            break;
+        case "ponder":
+            _ponder = flag(name, value);
+            break;
+        case "null":
+            _nullMove = flag(name, value);
+            break;
+        case "lmr":
+            _reductions = flag(name, value);
+            break;
+        case "multipv":
+            _multiPV = number(name, value, 1, MAX_MULTIPV);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown option: " + name);
+        }
+    }
+
+    /** Return the number of search threads. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Return the size of the transposition table, in megabytes. */
+    int hashMegabytes() {
+        return _hashMegabytes;
+    }
+
+    /** Return the time limit per move in milliseconds, or 0 if none. */
+    long moveMillis() {
+        return _moveMillis;
+    }
+
+    /** Return the maximum search depth, or 0 if none. */
+    int maxDepth() {
+        return _maxDepth;
+    }
+
+    /** Return true iff the depth limit has been set, rather than left at
+     *  DEFAULT_DEPTH.  A move made on a clock is otherwise limited only
+     *  by time. */
+    boolean depthSet() {
+        return _depthSet;
+    }
+
+    /** Return true iff engines should search during the opponent's
+     *  turn. */
+    boolean ponder() {
+        return _ponder;
+    }
+
+    /** Return true iff the alpha-beta search uses null-move pruning. */
+    boolean nullMove() {
+        return _nullMove;
+    }
+
+    /** Return true iff the alpha-beta search uses late-move
+     *  reductions. */
+    boolean reductions() {
+        return _reductions;
+    }
+
+    /** Return the number of best moves, each with its principal
+     *  variation, that an analysis reports.  Moves chosen in play are
+     *  always found by a single-line search. */
+    int multiPV() {
+        return _multiPV;
+    }
+
+    /** Return the endgame tablebase the alpha-beta search consults, or
+     *  null if none. */
+    Tablebase tablebase() {
+        return _tablebase;
+    }
+
+    /** Make TABLEBASE (possibly null) the endgame tablebase for the
+     *  alpha-beta search.  It is not a setoption option, since it is
+     *  loaded from a file once, at startup. */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
+    }
+
+    /** Return the transposition table shared by every alpha-beta player
+     *  using these options, or null if each is to allocate its own of
+     *  hashMegabytes() megabytes. */
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /** Make TABLE (possibly null) the transposition table shared by every
+     *  alpha-beta player using these options.  Like the tablebase, it is
+     *  opened once, at startup. */
+    void setTable(TranspositionTable table) {
+        _table = table;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("threads %d hash %d time %d depth %d ponder %s"
+                             + " null %s lmr %s multipv %d", _threads,
+                             _hashMegabytes, _moveMillis, _maxDepth,
+                             onOff(_ponder), onOff(_nullMove),
+                             onOff(_reductions), _multiPV);
+    }
+
+    /** Return VALUE, the setting for option NAME, as an integer, checking
+     *  that it lies between LOW and HIGH. */
+    private static int number(String name, String value, int low, int high) {
+        int n;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            throw new IllegalArgumentException("invalid value for " + name
+                                               + ": " + value);
+        }
+        if (n < low || n > high) {
+            throw new IllegalArgumentException(name + " must be between "
+                                               + low + " and " + high);
+        }
+        return n;
+    }
+
+    /** Return VALUE, the setting for option NAME, as a boolean. */
+    private static boolean flag(String name, String value) {
+        switch (value) {
+        case "on":
+            return true;
+        case "off":
+            return false;
+        default:
+            throw new IllegalArgumentException("invalid value for " + name
+                                               + ": " + value);
+        }
+    }
+
+    /** Return "on" or "off" according to B. */
+    private static String onOff(boolean b) {
+        return b ? "on" : "off";
+    }
+
+    /** Default size of the transposition table, in megabytes. */
+    static final int DEFAULT_HASH = 16;
+    /** Default maximum search depth. */
+    static final int DEFAULT_DEPTH = 4;
+
+    /** Largest allowed number of threads. */
+    private static final int MAX_THREADS = 256;
+    /** Largest allowed table size, in megabytes. */
+    private static final int MAX_HASH = 1 << 16;
+    /** Largest allowed depth limit. */
+    private static final int MAX_DEPTH = 60;
+    /** Largest allowed number of lines of analysis. */
+    private static final int MAX_MULTIPV = 64;
+
+    /** Number of search threads. */
+    private int _threads = 1;
+    /** Transposition table size, in megabytes. */
+    private int _hashMegabytes = DEFAULT_HASH;
+    /** Time limit per move, in milliseconds (0 for none). */
+    private long _moveMillis = 0;
+    /** Depth limit (0 for none). */
+    private int _maxDepth = DEFAULT_DEPTH;
+    /** True iff _maxDepth has been set. */
+    private boolean _depthSet;
+    /** True iff pondering is enabled. */
+    private boolean _ponder;
+    /** True iff null-move pruning is enabled. */
+    private boolean _nullMove = true;
+    /** True iff late-move reductions are enabled. */
+    private boolean _reductions = true;
+    /** Number of lines of analysis. */
+    private int _multiPV = 1;
+    /** Endgame tablebase, or null. */
+    private Tablebase _tablebase;
+    /** Shared transposition table, or null. */
+    private TranspositionTable _table;
+
+}
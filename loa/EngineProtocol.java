@@ -0,0 +1,386 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import static loa.Piece.*;
+
+/** A line-oriented protocol for driving the alpha-beta engine from
+ *  another program, modelled on the Universal Chess Interface.  There
+ *  are no prompts, and every line of output starts with a keyword.  The
+ *  commands are
+ *      uci                  Identify the engine; answered by "id" lines
+ *                           and "uciok".
+ *      isready              Answered by "readyok" as soon as all earlier
+ *                           commands are done, even while searching.
+ *      setoption name N value V
+ *                           Set engine option N (as for Game's
+ *                           setoption command) to V.
+ *      newgame              Forget everything learned in earlier
+ *                           searches and return to the initial position.
+ *      position startpos [N] [moves M ...]
+ *      position board ROWS SIDE [moves M ...]
+ *                           Set the position to the initial one on an
+ *                           N x N board (default the current size), or to
+ *                           ROWS, the rows from top to bottom separated by
+ *                           '/', each square written as for dump (b, w, or
+ *                           -), with SIDE (b or w) to move.  Then make the
+ *                           moves M.
+ *      go [depth D] [nodes N] [movetime MS] [wtime MS] [btime MS]
+ *         [winc MS] [binc MS] [infinite]
+ *                           Search the current position within the given
+ *                           limits (those in the engine options, if none
+ *                           are given), in the background.
+ *      stop                 End the current search at once.
+ *      quit                 Stop any search and exit.
+ *  While searching, the engine reports each completed iteration with a
+ *  line
+ *      info depth D score (cp V | mate M) nodes N nps N time MS pv M ...
+ *  or, if the multipv option is K > 1, with K lines, the Ith of which
+ *  gives the Ith best move and its principal variation:
+ *      info depth D multipv I score ...
+ *  and at the end, the move found with "bestmove M" (or "bestmove
+ *  (none)").  An infinite search reports its best move only when stopped.
+ *  Errors are reported as "info string error: ..." and otherwise
+ *  ignored.
+ *  @author Peter Lee
+ */
+class EngineProtocol implements SearchListener {
+
+    /** A protocol handler reading commands from INPUT and writing
+     *  responses to OUTPUT, searching with engine options OPTIONS. */
+    EngineProtocol(EngineOptions options, BufferedReader input,
+                   PrintStream output) {
+        _options = options;
+        _input = input;
+        _out = output;
+        _board = new Board();
+        newPlayer();
+    }
+
+    /** Process commands until "quit" or the end of input. */
+    void run() {
+        try {
+            for (String line = _input.readLine(); line != null;
+                 line = _input.readLine()) {
+                if (!execute(line)) {
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            send("info string error: %s", excp.getMessage());
+        }
+        execute("quit");
+    }
+
+    /** Carry out the command on LINE.  Return false iff it was "quit". */
+    boolean execute(String line) {
+        String[] words = line.trim().split("\\s+");
+        try {
+            switch (words[0]) {
+            case "":
+                break;
+            case "uci":
+                send("id name Lines of Action %s", Main.VERSION);
+                send("id author Peter Lee");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "setoption":
+                setOption(words);
+                break;
+            case "newgame":
+            case "ucinewgame":
+                stopSearch();
+                newPlayer();
+                _board = new Board(_board.size());
+                break;
+            case "position":
+                stopSearch();
+                _board = position(words);
+                break;
+            case "go":
+                stopSearch();
+                go(limits(words));
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                stopSearch();
+                return false;
+            default:
+                throw new IllegalArgumentException("unknown command: "
+                                                   + words[0]);
+            }
+        } catch (IllegalArgumentException excp) {
+            send("info string error: %s", excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Wait for the current search, if any, to finish by itself. */
+    void waitForSearch() {
+        if (_searcher != null) {
+            try {
+                _searcher.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            _searcher = null;
+        }
+    }
+
+    @Override
+    public void iteration(int k, int depth, int score, long nodes,
+                          long millis, List<Move> pv) {
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("info depth %d", depth));
+        if (_options.multiPV() > 1) {
+            line.append(String.format(" multipv %d", k));
+        }
+        line.append(String.format(" score %s nodes %d nps %d time %d pv",
+                                  MachinePlayer.scoreString(score), nodes,
+                                  nodes * 1000 / Math.max(1, millis),
+                                  millis));
+        for (Move move : pv) {
+            line.append(' ').append(move);
+        }
+        send("%s", line);
+    }
+
+    /** Start a fresh engine, with nothing remembered from earlier
+     *  searches. */
+    private void newPlayer() {
+        _player = new MachinePlayer(BP, null, _options);
+        _player.setListener(this);
+    }
+
+    /** Process "setoption name N value V", whose words are WORDS. */
+    private void setOption(String[] words) {
+        if (words.length != 5 || !words[1].equals("name")
+            || !words[3].equals("value")) {
+            throw new IllegalArgumentException("usage: setoption name N"
+                                               + " value V");
+        }
+        _options.set(words[2].toLowerCase(), words[4].toLowerCase());
+    }
+
+    /** Return the board described by the position command WORDS. */
+    private Board position(String[] words) {
+        Board board;
+        int k;
+        if (words.length >= 2 && words[1].equals("startpos")) {
+            k = 2;
+            int size = _board.size();
+            if (k < words.length && words[k].matches("\\d+")) {
+                size = Integer.parseInt(words[k]);
+                k += 1;
+            }
+            board = new Board(size);
+        } else if (words.length >= 4 && words[1].equals("board")) {
+            board = new Board(contents(words[2]), side(words[3]));
+            k = 4;
+        } else {
+            throw new IllegalArgumentException("usage: position (startpos"
+                                               + " [N] | board ROWS SIDE)"
+                                               + " [moves M ...]");
+        }
+        if (k < words.length) {
+            if (!words[k].equals("moves")) {
+                throw new IllegalArgumentException("expected moves: "
+                                                   + words[k]);
+            }
+            for (k += 1; k < words.length; k += 1) {
+                Move move = Move.create(words[k], board);
+                if (move == null || !board.isLegal(move)) {
+                    throw new IllegalArgumentException("illegal move: "
+                                                       + words[k]);
+                }
+                board.makeMove(move);
+            }
+        }
+        return board;
+    }
+
+    /** Return the board contents described by ROWS, as for
+     *  Board(Piece[][], Piece). */
+    private static Piece[][] contents(String rows) {
+        String[] lines = rows.split("/");
+        int size = lines.length;
+        if (size < Geometry.MIN_SIZE || size > Geometry.MAX_SIZE) {
+            throw new IllegalArgumentException("unsupported board size: "
+                                               + size);
+        }
+        Piece[][] contents = new Piece[size][size];
+        for (int r = 0; r < size; r += 1) {
+            String line = lines[size - 1 - r];
+            if (line.length() != size) {
+                throw new IllegalArgumentException("bad row: " + line);
+            }
+            for (int c = 0; c < size; c += 1) {
+                switch (line.charAt(c)) {
+                case 'b':
+                    contents[r][c] = BP;
+                    break;
+                case 'w':
+                    contents[r][c] = WP;
+                    break;
+                case '-':
+                    contents[r][c] = EMP;
+                    break;
+                default:
+                    throw new IllegalArgumentException("bad row: " + line);
+                }
+            }
+        }
+        return contents;
+    }
+
+    /** Return the side denoted by NAME ("b" or "w"). */
+    private static Piece side(String name) {
+        switch (name) {
+        case "b":
+            return BP;
+        case "w":
+            return WP;
+        default:
+            throw new IllegalArgumentException("bad side: " + name);
+        }
+    }
+
+    /** Return the limits given by the go command WORDS, for a search of
+     *  the current position. */
+    private SearchLimits limits(String[] words) {
+        SearchLimits limits = new SearchLimits();
+        limits.lines = _options.multiPV();
+        String remaining = _board.turn() == BP ? "btime" : "wtime",
+            increment = _board.turn() == BP ? "binc" : "winc";
+        for (int k = 1; k < words.length; k += 1) {
+            String name = words[k];
+            if (name.equals("infinite")) {
+                limits.infinite = true;
+                continue;
+            }
+            if (k + 1 == words.length) {
+                throw new IllegalArgumentException("missing value for "
+                                                   + name);
+            }
+            k += 1;
+            long value;
+            try {
+                value = Long.parseLong(words[k]);
+            } catch (NumberFormatException excp) {
+                throw new IllegalArgumentException("invalid number: "
+                                                   + words[k]);
+            }
+            switch (name) {
+            case "depth":
+                limits.depth = (int) Math.min(value, Integer.MAX_VALUE);
+                break;
+            case "nodes":
+                limits.nodes = value;
+                break;
+            case "movetime":
+                limits.moveMillis = value;
+                break;
+            case "wtime":
+            case "btime":
+                if (name.equals(remaining)) {
+                    limits.remaining = Math.max(1, value);
+                }
+                break;
+            case "winc":
+            case "binc":
+                if (name.equals(increment)) {
+                    limits.increment = value;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown limit: "
+                                                   + name);
+            }
+        }
+        return limits;
+    }
+
+    /** Start searching the current position within LIMITS in the
+     *  background. */
+    private void go(SearchLimits limits) {
+        Board board = new Board(_board, false);
+        _stopRequested = false;
+        _searcher = new Thread(() -> search(board, limits));
+        _searcher.setDaemon(true);
+        _searcher.start();
+    }
+
+    /** Search BOARD within LIMITS, and report the best move.  An infinite
+     *  search reports only after stopSearch is called. */
+    private void search(Board board, SearchLimits limits) {
+        _player.analyze(board, limits);
+        if (limits.infinite) {
+            synchronized (this) {
+                while (!_stopRequested) {
+                    try {
+                        wait();
+                    } catch (InterruptedException excp) {
+                        return;
+                    }
+                }
+            }
+        }
+        Move best = _player.bestMove();
+        send("bestmove %s", best == null ? "(none)" : best);
+    }
+
+    /** Stop the current search, if any, and wait for it to report its
+     *  best move.  The stop is repeated until the search finishes, since
+     *  it may arrive before the search has started. */
+    private void stopSearch() {
+        if (_searcher == null) {
+            return;
+        }
+        synchronized (this) {
+            _stopRequested = true;
+            notifyAll();
+        }
+        while (_searcher.isAlive()) {
+            _player.stop();
+            try {
+                _searcher.join(1);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        _searcher = null;
+    }
+
+    /** Write one line of output, formatted from FORMAT and ARGS as for
+     *  printf.  Lines from the searching thread and from the command
+     *  thread are never interleaved. */
+    private void send(String format, Object... args) {
+        _out.println(String.format(format, args));
+    }
+
+    /** Engine options, changed by setoption. */
+    private final EngineOptions _options;
+    /** Source of commands. */
+    private final BufferedReader _input;
+    /** Destination of responses. */
+    private final PrintStream _out;
+    /** The engine. */
+    private MachinePlayer _player;
+    /** The current position. */
+    private Board _board;
+    /** Thread running the current search, or null. */
+    private Thread _searcher;
+    /** True iff the current search has been told to stop. */
+    private boolean _stopRequested;
+
+}
@@ -0,0 +1,588 @@
+package loa;
+
+import static loa.Piece.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/** Tests of the game-playing and analysis engines.
+ *  @author Peter Lee
+ */
+public class EngineTest {
+
+    /** Return an empty board with black pieces at the squares named in
+     *  BLACK and white pieces at those named in WHITE, and SIDE to
+     *  move. */
+    static Board position(String black, String white, Piece side) {
+        Piece[][] contents = new Piece[Board.M][Board.M];
+        for (Piece[] row : contents) {
+            java.util.Arrays.fill(row, EMP);
+        }
+        for (String sq : black.split(" ")) {
+            contents[Board.row(sq) - 1][Board.col(sq) - 1] = BP;
+        }
+        for (String sq : white.split(" ")) {
+            contents[Board.row(sq) - 1][Board.col(sq) - 1] = WP;
+        }
+        return new Board(contents, side);
+    }
+
+    @Test
+    public void solveWinInOneTest() {
+        Board b = position("a1 c2", "h8 e5 a8", BP);
+        ProofNumberSearch solver = new ProofNumberSearch(1 << 12);
+        assertEquals(ProofNumberSearch.Result.WIN, solver.solve(b, 0, 0));
+        b.makeMove(solver.bestMove());
+        assertEquals(BP, b.winner());
+    }
+
+    @Test
+    public void solveNoWinTest() {
+        Board b = position("a1 c2", "h8 e5 a8", WP);
+        ProofNumberSearch solver = new ProofNumberSearch(1 << 12);
+        assertEquals(ProofNumberSearch.Result.NO_WIN,
+                     solver.solve(b, 0, 0));
+        assertEquals(0, b.movesMade());
+        assertNull(solver.bestMove());
+    }
+
+    @Test
+    public void solveDepthLimitTest() {
+        Board b = position("a1 c2", "h8 e5 a8", WP);
+        ProofNumberSearch solver = new ProofNumberSearch(1 << 12, 2);
+        assertEquals(ProofNumberSearch.Result.UNKNOWN,
+                     solver.solve(b, 0, 0));
+        assertEquals(0, b.movesMade());
+        b = position("a1 c2", "h8 e5 a8", BP);
+        assertEquals(ProofNumberSearch.Result.WIN, solver.solve(b, 0, 0));
+    }
+
+    @Test
+    public void solveLimitTest() {
+        Board b = new Board();
+        ProofNumberSearch solver = new ProofNumberSearch(1 << 12);
+        assertEquals(ProofNumberSearch.Result.UNKNOWN,
+                     solver.solve(b, 1000, 0));
+        assertEquals(1000, solver.nodes());
+        assertEquals(new Board().position(), b.position());
+    }
+
+    @Test
+    public void monteCarloWinTest() {
+        Board b = position("a1 c2", "h8 e5 a8", BP);
+        MonteCarloPlayer player =
+            new MonteCarloPlayer(BP, new Game(), 2, 2000, 10000, 1 << 16);
+        Move move = player.findMove(b);
+        assertEquals(0, b.movesMade());
+        assertTrue(b.isLegal(move));
+        b.makeMove(move);
+        assertEquals(BP, b.winner());
+    }
+
+    @Test
+    public void searchStatsTest() {
+        Board b = new Board();
+        MachinePlayer player = new MachinePlayer(BP, new Game());
+        player.findMove(b);
+        SearchStats stats = player.stats();
+        assertEquals(new Board().position(), b.position());
+        assertEquals(4, stats.depth);
+        assertTrue(stats.nodes > 0 && stats.evals > 0);
+        assertTrue(stats.pvsResearches > 0);
+        assertEquals(stats.failLows + stats.failHighs + stats.pvsResearches
+                     + stats.reductionResearches, stats.researches());
+    }
+
+    @Test
+    public void pruningTest() {
+        Board b = position("a1 c2", "h8 e5 a8", WP);
+        EngineOptions options = new EngineOptions();
+        MachinePlayer player = new MachinePlayer(WP, new Game(), options);
+        options.set("null", "off");
+        options.set("lmr", "off");
+        options.set("hash", "1");
+        player.findMove(b);
+        long fullNodes = player.stats().nodes;
+        int fullScore = player.stats().score;
+        options.set("null", "on");
+        options.set("lmr", "on");
+        options.set("hash", "2");
+        player.findMove(b);
+        assertTrue(player.stats().nodes <= fullNodes);
+        assertEquals(fullScore, player.stats().score);
+        assertEquals(0, b.movesMade());
+    }
+
+    @Test
+    public void optionsTest() {
+        EngineOptions options = new EngineOptions();
+        options.set("threads", "3");
+        options.set("time", "250");
+        options.set("ponder", "on");
+        assertEquals(3, options.threads());
+        assertEquals(250, options.moveMillis());
+        assertTrue(options.ponder());
+        for (String[] bad : new String[][] {
+                {"threads", "0"}, {"hash", "x"}, {"ponder", "yes"},
+                {"speed", "1"}}) {
+            try {
+                options.set(bad[0], bad[1]);
+                fail("accepted " + bad[0] + " " + bad[1]);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void threadedSearchTest() {
+        Board b = new Board();
+        EngineOptions options = new EngineOptions();
+        options.set("threads", "3");
+        options.set("depth", "0");
+        options.set("time", "300");
+        MachinePlayer player = new MachinePlayer(BP, new Game(), options);
+        player.findMove(b);
+        assertTrue(player.stats().depth >= 1);
+        assertTrue(player.stats().millis < 3000);
+        assertEquals(new Board().position(), b.position());
+    }
+
+    @Test
+    public void clockedDepthTest() {
+        Game game = new Game();
+        game.setBoard(new Board());
+        game.setClock(new GameClock(20000, 0));
+        MachinePlayer player = new MachinePlayer(BP, game);
+        assertTrue(game.getBoard().isLegal(player.makeMove()));
+        assertTrue(player.stats().depth > EngineOptions.DEFAULT_DEPTH);
+        EngineOptions options = new EngineOptions();
+        options.set("depth", "3");
+        player = new MachinePlayer(BP, game, options);
+        player.makeMove();
+        assertEquals(3, player.stats().depth);
+    }
+
+    @Test
+    public void helperDepthTest() {
+        EngineOptions options = new EngineOptions();
+        options.set("threads", "2");
+        options.set("depth", "0");
+        options.set("time", "1000");
+        MachinePlayer player = new MachinePlayer(BP, new Game(), options);
+        player.findMove(new Board());
+        SearchStats helper = player.helperStats(0);
+        assertTrue(helper.depth > EngineOptions.DEFAULT_DEPTH);
+        assertTrue(helper.nodes > 0);
+        assertTrue(player.stats().nodes > helper.nodes);
+    }
+
+    @Test
+    public void protocolTest() {
+        java.io.ByteArrayOutputStream bytes =
+            new java.io.ByteArrayOutputStream();
+        EngineProtocol protocol =
+            new EngineProtocol(new EngineOptions(), null,
+                               new java.io.PrintStream(bytes, true));
+        protocol.execute("position startpos moves b1-b3");
+        protocol.execute("go depth 3");
+        protocol.waitForSearch();
+        protocol.execute("position board -------w/--------/--------/"
+                         + "---w----/--------/--------/--b-----/b-------"
+                         + " b");
+        protocol.execute("go nodes 1000");
+        protocol.waitForSearch();
+        protocol.execute("position startpos moves a1-a2");
+        String[] lines = bytes.toString().split("\\R");
+        assertEquals(7, lines.length);
+        for (int depth = 1; depth <= 3; depth += 1) {
+            assertTrue(lines[depth - 1].matches(
+                "info depth " + depth + " score cp -?\\d+ nodes \\d+"
+                + " nps \\d+ time \\d+ pv [a-h]\\d-[a-h]\\d.*"));
+        }
+        Board b = new Board();
+        b.makeMove(Move.create("b1-b3", b));
+        String best = lines[3].replaceFirst("bestmove ", "");
+        assertTrue(lines[2].contains("pv " + best));
+        assertTrue(b.isLegal(Move.create(best, b)));
+        assertTrue(lines[4].matches("info depth 1 score mate 1 .*"));
+        assertEquals("bestmove a1-b1", lines[5]);
+        assertEquals("info string error: illegal move: a1-a2", lines[6]);
+    }
+
+    @Test
+    public void leafMateDistanceTest() {
+        Piece[][] contents = {
+            { EMP, BP, EMP, EMP },
+            { EMP, EMP, WP, EMP },
+            { EMP, EMP, EMP, BP },
+            { WP, EMP, WP, EMP },
+        };
+        Board b = new Board(contents, BP);
+        assertNull(b.winningMove());
+        Board after = new Board(b, false);
+        after.makeMove(Move.create("b1-a2", after));
+        Move[] replies = new Move[Board.MAX_MOVES];
+        int n = after.legalMoves(replies);
+        assertTrue(n > 0);
+        for (int i = 0; i < n; i += 1) {
+            Board reply = new Board(after, false);
+            reply.makeMove(replies[i]);
+            assertEquals(BP, reply.winner());
+        }
+        MachinePlayer player = new MachinePlayer(BP, new Game());
+        SearchLimits limits = new SearchLimits();
+        limits.depth = 1;
+        player.analyze(b, limits);
+        assertEquals(MachinePlayer.WIN_VALUE - 2, player.stats().score);
+        assertEquals(1, MachinePlayer.movesToMate(player.stats().score));
+    }
+
+    @Test
+    public void multiPVTest() {
+        Board b = new Board();
+        MachinePlayer player = new MachinePlayer(BP, new Game());
+        Move[] best = new Move[3];
+        int[] values = new int[3];
+        player.setListener((k, depth, score, nodes, millis, pv) -> {
+                assertEquals(depth, player.stats().depth);
+                assertFalse(pv.isEmpty());
+                best[k - 1] = pv.get(0);
+                values[k - 1] = score;
+            });
+        SearchLimits limits = new SearchLimits();
+        limits.depth = 4;
+        limits.lines = 3;
+        player.analyze(b, limits);
+        assertEquals(new Board().position(), b.position());
+        assertSame(best[0], player.bestMove());
+        assertEquals(values[0], player.stats().score);
+        assertTrue(best[0] != best[1] && best[1] != best[2]
+                   && best[0] != best[2]);
+        assertTrue(values[0] >= values[1] && values[1] >= values[2]);
+        for (Move move : best) {
+            assertTrue(b.isLegal(move));
+        }
+    }
+
+    @Test
+    public void stopTest() throws InterruptedException {
+        Board b = new Board();
+        EngineOptions options = new EngineOptions();
+        options.set("depth", "30");
+        MachinePlayer player = new MachinePlayer(BP, new Game(), options);
+        Thread searcher = new Thread(() -> player.findMove(b));
+        searcher.start();
+        Thread.sleep(200);
+        long start = System.currentTimeMillis();
+        player.stop();
+        searcher.join(1000);
+        assertFalse(searcher.isAlive());
+        assertTrue(System.currentTimeMillis() - start < 100);
+        assertTrue(new Board().isLegal(player.bestMove()));
+        assertTrue(player.stats().depth < 30);
+    }
+
+    @Test
+    public void flightEventsTest() throws java.io.IOException {
+        MachinePlayer player = new MachinePlayer(BP, new Game());
+        java.nio.file.Path file =
+            java.nio.file.Files.createTempFile("loa", ".jfr");
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+            recording.enable("loa.Search");
+            recording.enable("loa.Iteration");
+            recording.start();
+            player.findMove(new Board());
+            recording.stop();
+            recording.dump(file);
+        }
+        int searches = 0, iterations = 0;
+        for (jdk.jfr.consumer.RecordedEvent event
+                 : jdk.jfr.consumer.RecordingFile.readAllEvents(file)) {
+            switch (event.getEventType().getName()) {
+            case "loa.Search":
+                searches += 1;
+                assertEquals(4, event.getInt("depth"));
+                assertEquals(player.stats().nodes, event.getLong("nodes"));
+                assertEquals(player.bestMove().toString(),
+                             event.getString("bestMove"));
+                break;
+            case "loa.Iteration":
+                iterations += 1;
+                break;
+            default:
+                break;
+            }
+        }
+        java.nio.file.Files.delete(file);
+        assertEquals(1, searches);
+        assertEquals(4, iterations);
+    }
+
+    @Test
+    public void transpositionFileTest() throws java.io.IOException {
+        java.nio.file.Path file =
+            java.nio.file.Files.createTempFile("loa", ".tt");
+        java.nio.file.Files.delete(file);
+        try {
+            Board b = new Board();
+            Move move = Move.create("b1-b3", b);
+            TranspositionTable table =
+                TranspositionTable.open(file.toFile(), 1);
+            assertEquals(1, table.megabytes());
+            assertEquals(0, table.probe(b.key()));
+            table.newSearch();
+            table.store(b.key(), 5, -7, TranspositionTable.LOWER, move);
+            TranspositionTable other =
+                TranspositionTable.open(file.toFile(), 64);
+            assertEquals(1, other.megabytes());
+            long entry = other.probe(b.key());
+            assertEquals(5, TranspositionTable.depth(entry));
+            assertEquals(-7, TranspositionTable.value(entry));
+            assertEquals(TranspositionTable.LOWER,
+                         TranspositionTable.bound(entry));
+            assertEquals(move, TranspositionTable.move(entry));
+            other.clear();
+            assertEquals(0, table.probe(b.key()));
+            java.nio.file.Files.write(file, new byte[] { 1, 2, 3 });
+            try {
+                TranspositionTable.open(file.toFile(), 1);
+                fail("opened a bad table file");
+            } catch (java.io.IOException excp) {
+                /* Expected. */
+            }
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void tablebaseTest() throws java.io.IOException {
+        TablebaseGenerator generator = new TablebaseGenerator(5, 2, 2);
+        generator.generate();
+        java.nio.file.Path file =
+            java.nio.file.Files.createTempFile("loa", ".tb");
+        generator.write(file.toFile());
+        Tablebase tablebase = Tablebase.open(file.toFile());
+        java.nio.file.Files.delete(file);
+        Tablebase generated = generator.tablebase();
+        java.util.Random random = new java.util.Random(1);
+        Move[] moves = new Move[Board.MAX_MOVES];
+        Board b = new Board(5), won = null;
+        for (int k = 0; k < 2000; k += 1) {
+            Piece[][] contents = new Piece[5][5];
+            for (Piece[] row : contents) {
+                java.util.Arrays.fill(row, EMP);
+            }
+            for (int placed = 0; placed < 4; ) {
+                int sq = random.nextInt(25);
+                if (contents[sq / 5][sq % 5] == EMP) {
+                    contents[sq / 5][sq % 5] = placed % 2 == 0 ? BP : WP;
+                    placed += 1;
+                }
+            }
+            b.initialize(contents, random.nextBoolean() ? BP : WP);
+            int entry = tablebase.probe(b);
+            assertEquals(generated.probe(b), entry);
+            if (b.winner() != null) {
+                assertEquals(Tablebase.entry(b.winner() == b.turn(), 0),
+                             entry);
+                continue;
+            }
+            int win = -1, resist = -1;
+            boolean draw = false;
+            for (int i = b.legalMoves(moves) - 1; i >= 0; i -= 1) {
+                b.makeMove(moves[i]);
+                int child = b.winner() != null
+                    ? Tablebase.entry(b.winner() == b.turn(), 0)
+                    : tablebase.probe(b);
+                b.retract();
+                if (Tablebase.loses(child)) {
+                    int d = Tablebase.distance(child) + 1;
+                    win = win < 0 ? d : Math.min(win, d);
+                } else if (Tablebase.wins(child)) {
+                    resist = Math.max(resist, Tablebase.distance(child));
+                } else {
+                    draw = true;
+                }
+            }
+            assertEquals(win >= 0 ? Tablebase.entry(true, win)
+                         : draw ? 0 : Tablebase.entry(false, resist + 1),
+                         entry);
+            if (won == null && win >= 3) {
+                won = new Board(b);
+            }
+        }
+        assertNotNull(won);
+        EngineOptions options = new EngineOptions();
+        options.set("depth", "2");
+        options.setTablebase(tablebase);
+        MachinePlayer player = new MachinePlayer(won.turn(), new Game(),
+                                                 options);
+        int distance = Tablebase.distance(tablebase.probe(won));
+        assertEquals(MachinePlayer.WIN_VALUE - distance,
+                     player.findMove(won));
+        assertTrue(player.stats().tablebaseHits > 0);
+        won.makeMove(player.bestMove());
+        assertEquals(Tablebase.entry(false, distance - 1),
+                     tablebase.probe(won));
+    }
+
+    @Test
+    public void leafBatchTest() {
+        java.util.Random random = new java.util.Random(2);
+        Move[] moves = new Move[Board.MAX_MOVES];
+        LeafBatch batch = new LeafBatch();
+        int[] expected = new int[LeafBatch.SIZE];
+        for (int size : new int[] { 6, 8, 10 }) {
+            Board b = new Board(size);
+            for (int n = b.legalMoves(moves); b.winner() == null && n > 0;
+                 n = b.legalMoves(moves)) {
+                batch.reset(b);
+                for (int i = 0; i < n && i < LeafBatch.SIZE; i += 1) {
+                    batch.add(moves[i]);
+                    b.makeMove(moves[i]);
+                    Piece side = b.turn(), opp = side.opposite();
+                    Geometry g = b.geometry();
+                    expected[i] = b.winner() != null
+                        ? (b.winner() == side ? 1 : -1)
+                        * MachinePlayer.WIN_VALUE
+                        : MachinePlayer.GROUP_WEIGHT
+                        * (b.piecesContiguous(opp) - b.piecesContiguous(side))
+                        + MachinePlayer.SPREAD_WEIGHT
+                        * (LeafBatch.spread(g, b.bits(opp), b.bitsHigh(opp))
+                           - LeafBatch.spread(g, b.bits(side),
+                                              b.bitsHigh(side)));
+                    b.retract();
+                }
+                for (LeafKernel kernel
+                         : new LeafKernel[] { LeafBatch.SCALAR,
+                                              LeafBatch.KERNEL }) {
+                    java.util.Arrays.fill(batch.values, 0);
+                    batch.score(kernel);
+                    for (int i = 0; i < batch.count; i += 1) {
+                        assertEquals(expected[i], batch.values[i]);
+                    }
+                }
+                b.makeMove(moves[random.nextInt(n)]);
+            }
+        }
+    }
+
+    @Test
+    public void selfPlayTest() throws Exception {
+        java.util.List<SelfPlayJob> jobs = new java.util.ArrayList<>();
+        for (int k = 0; k < 4; k += 1) {
+            jobs.add(new SelfPlayJob(k, 17 + k, 6, 2, 60, "ab:depth=1",
+                                     "ab:depth=2"));
+        }
+        assertEquals(jobs.get(3).toString(),
+                     SelfPlayJob.parse(jobs.get(3).toString()).toString());
+        SelfPlayCoordinator coordinator = new SelfPlayCoordinator(jobs, 0);
+        Thread[] workers = new Thread[2];
+        for (int i = 0; i < workers.length; i += 1) {
+            workers[i] = new Thread(() -> {
+                try {
+                    SelfPlayWorker.run("localhost", coordinator.port());
+                } catch (java.io.IOException excp) {
+                    throw new java.io.UncheckedIOException(excp);
+                }
+            });
+            workers[i].start();
+        }
+        java.util.List<String> results = coordinator.run();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(4, results.size());
+        for (int k = 0; k < results.size(); k += 1) {
+            String[] words = results.get(k).split(" ");
+            assertEquals("result", words[0]);
+            assertEquals(k, Integer.parseInt(words[1]));
+            assertEquals(words.length - 4, Integer.parseInt(words[3]));
+            Board b = new Board(6);
+            for (int i = 4; i < words.length; i += 1) {
+                Move move = Move.create(words[i], b);
+                assertTrue(b.isLegal(move));
+                b.makeMove(move);
+            }
+            assertEquals(words[2],
+                         b.winner() == null ? "none" : b.winner().fullName());
+        }
+        assertEquals(results.get(0),
+                     SelfPlayWorker.play(jobs.get(0)));
+    }
+
+    @Test
+    public void reporterTest() {
+        java.io.PrintStream err = System.err;
+        java.io.ByteArrayOutputStream bytes =
+            new java.io.ByteArrayOutputStream();
+        int level = Reporter.getMessageLevel();
+        try {
+            System.setErr(new java.io.PrintStream(bytes, true));
+            Reporter.setMessageLevel(2);
+            assertTrue(Reporter.enabled(2));
+            assertFalse(Reporter.enabled(3));
+            Reporter.setAsynchronous(true);
+            StringBuilder text = new StringBuilder("before");
+            Reporter.debug(3, "%s", text);
+            Reporter.debug(2, "%s", text);
+            text.append(" after");
+            Reporter.debug(1, "%d+%d=%d %d", 1, 2, 3, 4L);
+            Reporter.debug(1, "%s %s %s", "a", 'b', 3);
+            Reporter.setAsynchronous(false);
+            Reporter.debug(1, "%s", text);
+        } finally {
+            Reporter.setAsynchronous(false);
+            Reporter.setMessageLevel(level);
+            System.setErr(err);
+        }
+        String nl = System.lineSeparator();
+        assertEquals("before" + nl + "1+2=3 4" + nl + "a b 3" + nl
+                     + "before after" + nl, bytes.toString());
+    }
+
+    @Test
+    public void timeManagerTest() {
+        TimeManager time = new TimeManager();
+        time.startMove(60000, 1000, 0, 0);
+        long soft = time.softLimit();
+        assertTrue(soft > 1000 && soft < 60000 / 10);
+        assertTrue(time.hardLimit() >= soft);
+        assertTrue(time.hardLimit() <= 30000);
+        assertTrue(time.nextIteration(false));
+        time.startMove(60000, 1000, 0, 500);
+        assertEquals(500, time.hardLimit());
+        time.startMove(100, 0, 0, 0);
+        assertTrue(time.hardLimit() <= 100);
+        time.startMove(0);
+        assertEquals(Long.MAX_VALUE, time.deadline());
+        time.endMove();
+        assertEquals(0, time.overruns());
+    }
+
+    @Test
+    public void clockTest() {
+        GameClock clock = new GameClock(1000, 200);
+        clock.start(BP);
+        clock.stop();
+        assertTrue(clock.remaining(BP) > 1000 && clock.remaining(BP) <= 1200);
+        assertEquals(1000, clock.remaining(WP));
+        assertFalse(clock.flagged(BP));
+        clock.reset();
+        assertEquals(1000, clock.remaining(BP));
+    }
+
+    @Test
+    public void evalCacheTest() {
+        EvalCache cache = new EvalCache(16);
+        long key = new Board().key();
+        assertEquals(EvalCache.MISS, cache.get(key));
+        cache.put(key, -42);
+        assertEquals(-42, cache.get(key));
+        assertEquals(EvalCache.MISS, cache.get(key ^ (1L << 40)));
+        cache.put(key + 16 + (1L << 40), 7);
+        assertEquals(EvalCache.MISS, cache.get(key));
+    }
+
+}
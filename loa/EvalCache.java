@@ -0,0 +1,48 @@
+package loa;
+
+import java.util.Arrays;
+
+/** A lossy cache of static evaluations, keyed by Board.key().
+ *
+ *  The cache is direct-mapped: the low-order bits of a key select a
+ *  slot, which holds the high-order 32 bits of the key and the value,
+ *  packed into a single long.  Since a long is written and read
+ *  atomically, threads may share a cache without locking; a write may
+ *  replace another thread's entry, but no reader sees a mixture of two.
+ *  @author Peter Lee
+ */
+class EvalCache {
+
+    /** Value returned by get for a key that is not present. */
+    static final long MISS = Long.MIN_VALUE;
+
+    /** A cache with at least ENTRIES slots. */
+    EvalCache(int entries) {
+        _slots = new long[Integer.highestOneBit(Math.max(1, entries - 1))
+                          << 1];
+    }
+
+    /** Return the value stored for KEY, or MISS if there is none. */
+    long get(long key) {
+        long entry = _slots[(int) key & (_slots.length - 1)];
+        if ((entry ^ key) >>> 32 != 0 || entry == 0) {
+            return MISS;
+        }
+        return (int) entry;
+    }
+
+    /** Record VALUE as the value for KEY. */
+    void put(long key, int value) {
+        _slots[(int) key & (_slots.length - 1)] =
+            (key & ~0xFFFFFFFFL) | (value & 0xFFFFFFFFL);
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_slots, 0);
+    }
+
+    /** Packed entries: high 32 bits of the key, and the value. */
+    private final long[] _slots;
+
+}
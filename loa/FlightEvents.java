@@ -0,0 +1,151 @@
+package loa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Java Flight Recorder events describing what the engine and the game
+ *  are doing, for profiling a running program after the fact.
+ *
+ *  All of them are disabled by default, so that an ordinary recording
+ *  does not include them, and when disabled each costs no more than
+ *  allocating an event object (which the compiler usually eliminates)
+ *  and a test.  None is emitted more often than once per iteration of a
+ *  search.  To record them, enable them by name, as in
+ *      java -XX:StartFlightRecording:filename=loa.jfr,+loa.Search#enabled=true
+ *  or with a custom settings file, and read the recording with
+ *      jfr print --events loa.Search loa.jfr
+ *  Each event records the thread that emitted it, so the iterations of
+ *  helper searchers can be told from those of the main searcher.
+ *  @author Peter Lee
+ */
+final class FlightEvents {
+
+    /** Not instantiable. */
+    private FlightEvents() {
+    }
+
+    /** The search for one move, or one analysis, with all its threads. */
+    @Name("loa.Search")
+    @Label("Search")
+    @Category({ "Lines of Action", "Engine" })
+    @Description("Search for one move by the alpha-beta engine")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Search extends Event {
+        /** Deepest iteration completed. */
+        @Label("Depth")
+        int depth;
+        /** Value of the deepest iteration, for the side to move. */
+        @Label("Score")
+        int score;
+        /** Nodes searched by all threads. */
+        @Label("Nodes")
+        long nodes;
+        /** Number of search threads. */
+        @Label("Threads")
+        int threads;
+        /** Number of principal variations found. */
+        @Label("Lines")
+        int lines;
+        /** The move chosen. */
+        @Label("Best Move")
+        String bestMove;
+    }
+
+    /** One completed iteration of a search, by one searcher. */
+    @Name("loa.Iteration")
+    @Label("Search Iteration")
+    @Category({ "Lines of Action", "Engine" })
+    @Description("Completed iteration of iterative deepening")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Iteration extends Event {
+        /** Depth of the iteration. */
+        @Label("Depth")
+        int depth;
+        /** Value found, for the side to move. */
+        @Label("Score")
+        int score;
+        /** Nodes searched by this searcher so far in this search. */
+        @Label("Nodes")
+        long nodes;
+        /** Best move found. */
+        @Label("Best Move")
+        String bestMove;
+    }
+
+    /** Allocation or clearing of a transposition table. */
+    @Name("loa.TranspositionTable")
+    @Label("Transposition Table")
+    @Category({ "Lines of Action", "Engine" })
+    @Description("Transposition table allocated (on creation or resize)"
+                 + " or cleared")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Table extends Event {
+        /** "allocate" or "clear". */
+        @Label("Action")
+        String action;
+        /** Size of the table. */
+        @Label("Megabytes")
+        int megabytes;
+    }
+
+    /** The start of a game. */
+    @Name("loa.GameStart")
+    @Label("Game Start")
+    @Category({ "Lines of Action", "Game" })
+    @Enabled(false)
+    @StackTrace(false)
+    static final class GameStart extends Event {
+        /** Number of rows and columns. */
+        @Label("Board Size")
+        int size;
+        /** Kind of player playing black. */
+        @Label("Black")
+        String black;
+        /** Kind of player playing white. */
+        @Label("White")
+        String white;
+    }
+
+    /** The end of a game, lasting from its start. */
+    @Name("loa.GameEnd")
+    @Label("Game End")
+    @Category({ "Lines of Action", "Game" })
+    @Description("End of a game; the duration is that of the game")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class GameEnd extends Event {
+        /** "black", "white", or "none". */
+        @Label("Winner")
+        String winner;
+        /** "connected", "time", or "stopped". */
+        @Label("Reason")
+        String reason;
+        /** Number of moves made on the board. */
+        @Label("Moves")
+        int moves;
+    }
+
+    /** The processing of one command typed to a Game. */
+    @Name("loa.Command")
+    @Label("Command")
+    @Category({ "Lines of Action", "Game" })
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Command extends Event {
+        /** The first word of the command. */
+        @Label("Command")
+        String command;
+        /** True iff the line was a command, rather than a move. */
+        @Label("Recognized")
+        boolean recognized;
+    }
+
+}
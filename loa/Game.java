@@ -3,8 +3,11 @@ package loa;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -12,17 +15,30 @@ import static loa.Piece.*;
 import static loa.Main.*;
 
 /** Represents one game of Lines of Action.
+ *
+ *  Input is read by a separate thread, and automated players think on
+ *  threads of their own, so that commands are seen while they think.
+ *  Then "stop" makes the player move at once, "quit" exits at once, and
+ *  a command that stops the game abandons the search.  Other input is
+ *  set aside and processed after the move, exactly as if it had been
+ *  read then.
  *  @author Peter Lee  */
 class Game {
 
-    /** A new series of Games. */
+    /** A new series of Games with default engine options. */
     Game() {
+        this(new EngineOptions());
+    }
+
+    /** A new series of Games whose automated players use OPTIONS. */
+    Game(EngineOptions options) {
         _randomSource = new Random();
+        _options = options;
 
         _players = new Player[2];
         _input = new BufferedReader(new InputStreamReader(System.in));
         _players[0] = new HumanPlayer(BP, this);
-        _players[1] = new MachinePlayer(WP, this);
+        _players[1] = new MachinePlayer(WP, this, _options);
         _playing = false;
     }
 
@@ -31,6 +47,17 @@ class Game {
         return _board;
     }
 
+    /** Make BOARD the current board, as for a game played without
+     *  commands (see SelfPlayWorker). */
+    void setBoard(Board board) {
+        _board = board;
+    }
+
+    /** Seed my random-number generator with SEED. */
+    void setSeed(long seed) {
+        _randomSource.setSeed(seed);
+    }
+
     /** Quit the game. */
     private void quit() {
         System.exit(0);
@@ -39,36 +66,155 @@ class Game {
     /** Return a move.  Processes any other intervening commands as
      *  well.  Exits with null if the value of _playing changes. */
     Move getMove() {
-        try {
-            boolean playing0 = _playing;
-            while (_playing == playing0) {
-                prompt();
+        boolean playing0 = _playing;
+        while (_playing == playing0) {
+            prompt();
 
-                String line = _input.readLine();
-                if (line == null) {
-                    quit();
-                }
+            String line = nextLine();
+            if (line == null) {
+                quit();
+            }
 
-                line = line.trim();
-                if (!processCommand(line)) {
-                    Move move = Move.create(line, _board);
-                    if (move == null) {
-                        error("invalid move: %s%n", line);
-                    } else if (!_playing) {
-                        error("game not started");
-                    } else if (!_board.isLegal(move)) {
-                        error("illegal move: %s%n", line);
-                    } else {
-                        return move;
-                    }
+            line = line.trim();
+            if (!processCommand(line)) {
+                Move move = Move.create(line, _board);
+                if (move == null) {
+                    error("invalid move: %s%n", line);
+                } else if (!_playing) {
+                    error("game not started");
+                } else if (!_board.isLegal(move)) {
+                    error("illegal move: %s%n", line);
+                } else {
+                    return move;
                 }
             }
-        } catch (IOException excp) {
-            error(1, "unexpected I/O error on input");
         }
         return null;
     }
 
+    /** Return the next line of input, or null at the end of input.  Lines
+     *  set aside while an automated player was thinking come first. */
+    private String nextLine() {
+        String line = _pending.poll();
+        if (line == null) {
+            line = poll(-1);
+        }
+        return line.equals(END_OF_INPUT) ? null : line;
+    }
+
+    /** Return the next entry in _lines, waiting at most MILLIS
+     *  milliseconds (indefinitely if MILLIS is negative), or null if there
+     *  is none by then. */
+    private String poll(long millis) {
+        startReader();
+        try {
+            if (millis < 0) {
+                return _lines.take();
+            }
+            return _lines.poll(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return END_OF_INPUT;
+        }
+    }
+
+    /** Start the thread that copies lines of input to _lines, if it is
+     *  not already running. */
+    private void startReader() {
+        if (_reader != null) {
+            return;
+        }
+        _reader = new Thread(() -> {
+            try {
+                for (String line = _input.readLine(); line != null;
+                     line = _input.readLine()) {
+                    _lines.add(line);
+                }
+            } catch (IOException excp) {
+                error(1, "unexpected I/O error on input");
+            }
+            _lines.add(END_OF_INPUT);
+        });
+        _reader.setDaemon(true);
+        _reader.start();
+    }
+
+    /** Return the move chosen by PLAYER, an automated player, which thinks
+     *  on another thread while this one reads input.  "stop" makes PLAYER
+     *  move at once, and so does running out of time on the game clock.
+     *  "quit" exits at once.  The first command that stops the game
+     *  (STOPPING_COMMANDS) abandons the move: it is processed once PLAYER
+     *  has stopped, and the result is null.  All other input goes to
+     *  _pending.  If PLAYER fails, its exception is rethrown here, as if
+     *  it had thought on this thread. */
+    private Move think(Player player) {
+        Move[] move = new Move[1];
+        Throwable[] failure = new Throwable[1];
+        Thread searcher = new Thread(() -> {
+            try {
+                move[0] = player.makeMove();
+            } catch (RuntimeException | Error excp) {
+                failure[0] = excp;
+            } finally {
+                _lines.add(MOVE_READY);
+            }
+        });
+        searcher.setDaemon(true);
+        searcher.start();
+        long deadline = _clock == null ? Long.MAX_VALUE
+            : System.currentTimeMillis()
+              + Math.max(0, _clock.remaining(player.side()));
+        String abandon = null;
+        boolean stopping = false;
+        while (true) {
+            long wait = stopping ? 1
+                : deadline == Long.MAX_VALUE ? -1
+                : Math.max(1, deadline - System.currentTimeMillis());
+            String line = poll(wait);
+            if (line == null) {
+                stopping = true;
+                player.stop();
+                continue;
+            } else if (line.equals(MOVE_READY)) {
+                break;
+            }
+            String command = line.trim().split("\\s+")[0].toLowerCase();
+            if (command.equals("quit")) {
+                player.stop();
+                quit();
+            } else if (command.equals("stop")) {
+                stopping = true;
+                player.stop();
+            } else if (abandon == null
+                       && STOPPING_COMMANDS.matcher(command).matches()) {
+                abandon = line;
+                stopping = true;
+                player.stop();
+            } else {
+                _pending.add(line);
+            }
+        }
+        try {
+            searcher.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        } else if (failure[0] != null) {
+            throw (Error) failure[0];
+        }
+        if (abandon != null) {
+            processCommand(abandon.trim());
+            return null;
+        }
+        if (move[0] != null) {
+            System.out.println(player.side().abbrev().toUpperCase() + "::"
+                               + move[0]);
+        }
+        return move[0];
+    }
+
     /** Print a prompt for a move. */
     private void prompt() {
         System.out.print("> ");
@@ -82,6 +228,19 @@ class Game {
     /** If LINE is a recognized command other than a move, process it
      *  and return true.  Otherwise, return false. */
     private boolean processCommand(String line) {
+        FlightEvents.Command event = new FlightEvents.Command();
+        event.begin();
+        boolean recognized = executeCommand(line);
+        if (event.shouldCommit()) {
+            event.command = line.split("\\s+", 2)[0];
+            event.recognized = recognized;
+            event.commit();
+        }
+        return recognized;
+    }
+
+    /** Do the work of processCommand(LINE). */
+    private boolean executeCommand(String line) {
         if (line.length() == 0) {
             return true;
         }
@@ -96,13 +255,17 @@ class Game {
                 return true;
             case "auto":
                 _playing = false;
-                autoCommand(command.group(2).toLowerCase());
+                autoCommand(command.group(2).toLowerCase(),
+                            command.group(3).toLowerCase());
                 return true;
             case "seed":
                 seedCommand(command.group(2));
                 return true;
             case "clear":
                 _board.clear();
+                if (_clock != null) {
+                    _clock.reset();
+                }
                 return true;
             case "start":
                 _playing = true;
@@ -112,6 +275,9 @@ class Game {
                 try {
                     int column = Board.col(command.group(2).toLowerCase());
                     int row = Board.row(command.group(2).toLowerCase());
+                    if (!getBoard().geometry().inBounds(column, row)) {
+                        throw new IllegalArgumentException("off board");
+                    }
                     Piece pieces =
                             Piece.setValueOf(command.group(3).toLowerCase());
                     Piece nextPiece = pieces.opposite();
@@ -125,9 +291,28 @@ class Game {
                     System.out.println();
                 }
                 return true;
+            case "size":
+                sizeCommand(command.group(2));
+                return true;
             case "dump":
                 System.out.println(_board);
                 return true;
+            case "solve":
+                solveCommand(command.group(2));
+                return true;
+            case "analyze":
+                analyzeCommand(command.group(2));
+                return true;
+            case "time":
+                timeCommand(command.group(2), command.group(3));
+                return true;
+            case "clock":
+                System.out.println(_clock == null ? "No clock." : _clock);
+                return true;
+            case "setoption":
+                setOptionCommand(command.group(2).toLowerCase(),
+                                 command.group(3).toLowerCase());
+                return true;
             case "help":
                 help();
                 return true;
@@ -152,17 +337,103 @@ class Game {
         }
     }
 
-    /** Set player PLAYER ("white" or "black") to be an automated player. */
-    private void autoCommand(String player) {
+    /** Set player PLAYER ("white" or "black") to be an automated player
+     *  using ENGINE ("mcts" for Monte-Carlo tree search, or empty for the
+     *  default alpha-beta engine). */
+    private void autoCommand(String player, String engine) {
         try {
             Piece s = Piece.playerValueOf(player);
+            switch (engine) {
+            case "":
+                _players[s.ordinal()] = new MachinePlayer(s, this, _options);
+                break;
+            case "mcts":
+                _players[s.ordinal()] =
+                    new MonteCarloPlayer(s, this, _options);
+                break;
+            default:
+                error("unknown engine: %s%n", engine);
+                return;
+            }
             _playing = false;
-            _players[s.ordinal()] = new MachinePlayer(s, this);
         } catch (IllegalArgumentException excp) {
             error("unknown player: %s", player);
         }
     }
 
+    /** Set engine option NAME to VALUE, or print the current options if
+     *  NAME is empty.  Alpha-beta players read their options at every
+     *  move; Monte-Carlo players size their trees when created, so they
+     *  are replaced. */
+    private void setOptionCommand(String name, String value) {
+        if (name.isEmpty()) {
+            System.out.println(_options);
+            return;
+        }
+        try {
+            _options.set(name, value);
+        } catch (IllegalArgumentException excp) {
+            error("%s%n", excp.getMessage());
+            return;
+        }
+        for (int i = 0; i < _players.length; i += 1) {
+            if (_players[i] instanceof MonteCarloPlayer) {
+                Piece side = _players[i].side();
+                _players[i] = new MonteCarloPlayer(side, this, _options);
+            }
+        }
+    }
+
+    /** Give each side BASE seconds, plus INCREMENT seconds (0 if empty)
+     *  after each move, on a new game clock.  If BASE is empty or "off",
+     *  play without a clock. */
+    private void timeCommand(String base, String increment) {
+        if (base.isEmpty() || base.equalsIgnoreCase("off")) {
+            _clock = null;
+            return;
+        }
+        try {
+            long baseMillis = Math.round(Double.parseDouble(base) * 1000);
+            long incMillis = increment.isEmpty() ? 0
+                : Math.round(Double.parseDouble(increment) * 1000);
+            if (baseMillis <= 0 || incMillis < 0) {
+                error("invalid time control: %s %s%n", base, increment);
+                return;
+            }
+            _clock = new GameClock(baseMillis, incMillis);
+        } catch (NumberFormatException excp) {
+            error("Invalid number: %s %s%n", base, increment);
+        }
+    }
+
+    /** Make CLOCK (possibly null) the game clock, as for a game set up
+     *  without commands. */
+    void setClock(GameClock clock) {
+        _clock = clock;
+    }
+
+    /** Return the game clock, or null if the game is untimed. */
+    GameClock clock() {
+        return _clock;
+    }
+
+    /** Stop the game and start over on an N x N board (N a decimal
+     *  numeral). */
+    private void sizeCommand(String n) {
+        try {
+            Board board = new Board(Integer.parseInt(n));
+            _playing = false;
+            _board = board;
+            if (_clock != null) {
+                _clock.reset();
+            }
+        } catch (NumberFormatException excp) {
+            error("Invalid number: %s%n", n);
+        } catch (IllegalArgumentException excp) {
+            error("%s%n", excp.getMessage());
+        }
+    }
+
     /** Seed random-number generator with SEED (as a long). */
     private void seedCommand(String seed) {
         try {
@@ -172,12 +443,94 @@ class Game {
         }
     }
 
+    /** Try to prove that the side to move can force a win from the current
+     *  position, examining at most NODES (a decimal numeral, or empty for
+     *  the default) positions.  Reports the outcome, the node count, and
+     *  the time used. */
+    private void solveCommand(String nodes) {
+        long limit = DEFAULT_SOLVE_NODES;
+        if (!nodes.isEmpty()) {
+            try {
+                limit = Long.parseLong(nodes);
+            } catch (NumberFormatException excp) {
+                error("Invalid number: %s%n", nodes);
+                return;
+            }
+        }
+        if (_solver == null) {
+            _solver = new ProofNumberSearch(SOLVER_ENTRIES);
+        }
+        String side = _board.turn().fullName();
+        switch (_solver.solve(_board, limit, 0)) {
+        case WIN:
+            System.out.printf("%s wins with %s", side, _solver.bestMove());
+            break;
+        case NO_WIN:
+            System.out.printf("%s cannot force a win", side);
+            break;
+        default:
+            System.out.printf("%s: unknown", side);
+            break;
+        }
+        System.out.printf(" (%d nodes, %d ms)%n", _solver.nodes(),
+                          _solver.millis());
+    }
+
+    /** Show the best LINES (a decimal numeral, or empty for the multipv
+     *  option) moves for the side to move, each with its value and
+     *  principal variation, as found by a search limited by the engine
+     *  options. */
+    private void analyzeCommand(String lines) {
+        SearchLimits limits = new SearchLimits();
+        limits.lines = _options.multiPV();
+        if (!lines.isEmpty()) {
+            try {
+                limits.lines = Integer.parseInt(lines);
+            } catch (NumberFormatException excp) {
+                limits.lines = 0;
+            }
+            if (limits.lines <= 0) {
+                error("Invalid number: %s%n", lines);
+                return;
+            }
+        }
+        if (_analyst == null) {
+            _analyst = new MachinePlayer(_board.turn(), this, _options);
+        }
+        String[] report = new String[limits.lines];
+        long[] totals = new long[3];
+        _analyst.setListener((k, depth, score, nodes, millis, pv) -> {
+                StringBuilder line = new StringBuilder();
+                line.append(String.format("%d. %-8s", k,
+                                          MachinePlayer.scoreString(score)));
+                for (Move move : pv) {
+                    line.append(' ').append(move);
+                }
+                report[k - 1] = line.toString();
+                totals[0] = depth;
+                totals[1] = nodes;
+                totals[2] = millis;
+            });
+        _analyst.analyze(new Board(_board, false), limits);
+        for (String line : report) {
+            if (line != null) {
+                System.out.println(line);
+            }
+        }
+        System.out.printf("(depth %d, %d nodes, %d ms)%n", totals[0],
+                          totals[1], totals[2]);
+    }
+
     /** Play this game, printing any results. */
     public void play() {
         HashSet<Board> positionsPlayed = new HashSet<Board>();
         _board = new Board();
+        FlightEvents.GameEnd gameEvent = null;
 
         while (true) {
+            if (_playing != (gameEvent != null)) {
+                gameEvent = _playing ? gameStarted() : gameEnded(gameEvent);
+            }
             int playerInd = _board.turn().ordinal();
             Move next;
             if (_playing) {
@@ -186,8 +539,22 @@ class Game {
                     _playing = false;
                     continue;
                 }
-                next = _players[playerInd].makeMove();
-                assert !_playing || next != null;
+                if (_clock != null) {
+                    _clock.start(_board.turn());
+                }
+                Player player = _players[playerInd];
+                next = player instanceof HumanPlayer ? player.makeMove()
+                    : think(player);
+                if (_clock != null) {
+                    _clock.stop();
+                    if (next != null && _clock.flagged(_board.turn())) {
+                        System.out.printf("%s wins on time.%n",
+                                          capitalize(_board.turn()
+                                                     .opposite().fullName()));
+                        _playing = false;
+                        continue;
+                    }
+                }
             } else {
                 getMove();
                 next = null;
@@ -203,6 +570,48 @@ class Game {
         }
     }
 
+    /** Record the start of a game, returning the event that will record
+     *  its end. */
+    private FlightEvents.GameEnd gameStarted() {
+        FlightEvents.GameStart start = new FlightEvents.GameStart();
+        if (start.shouldCommit()) {
+            start.size = _board.size();
+            start.black = _players[BP.ordinal()].getClass().getSimpleName();
+            start.white = _players[WP.ordinal()].getClass().getSimpleName();
+            start.commit();
+        }
+        FlightEvents.GameEnd end = new FlightEvents.GameEnd();
+        end.begin();
+        return end;
+    }
+
+    /** Record the end of the game whose end is to be recorded by EVENT,
+     *  returning null. */
+    private FlightEvents.GameEnd gameEnded(FlightEvents.GameEnd event) {
+        if (event.shouldCommit()) {
+            Piece winner = null;
+            if (_board.gameOver()) {
+                winner = _board.winner();
+                event.reason = "connected";
+            } else if (_clock != null
+                       && (_clock.flagged(BP) || _clock.flagged(WP))) {
+                winner = _clock.flagged(BP) ? WP : BP;
+                event.reason = "time";
+            } else {
+                event.reason = "stopped";
+            }
+            event.winner = winner == null ? "none" : winner.fullName();
+            event.moves = _board.movesMade();
+            event.commit();
+        }
+        return null;
+    }
+
+    /** Return S with its first letter capitalized. */
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
     /** Print an announcement of the winner. */
     private void announceWinner() {
         if (_board.piecesContiguous(WP) == 1) {
@@ -232,16 +641,24 @@ class Game {
                 +
                                       "          "
                 +
-                "designations (a-h) and v and y are row designations (1-8):");
+                "designations (a-h) and v and y are row designations (1-8),\n"
+                +
+                "          or up to j and 10 on larger boards:");
         System.out.println("clear     Stop game and "
                 +
                 "return to initial position.");
+        System.out.println("size N    Stop game and start over on an N x N"
+                +
+                " board (4 <= N <= 10).");
         System.out.println("seed N    Seed the random number"
                 +
                 " with integer N.");
         System.out.println("auto P    P is white or black; "
                 +
                 "makes P into an AI. Stops game.");
+        System.out.println("auto P mcts  Same, but the AI uses "
+                +
+                "Monte-Carlo tree search.");
         System.out.println("manual P  P is white or black; "
                 +
                 "takes moves for P from terminal. "
@@ -251,6 +668,35 @@ class Game {
                 +
                 "into square cr. Stops game.");
         System.out.println("dump      Display the board in standard format.");
+        System.out.println("solve [N] Try to prove a forced win for the "
+                +
+                "side to move, examining\n"
+                +
+                "          at most N positions.");
+        System.out.println("analyze [K]  Show the best K moves for the side"
+                +
+                " to move, with their\n"
+                +
+                "          values and principal variations.");
+        System.out.println("time B I  Play with a clock: B seconds for each"
+                +
+                " side, plus I seconds\n"
+                +
+                "          per move.  \"time off\" removes the clock.");
+        System.out.println("clock     Show the time left for each side.");
+        System.out.println("setoption N V  Set engine option N to V."
+                +
+                "  Options are threads, hash (MB),\n"
+                +
+                "          time (ms per move), depth, ponder, null,"
+                +
+                " and lmr (on or off),\n"
+                +
+                "          and multipv (lines shown by analyze).");
+        System.out.println("setoption Show engine options.");
+        System.out.println("stop      Make an AI that is thinking move at"
+                +
+                " once.");
         System.out.println("quit      End program.");
         System.out.println("help");
         System.out.println("?         This text.");
@@ -269,8 +715,49 @@ class Game {
     /** Input source. */
     private BufferedReader _input;
 
+    /** Lines read from _input and not yet processed, followed by
+     *  END_OF_INPUT at the end of input.  While an automated player
+     *  thinks, MOVE_READY is added when it has chosen its move. */
+    private final LinkedBlockingQueue<String> _lines =
+        new LinkedBlockingQueue<>();
+
+    /** Lines set aside while an automated player was thinking. */
+    private final ArrayDeque<String> _pending = new ArrayDeque<>();
+
+    /** Thread copying _input to _lines, or null until input is first
+     *  needed. */
+    private Thread _reader;
+
+    /** Markers in _lines.  No line read from _input contains a newline,
+     *  so they cannot be mistaken for input. */
+    private static final String END_OF_INPUT = "\n", MOVE_READY = "\n\n";
+
+    /** Commands that stop the game, and so abandon a search in
+     *  progress. */
+    private static final Pattern STOPPING_COMMANDS =
+        Pattern.compile("manual|auto|set|size|clear");
+
     /** True if actually playing (game started and not stopped or finished).
      */
     private boolean _playing;
 
+    /** The game clock, or null if the game is untimed. */
+    private GameClock _clock;
+
+    /** Options for the automated players. */
+    private final EngineOptions _options;
+
+    /** Searcher used by the analyze command, created when first
+     *  needed. */
+    private MachinePlayer _analyst;
+
+    /** Solver used by the solve command, created when first needed. */
+    private ProofNumberSearch _solver;
+
+    /** Default node limit for the solve command. */
+    private static final long DEFAULT_SOLVE_NODES = 10000000;
+
+    /** Number of positions in the solver's node table. */
+    private static final int SOLVER_ENTRIES = 1 << 20;
+
 }
@@ -0,0 +1,91 @@
+package loa;
+
+import static loa.Piece.*;
+
+/** A chess-style clock for the two players of a Game.  Each side starts
+ *  with the same base time.  The clock of the side to move runs from
+ *  start until stop, and the side then receives a fixed increment.
+ *  @author Peter Lee
+ */
+class GameClock {
+
+    /** A clock giving each side BASEMILLIS milliseconds, plus
+     *  INCREMENTMILLIS after each of its moves. */
+    GameClock(long baseMillis, long incrementMillis) {
+        _base = baseMillis;
+        _increment = incrementMillis;
+        reset();
+    }
+
+    /** Give both sides their full base time again and stop the clock. */
+    void reset() {
+        _remaining[0] = _remaining[1] = _base;
+        _running = null;
+    }
+
+    /** Return the time SIDE has left, in milliseconds, not counting any
+     *  time used since its clock was started. */
+    long remaining(Piece side) {
+        return _remaining[side.ordinal()];
+    }
+
+    /** Return the increment, in milliseconds. */
+    long increment() {
+        return _increment;
+    }
+
+    /** Start the clock for SIDE. */
+    void start(Piece side) {
+        _running = side;
+        _started = System.currentTimeMillis();
+    }
+
+    /** Stop the running clock, if any, charging the time since start to
+     *  its side.  If that side has not run out of time, add the
+     *  increment.  Return the time charged. */
+    long stop() {
+        if (_running == null) {
+            return 0;
+        }
+        long used = System.currentTimeMillis() - _started;
+        int k = _running.ordinal();
+        _remaining[k] -= used;
+        if (_remaining[k] >= 0) {
+            _remaining[k] += _increment;
+        }
+        _running = null;
+        return used;
+    }
+
+    /** Return true iff SIDE has run out of time. */
+    boolean flagged(Piece side) {
+        return _remaining[side.ordinal()] < 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Black %s  White %s  (+%s)",
+                             format(remaining(BP)), format(remaining(WP)),
+                             format(_increment));
+    }
+
+    /** Return MILLIS formatted as minutes and seconds. */
+    private static String format(long millis) {
+        String sign = millis < 0 ? "-" : "";
+        millis = Math.abs(millis);
+        return String.format("%s%d:%04.1f", sign, millis / 60000,
+                             (millis % 60000) / 1000.0);
+    }
+
+    /** Time left for each side, in milliseconds, indexed by ordinal. */
+    private final long[] _remaining = new long[2];
+    /** Starting time for each side, in milliseconds. */
+    private final long _base;
+    /** Increment per move, in milliseconds. */
+    private final long _increment;
+    /** Side whose clock is running, or null. */
+    private Piece _running;
+    /** Time at which the running clock was started. */
+    private long _started;
+
+}
@@ -0,0 +1,184 @@
+package loa;
+
+import java.util.Random;
+
+import static loa.Piece.*;
+
+/** The shape of a board of a given size: how its squares are numbered in
+ *  bit sets, the hash keys of its squares, its lines of action, and its
+ *  initial position.  There is one Geometry for each supported size.
+ *
+ *  Boards of up to 8 x 8 use a "narrow" layout that fits in one long:
+ *  square (c, r) is bit (r - 1) * 8 + c - 1, exactly as on the standard
+ *  board, so smaller boards simply leave some bits unused.  Larger boards
+ *  use a "wide" layout spread over two longs: square (c, r) is bit
+ *  (r - 1) * WIDE_STRIDE + c - 1 of the 128-bit pair.  WIDE_STRIDE is
+ *  one more than the largest size, so each row is followed by at least
+ *  one unused bit and shifting a set of squares one column left or right
+ *  never carries a square onto the next row.
+ *  @author Peter Lee
+ */
+final class Geometry {
+
+    /** Smallest and largest supported board sizes. */
+    static final int MIN_SIZE = 4, MAX_SIZE = 10;
+
+    /** Distance between rows in the narrow and wide layouts. */
+    static final int NARROW_STRIDE = 8, WIDE_STRIDE = MAX_SIZE + 1;
+
+    /** Return the geometry of a SIZE x SIZE board.  Throws
+     *  IllegalArgumentException if SIZE is not supported. */
+    static Geometry of(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("unsupported board size: "
+                                               + size);
+        }
+        synchronized (GEOMETRIES) {
+            if (GEOMETRIES[size] == null) {
+                GEOMETRIES[size] = new Geometry(size);
+            }
+            return GEOMETRIES[size];
+        }
+    }
+
+    /** The geometry of a SIZE x SIZE board. */
+    private Geometry(int size) {
+        _size = size;
+        _wide = size > NARROW_STRIDE;
+        _stride = _wide ? WIDE_STRIDE : NARROW_STRIDE;
+        _bits = _stride * size;
+        _universal = new int[_bits];
+        _zobrist = new long[2][_bits];
+        for (int sq = 0; sq < _bits; sq += 1) {
+            _universal[sq] = (row(sq) - 1) * MAX_SIZE + col(sq) - 1;
+        }
+        Random keys = new Random(0x10AL);
+        for (long[] piece : _zobrist) {
+            for (int sq = 0; sq < _bits; sq += 1) {
+                piece[sq] = keys.nextLong();
+            }
+        }
+        _zobristTurn = keys.nextLong();
+        _lines = new LineTable(this);
+    }
+
+    /** Return the number of rows (and columns). */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff boards of this size use the two-long layout. */
+    boolean wide() {
+        return _wide;
+    }
+
+    /** Return the number of bit positions in the layout, including unused
+     *  ones.  Square indices are less than this. */
+    int bits() {
+        return _bits;
+    }
+
+    /** Return the distance between rows in the layout. */
+    int stride() {
+        return _stride;
+    }
+
+    /** Return true iff column C, row R is on the board. */
+    boolean inBounds(int c, int r) {
+        return 1 <= c && c <= _size && 1 <= r && r <= _size;
+    }
+
+    /** Return the square index of column C, row R. */
+    int sq(int c, int r) {
+        return (r - 1) * _stride + c - 1;
+    }
+
+    /** Return the column number of square index SQ. */
+    int col(int sq) {
+        return sq % _stride + 1;
+    }
+
+    /** Return the row number of square index SQ. */
+    int row(int sq) {
+        return sq / _stride + 1;
+    }
+
+    /** Return the index of square SQ on a MAX_SIZE x MAX_SIZE board
+     *  numbered by rows without gaps.  Move indices are computed from
+     *  these, so that they are the same for all sizes. */
+    int universal(int sq) {
+        return _universal[sq];
+    }
+
+    /** Return the hash key component for a piece with ordinal PIECE on
+     *  square SQ. */
+    long zobrist(int piece, int sq) {
+        return _zobrist[piece][sq];
+    }
+
+    /** Return the hash key component present iff white is to move. */
+    long zobristTurn() {
+        return _zobristTurn;
+    }
+
+    /** Return the line tables for this size. */
+    LineTable lines() {
+        return _lines;
+    }
+
+    /** Return the initial contents of a board of this size, indexed by
+     *  row - 1 and column - 1: black pieces along the top and bottom
+     *  edges and white along the sides, with the corners empty. */
+    Piece[][] initialContents() {
+        Piece[][] contents = new Piece[_size][_size];
+        for (int r = 0; r < _size; r += 1) {
+            for (int c = 0; c < _size; c += 1) {
+                boolean rowEdge = r == 0 || r == _size - 1,
+                    colEdge = c == 0 || c == _size - 1;
+                contents[r][c] = rowEdge == colEdge ? EMP
+                    : rowEdge ? BP : WP;
+            }
+        }
+        return contents;
+    }
+
+    /** Return the low word of the set of squares in the wide layout that
+     *  are in, or adjacent to a square in, the set (LO, HI).  The result
+     *  may include unused bit positions. */
+    static long wideNeighborhoodLo(long lo, long hi) {
+        long rowLo = lo | (lo << 1) | (lo >>> 1) | (hi << 63),
+            rowHi = hi | (hi << 1) | (hi >>> 1) | (lo >>> 63);
+        return rowLo | (rowLo << WIDE_STRIDE) | (rowLo >>> WIDE_STRIDE)
+            | (rowHi << (64 - WIDE_STRIDE));
+    }
+
+    /** Return the high word of the set whose low word is given by
+     *  wideNeighborhoodLo(LO, HI). */
+    static long wideNeighborhoodHi(long lo, long hi) {
+        long rowLo = lo | (lo << 1) | (lo >>> 1) | (hi << 63),
+            rowHi = hi | (hi << 1) | (hi >>> 1) | (lo >>> 63);
+        return rowHi | (rowHi << WIDE_STRIDE) | (rowHi >>> WIDE_STRIDE)
+            | (rowLo >>> (64 - WIDE_STRIDE));
+    }
+
+    /** Geometries created so far, indexed by size. */
+    private static final Geometry[] GEOMETRIES = new Geometry[MAX_SIZE + 1];
+
+    /** Board size. */
+    private final int _size;
+    /** True iff the wide layout is used. */
+    private final boolean _wide;
+    /** Distance between rows. */
+    private final int _stride;
+    /** Number of bit positions in the layout. */
+    private final int _bits;
+    /** Universal index of each square. */
+    private final int[] _universal;
+    /** Hash key components, indexed by piece ordinal and square. */
+    private final long[][] _zobrist;
+    /** Hash key component for white to move. */
+    private final long _zobristTurn;
+    /** Lines of action. */
+    private final LineTable _lines;
+
+}
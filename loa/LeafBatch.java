@@ -0,0 +1,236 @@
+package loa;
+
+import static loa.Piece.*;
+
+/** The children of one position at the search horizon, gathered to be
+ *  evaluated together.  The evaluation of a position, from the point of
+ *  view of the side to move, is
+ *      GROUP_WEIGHT * (G(opponent) - G(side)) +
+ *      SPREAD_WEIGHT * (spread(opponent) - spread(side))
+ *  where G is the number of groups of a side's pieces and spread is the
+ *  total distance (in king moves) of its pieces from their center of
+ *  mass, or +/-WIN_VALUE if the game is over.  (Those values do not
+ *  depend on where the children lie in a search, so they may be cached;
+ *  the caller adjusts them for distance from the root.)
+ *
+ *  The children are stored as a structure of arrays, with one slot per
+ *  child in each array, so that a LeafKernel can score many children at
+ *  once with SIMD instructions.  The coordinates of the pieces of the
+ *  side that moved are stored by piece and then by child: cols[J * SIZE +
+ *  I] is the column of piece J in child I.  Everything that costs a
+ *  table lookup or a loop over bits (group counts, centers of mass, and
+ *  the pieces of the other side, which change only on a capture) is
+ *  computed as children are added; the kernel does the arithmetic that
+ *  is the same for every child.
+ *  @author Peter Lee
+ */
+class LeafBatch {
+
+    /** Largest number of children in a batch.  A multiple of the number
+     *  of int lanes in any vector shape. */
+    static final int SIZE = 16;
+
+    /** Start a new batch of children of the position on BOARD.  Computes
+     *  what the children have in common, so it is done once for each
+     *  parent, followed by clear for each batch. */
+    void reset(Board board) {
+        _board = board;
+        _geometry = board.geometry();
+        Piece mover = board.turn(), other = mover.opposite();
+        _moverLo = board.bits(mover);
+        _moverHi = board.bitsHigh(mover);
+        _otherLo = board.bits(other);
+        _otherHi = board.bitsHigh(other);
+        _otherGroups = board.piecesContiguous(other);
+        _otherSpread = spread(_geometry, _otherLo, _otherHi);
+        pieces = 0;
+        _sumCols = _sumRows = 0;
+        for (int w = 0; w < 2; w += 1) {
+            for (long b = w == 0 ? _moverLo : _moverHi; b != 0; b &= b - 1) {
+                int sq = w * Long.SIZE + Long.numberOfTrailingZeros(b);
+                _pieceCols[pieces] = _geometry.col(sq);
+                _pieceRows[pieces] = _geometry.row(sq);
+                _pieceIndex[sq] = pieces;
+                _sumCols += _pieceCols[pieces];
+                _sumRows += _pieceRows[pieces];
+                pieces += 1;
+            }
+        }
+        count = 0;
+    }
+
+    /** Start a new batch of children of the same position as the last
+     *  one. */
+    void clear() {
+        count = 0;
+    }
+
+    /** Add the child reached by MOVE, a legal move in the position given
+     *  to reset.  There must be fewer than SIZE children already. */
+    void add(Move move) {
+        int i = count;
+        int c0 = move.getCol0(), r0 = move.getRow0(),
+            c1 = move.getCol1(), r1 = move.getRow1();
+        int from = _geometry.sq(c0, r0), to = _geometry.sq(c1, r1);
+        long moverLo = _moverLo, moverHi = _moverHi;
+        long otherLo = _otherLo, otherHi = _otherHi;
+        if (from < Long.SIZE) {
+            moverLo ^= 1L << from;
+        } else {
+            moverHi ^= 1L << (from - Long.SIZE);
+        }
+        if (to < Long.SIZE) {
+            moverLo ^= 1L << to;
+            otherLo &= ~(1L << to);
+        } else {
+            moverHi ^= 1L << (to - Long.SIZE);
+            otherHi &= ~(1L << (to - Long.SIZE));
+        }
+        moverGroups[i] = _board.components(moverLo, moverHi);
+        if (move.replacedPiece() == EMP) {
+            otherGroups[i] = _otherGroups;
+            otherSpread[i] = _otherSpread;
+        } else {
+            otherGroups[i] = _board.components(otherLo, otherHi);
+            otherSpread[i] = spread(_geometry, otherLo, otherHi);
+        }
+        int moved = _pieceIndex[from];
+        for (int j = 0; j < pieces; j += 1) {
+            cols[j * SIZE + i] = _pieceCols[j];
+            rows[j * SIZE + i] = _pieceRows[j];
+        }
+        cols[moved * SIZE + i] = c1;
+        rows[moved * SIZE + i] = r1;
+        int sumCols = _sumCols - c0 + c1, sumRows = _sumRows - r0 + r1;
+        centerCols[i] = (sumCols + pieces / 2) / pieces;
+        centerRows[i] = (sumRows + pieces / 2) / pieces;
+        count += 1;
+    }
+
+    /** Compute values[I], the evaluation of child I from the point of
+     *  view of its side to move, for each child, using KERNEL. */
+    void score(LeafKernel kernel) {
+        kernel.score(this, 0, count);
+        for (int i = 0; i < count; i += 1) {
+            if (moverGroups[i] == 1) {
+                values[i] = -MachinePlayer.WIN_VALUE;
+            } else if (otherGroups[i] == 1) {
+                values[i] = MachinePlayer.WIN_VALUE;
+            }
+        }
+    }
+
+    /** Compute values[I] for each child with the fastest kernel
+     *  available. */
+    void score() {
+        score(KERNEL);
+    }
+
+    /** Return the total distance (in king moves) from their center of
+     *  mass of the pieces on the squares whose low word is LO and high
+     *  word HI in the layout of GEOMETRY. */
+    static int spread(Geometry geometry, long lo, long hi) {
+        int n = Long.bitCount(lo) + Long.bitCount(hi);
+        if (n == 0) {
+            return 0;
+        }
+        int sumC = 0, sumR = 0;
+        for (int w = 0; w < 2; w += 1) {
+            for (long b = w == 0 ? lo : hi; b != 0; b &= b - 1) {
+                int sq = w * Long.SIZE + Long.numberOfTrailingZeros(b);
+                sumC += geometry.col(sq);
+                sumR += geometry.row(sq);
+            }
+        }
+        int c0 = (sumC + n / 2) / n, r0 = (sumR + n / 2) / n;
+        int total = 0;
+        for (int w = 0; w < 2; w += 1) {
+            for (long b = w == 0 ? lo : hi; b != 0; b &= b - 1) {
+                int sq = w * Long.SIZE + Long.numberOfTrailingZeros(b);
+                total += Math.max(Math.abs(geometry.col(sq) - c0),
+                                  Math.abs(geometry.row(sq) - r0));
+            }
+        }
+        return total;
+    }
+
+    /** The kernel that computes values one child at a time. */
+    static final LeafKernel SCALAR = (batch, first, last) -> {
+        for (int i = first; i < last; i += 1) {
+            int total = 0;
+            for (int j = 0; j < batch.pieces; j += 1) {
+                total += Math.max(Math.abs(batch.cols[j * SIZE + i]
+                                           - batch.centerCols[i]),
+                                  Math.abs(batch.rows[j * SIZE + i]
+                                           - batch.centerRows[i]));
+            }
+            batch.values[i] =
+                MachinePlayer.GROUP_WEIGHT
+                * (batch.moverGroups[i] - batch.otherGroups[i])
+                + MachinePlayer.SPREAD_WEIGHT
+                * (total - batch.otherSpread[i]);
+        }
+    };
+
+    /** The fastest kernel available: VectorLeafKernel if the
+     *  jdk.incubator.vector module is present (as with "java --add-modules
+     *  jdk.incubator.vector") and the system property loa.vector is not
+     *  "off", and otherwise SCALAR. */
+    static final LeafKernel KERNEL = fastestKernel();
+
+    /** Return the value of KERNEL. */
+    private static LeafKernel fastestKernel() {
+        if ("off".equals(System.getProperty("loa.vector"))
+            || ModuleLayer.boot().findModule("jdk.incubator.vector")
+               .isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (LeafKernel) Class.forName("loa.VectorLeafKernel")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return SCALAR;
+        }
+    }
+
+    /** Number of children. */
+    int count;
+    /** Number of pieces of the side that moved. */
+    int pieces;
+    /** Columns and rows of the pieces of the side that moved, by piece and
+     *  then child. */
+    final int[] cols = new int[MAX_PIECES * SIZE],
+        rows = new int[MAX_PIECES * SIZE];
+    /** Column and row of the center of mass of the pieces of the side that
+     *  moved, rounded. */
+    final int[] centerCols = new int[SIZE], centerRows = new int[SIZE];
+    /** Numbers of groups of the side that moved, and of the other side. */
+    final int[] moverGroups = new int[SIZE], otherGroups = new int[SIZE];
+    /** Spread of the other side's pieces. */
+    final int[] otherSpread = new int[SIZE];
+    /** Values of the children, for their sides to move, once scored. */
+    final int[] values = new int[SIZE];
+
+    /** Largest number of pieces of one side. */
+    private static final int MAX_PIECES = 2 * (Geometry.MAX_SIZE - 2);
+
+    /** The parent position. */
+    private Board _board;
+    /** Its shape. */
+    private Geometry _geometry;
+    /** Squares of the side to move, and of the other side, in the
+     *  parent. */
+    private long _moverLo, _moverHi, _otherLo, _otherHi;
+    /** Groups and spread of the other side in the parent. */
+    private int _otherGroups, _otherSpread;
+    /** Columns and rows of the pieces of the side to move in the
+     *  parent. */
+    private final int[] _pieceCols = new int[MAX_PIECES],
+        _pieceRows = new int[MAX_PIECES];
+    /** Sums of those columns and rows. */
+    private int _sumCols, _sumRows;
+    /** _pieceIndex[SQ] is the index in _pieceCols of the piece on square
+     *  SQ, if any. */
+    private final int[] _pieceIndex = new int[2 * Long.SIZE];
+
+}
@@ -0,0 +1,15 @@
+package loa;
+
+/** A computation of the values of the children in a LeafBatch.
+ *  @author Peter Lee
+ */
+interface LeafKernel {
+
+    /** Set BATCH.values[I] for FIRST <= I < LAST to the evaluation of
+     *  child I, ignoring whether the game is over: GROUP_WEIGHT times the
+     *  difference in groups plus SPREAD_WEIGHT times the difference in
+     *  spreads of the side that moved and the other side (see
+     *  LeafBatch). */
+    void score(LeafBatch batch, int first, int last);
+
+}
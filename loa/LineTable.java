@@ -0,0 +1,301 @@
+package loa;
+
+/** Precomputed tables giving the destinations of moves along lines of
+ *  action on a board of one size.
+ *
+ *  Every square lies on four lines: its row, its column, its diagonal
+ *  (rising to the right), and its antidiagonal (falling to the right).
+ *  Each line holds at most W squares, where W is the board size (or 8
+ *  for any board in the narrow layout), so the pattern of friendly
+ *  pieces and the pattern of enemy pieces along it each fit in W bits.
+ *  We index a table with (position of the moving piece on the line,
+ *  friendly pattern, enemy pattern).  The table entry gives the
+ *  positions on the line reached by moving forward and backward, taking
+ *  the piece count, enemy blockers, and friendly pieces on the
+ *  destination into account.  Move generation thus reduces to a few
+ *  lookups per piece.
+ *
+ *  In the narrow layout, the patterns are extracted from the occupancy
+ *  bit sets with a shift or a single multiplication.  In the wide
+ *  layout, where that does not work across two words, the Board keeps
+ *  the pattern of each line up to date as pieces move; lineIndex tells
+ *  it which line each square is on.  Indexed by both patterns, a table
+ *  for lines of 10 squares would take 10 MB, far too much to stay in
+ *  cache, so for the wide layout we use the fact that the patterns
+ *  never overlap and index instead by the contents of the line as a
+ *  base-3 numeral (0 for empty, 1 for friendly, 2 for enemy), which
+ *  takes about 590 KB.
+ *
+ *  Positions on a line are numbered by row for columns and by column
+ *  otherwise.  "Forward" is toward higher positions.
+ *  @author Peter Lee
+ */
+final class LineTable {
+
+    /** Line identifiers. */
+    static final int ROW = 0, COLUMN = 1, DIAGONAL = 2, ANTIDIAGONAL = 3;
+
+    /** Number of lines through each square. */
+    static final int LINES = 4;
+
+    /** Value returned for a nonexistent destination. */
+    static final int NONE = 0xFF;
+
+    /** Tables for boards with GEOMETRY. */
+    LineTable(Geometry geometry) {
+        int size = geometry.size(), stride = geometry.stride();
+        int bits = geometry.bits();
+        _width = geometry.wide() ? size : Geometry.NARROW_STRIDE;
+        _patterns = power3(_width);
+        _step = new int[] { 1, stride, stride + 1, 1 - stride };
+        _position = new int[LINES][bits];
+        _onLine = new int[LINES][bits];
+        _mask = new long[LINES][geometry.wide() ? 0 : bits];
+        _lineIndex = new int[LINES][bits];
+        _lineCount = 6 * size - 2;
+        for (int sq = 0; sq < bits; sq += 1) {
+            int c = geometry.col(sq), r = geometry.row(sq);
+            if (!geometry.inBounds(c, r)) {
+                continue;
+            }
+            _position[ROW][sq] = c - 1;
+            _position[COLUMN][sq] = r - 1;
+            _position[DIAGONAL][sq] = _position[ANTIDIAGONAL][sq] = c - 1;
+            _lineIndex[ROW][sq] = r - 1;
+            _lineIndex[COLUMN][sq] = size + c - 1;
+            _lineIndex[DIAGONAL][sq] = 2 * size + r - c + size - 1;
+            _lineIndex[ANTIDIAGONAL][sq] = 4 * size - 1 + r + c - 2;
+            for (int k = 1; k <= size; k += 1) {
+                addToLine(geometry, ROW, sq, k, r, k - 1);
+                addToLine(geometry, COLUMN, sq, c, k, k - 1);
+                addToLine(geometry, DIAGONAL, sq, k, r - c + k, k - 1);
+                addToLine(geometry, ANTIDIAGONAL, sq, k, r + c - k, k - 1);
+            }
+        }
+        _dest = destTable(_width);
+    }
+
+    /** Return the destination squares of a move of the piece on square SQ
+     *  along LINE, where OWN and ENEMY are the squares occupied by the
+     *  moving side (which must include SQ) and its opponent.  The result
+     *  packs the forward destination in bits 0-7 and the backward
+     *  destination in bits 8-15; either is NONE if there is no legal move
+     *  in that direction.  For the narrow layout only. */
+    int targets(int sq, int line, long own, long enemy) {
+        int p = _position[line][sq];
+        return decode(sq, line, p,
+                      _dest[(((p << M) | pattern(line, sq, own)) << M)
+                            | pattern(line, sq, enemy)]);
+    }
+
+    /** Return the destinations, as for targets, of the piece on square SQ
+     *  along LINE, where OWN and ENEMY are the patterns of friendly and
+     *  enemy pieces on that line.  For the wide layout only. */
+    int lookup(int sq, int line, int own, int enemy) {
+        int p = _position[line][sq];
+        return decode(sq, line, p,
+                      _dest[p * _patterns + TERNARY[own]
+                            + 2 * TERNARY[enemy]]);
+    }
+
+    /** Return the destinations, packed as for targets, of the piece on
+     *  square SQ, at position P on LINE, whose destination table entry
+     *  is D. */
+    private int decode(int sq, int line, int p, int d) {
+        int onLine = _onLine[line][sq];
+        int step = _step[line];
+        int fwd = d & 0xF, back = (d >>> 4) & 0xF;
+        int result = 0;
+        if (fwd == 0xF || (onLine & (1 << fwd)) == 0) {
+            result |= NONE;
+        } else {
+            result |= sq + (fwd - p) * step;
+        }
+        if (back == 0xF || (onLine & (1 << back)) == 0) {
+            result |= NONE << 8;
+        } else {
+            result |= (sq + (back - p) * step) << 8;
+        }
+        return result;
+    }
+
+    /** Return the set of squares to which the piece on SQ may legally move,
+     *  where OWN and ENEMY are as for targets.  For the narrow layout
+     *  only. */
+    long destinations(int sq, long own, long enemy) {
+        long result = 0;
+        for (int line = 0; line < LINES; line += 1) {
+            int t = targets(sq, line, own, enemy);
+            if ((t & NONE) != NONE) {
+                result |= 1L << (t & NONE);
+            }
+            if ((t >>> 8) != NONE) {
+                result |= 1L << (t >>> 8);
+            }
+        }
+        return result;
+    }
+
+    /** Return the pattern of the squares in BITS that lie on LINE through
+     *  square SQ, with bit k of the result corresponding to position k.
+     *  For the narrow layout only. */
+    int pattern(int line, int sq, long bits) {
+        switch (line) {
+        case ROW:
+            return (int) (bits >>> (sq & ~(M - 1))) & 0xFF;
+        case COLUMN:
+            return (int) ((((bits >>> (sq & (M - 1))) & Board.FILE_A)
+                           * COLUMN_MAGIC) >>> (Board.SQUARES - M));
+        default:
+            return (int) (((bits & _mask[line][sq]) * Board.FILE_A)
+                          >>> (Board.SQUARES - M));
+        }
+    }
+
+    /** Return the position of square SQ on its LINE. */
+    int position(int line, int sq) {
+        return _position[line][sq];
+    }
+
+    /** Return the number identifying the LINE through square SQ among all
+     *  lines of the board: a value in 0 .. lineCount() - 1. */
+    int lineIndex(int line, int sq) {
+        return _lineIndex[line][sq];
+    }
+
+    /** Return the number of distinct lines on the board. */
+    int lineCount() {
+        return _lineCount;
+    }
+
+    /** Record that column C, row R, if on a board with GEOMETRY, is at
+     *  position POS on LINE through square SQ. */
+    private void addToLine(Geometry geometry, int line, int sq, int c, int r,
+                           int pos) {
+        if (geometry.inBounds(c, r)) {
+            if (!geometry.wide()) {
+                _mask[line][sq] |= 1L << geometry.sq(c, r);
+            }
+            _onLine[line][sq] |= 1 << pos;
+        }
+    }
+
+    /** Return the destination table for lines of WIDTH squares, creating
+     *  it if necessary.  Tables depend only on the width, so all narrow
+     *  layouts share one.  Those for the narrow layout are indexed by
+     *  position and both patterns; those for the wide layout, by
+     *  position and base-3 contents (see lookup). */
+    private static synchronized byte[] destTable(int width) {
+        if (DEST_TABLES[width] == null) {
+            boolean wide = width > M;
+            int patterns = power3(width);
+            byte[] dest = new byte[wide ? width * patterns
+                                   : width << (2 * width)];
+            for (int p = 0; p < width; p += 1) {
+                for (int own = 0; own < (1 << width); own += 1) {
+                    for (int enemy = 0; enemy < (1 << width); enemy += 1) {
+                        if (!wide) {
+                            dest[(((p << width) | own) << width) | enemy] =
+                                (byte) computeDest(width, p, own, enemy);
+                        } else if ((own & enemy) == 0) {
+                            dest[p * patterns + TERNARY[own]
+                                 + 2 * TERNARY[enemy]] =
+                                (byte) computeDest(width, p, own, enemy);
+                        }
+                    }
+                }
+            }
+            DEST_TABLES[width] = dest;
+        }
+        return DEST_TABLES[width];
+    }
+
+    /** Return 3 to the power N. */
+    private static int power3(int n) {
+        int result = 1;
+        for (int k = 0; k < n; k += 1) {
+            result *= 3;
+        }
+        return result;
+    }
+
+    /** Return the destination table entry for a piece at position P on a
+     *  line of WIDTH squares whose friendly pattern is OWN and enemy
+     *  pattern is ENEMY. */
+    private static int computeDest(int width, int p, int own, int enemy) {
+        if ((own & (1 << p)) == 0 || (own & enemy) != 0) {
+            return 0xFF;
+        }
+        int n = Integer.bitCount(own | enemy);
+        int fwd = 0xF, back = 0xF;
+        int d = p + n;
+        if (d < width && (own & (1 << d)) == 0
+            && (enemy & ((1 << d) - 1) & ~((1 << (p + 1)) - 1)) == 0) {
+            fwd = d;
+        }
+        d = p - n;
+        if (d >= 0 && (own & (1 << d)) == 0
+            && (enemy & ((1 << p) - 1) & ~((1 << (d + 1)) - 1)) == 0) {
+            back = d;
+        }
+        return (back << 4) | fwd;
+    }
+
+    /** Width of the narrow layout. */
+    private static final int M = Geometry.NARROW_STRIDE;
+
+    /** Multiplier that gathers column a into the top byte, with row k
+     *  in bit k. */
+    private static final long COLUMN_MAGIC = 0x0102040810204080L;
+
+    /** Destination tables, indexed by line width, then by position,
+     *  friendly pattern, and enemy pattern.  Each entry holds the forward
+     *  destination position in its low four bits and the backward one in
+     *  its high four bits, with 0xF meaning none. */
+    private static final byte[][] DEST_TABLES =
+        new byte[Geometry.MAX_SIZE + 1][];
+
+    /** For each pattern of at most MAX_SIZE bits, the number whose
+     *  base-3 digits are its bits. */
+    private static final int[] TERNARY = new int[1 << Geometry.MAX_SIZE];
+
+    static {
+        for (int bits = 1; bits < TERNARY.length; bits += 1) {
+            int low = Integer.numberOfTrailingZeros(bits);
+            TERNARY[bits] = TERNARY[bits & (bits - 1)] + power3(low);
+        }
+    }
+
+    /** Width of the patterns on each line. */
+    private final int _width;
+
+    /** Number of possible contents of a line of _width squares (3 to the
+     *  power _width). */
+    private final int _patterns;
+
+    /** Change in square index for one step forward along each line. */
+    private final int[] _step;
+
+    /** Position of each square on each of its lines, indexed by line and
+     *  square. */
+    private final int[][] _position;
+
+    /** Bit set of the positions that actually lie on the board, for each
+     *  line and square. */
+    private final int[][] _onLine;
+
+    /** Squares on each line, indexed by line and square (narrow layout
+     *  only). */
+    private final long[][] _mask;
+
+    /** Line number of each line through each square, indexed by line and
+     *  square. */
+    private final int[][] _lineIndex;
+
+    /** Number of distinct lines. */
+    private final int _lineCount;
+
+    /** Destination table for lines of _width squares. */
+    private final byte[] _dest;
+
+}
@@ -1,157 +1,950 @@
-
 package loa;
 
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 
-/** An automated Player.
+/** An automated Player that searches with alpha-beta.
+ *
+ *  The options given to the constructor (normally shared with the Game)
+ *  are consulted at every move.  With more than one thread, helper
+ *  searchers run the same iterative deepening search on their own copies
+ *  of the board, sharing only the transposition table; their results
+ *  steer the main searcher through the table ("lazy SMP").  With
+ *  pondering on, a helper continues to search the position after my move
+ *  while the opponent thinks, so that the table is warm when my turn
+ *  comes.
  *  @author Peter Lee */
 class MachinePlayer extends Player {
 
-    /** A MachinePlayer that plays the SIDE pieces in GAME. */
+    /** A MachinePlayer that plays the SIDE pieces in GAME with default
+     *  options. */
     MachinePlayer(Piece side, Game game) {
-        super(side, game);
+        this(side, game, new EngineOptions());
     }
 
-    /** The depth of my AI. */
-    private final int setDepth = 4;
+    /** A MachinePlayer that plays the SIDE pieces in GAME, configured by
+     *  OPTIONS. */
+    MachinePlayer(Piece side, Game game, EngineOptions options) {
+        super(side, game);
+        _options = options;
+    }
 
-    /** Number to subtract. */
-    private final int subNum = 10000;
+    /** A helper searcher for PARENT. */
+    private MachinePlayer(MachinePlayer parent) {
+        this(parent.side(), parent.getGame(), parent._options);
+    }
 
     /** Number representation of the estimated capacity of the hash set. */
     private final int hashSetCapacity = 16;
 
     @Override
     Move makeMove() {
-        /** A move made by the AI. */
-        findBestMove(getBoard(), setDepth, Integer.MAX_VALUE - subNum);
-        noSameMoves.clear();
+        stopPondering();
+        GameClock clock = getGame().clock();
+        int maxDepth = _options.maxDepth();
+        if (clock == null) {
+            _time.startMove(_options.moveMillis());
+        } else {
+            _time.startMove(clock.remaining(side()), clock.increment(),
+                            getBoard().movesMade() / 2,
+                            _options.moveMillis());
+            if (!_options.depthSet()) {
+                maxDepth = 0;
+            }
+        }
+        think(new Board(getBoard(), false), maxDepth, 0, 1);
         if (noSameMovesFinal.size() > hashSetCapacity) {
             noSameMovesFinal.clear();
         }
         noSameMovesFinal.add(_storeMove);
-        System.out.println(side().abbrev().toUpperCase() + "::" + _storeMove);
+        if (_options.ponder()) {
+            startPondering(_storeMove);
+        }
         return _storeMove;
     }
 
     /** Field for the stored moves. */
     private Move _storeMove;
 
-    /** Returns the move that gives the best move possible in the game.
-     * @param board the game board
-     * @param depth the height of the search
-     * @param cutoff point where to end
-     * @return move the best move */
-    private int findBestMove(Board board,
-                             int depth, double cutoff) {
-        if (depth == 0) {
-            return guessBestMove(board, cutoff);
-        }
-        Iterator<Move> boardIter = board.iterator();
-        Move bestSofar;
-        bestSofar = null;
-        int move = Integer.MIN_VALUE;
-        while (boardIter.hasNext()) {
-            Move nextMove = boardIter.next();
-            if (noSameMoves.contains(nextMove)) {
-                continue;
-            }
-            noSameMoves.add(nextMove);
-            board.makeMove(nextMove);
-            if (depth == setDepth
-                    && board.piecesContiguous(board.turn().opposite()) == 1) {
-                bestSofar = nextMove;
-                board.retract();
-                move = Integer.MAX_VALUE;
+    /** Return statistics for the most recent search. */
+    SearchStats stats() {
+        return _stats;
+    }
+
+    /** Return the statistics of the part of the last search done by
+     *  helper thread K. */
+    SearchStats helperStats(int k) {
+        return _helpers[k]._stats;
+    }
+
+    /** Return the best move found by the most recent search, or null if
+     *  there was none. */
+    Move bestMove() {
+        return _storeMove;
+    }
+
+    /** Report the progress of my searches to LISTENER, or to no one if
+     *  LISTENER is null. */
+    void setListener(SearchListener listener) {
+        _listener = listener;
+    }
+
+    /** Stop the current search, if any, as soon as possible, leaving the
+     *  best move found so far in bestMove().  May be called from any
+     *  thread. */
+    @Override
+    void stop() {
+        _stop = true;
+    }
+
+    /** Set _storeMove to the best move for the side to move on BOARD,
+     *  returning its value.  The search uses as many threads, and stops
+     *  at the depth or time per move, given by my options. */
+    int findMove(Board board) {
+        _time.startMove(_options.moveMillis());
+        return think(board, _options.maxDepth(), 0, 1);
+    }
+
+    /** Set _storeMove to the best move for the side to move on BOARD,
+     *  returning its value, within LIMITS, and finding as many principal
+     *  variations as LIMITS asks for.  If LIMITS sets no limit at all,
+     *  the depth and time limits come from my options, as for findMove.
+     *  Otherwise only the limits in LIMITS apply, and an infinite search
+     *  continues until stopped or MAX_PLY is reached. */
+    int analyze(Board board, SearchLimits limits) {
+        int lines = Math.max(1, limits.lines);
+        if (!limits.limited()) {
+            _time.startMove(_options.moveMillis());
+            return think(board, _options.maxDepth(), 0, lines);
+        }
+        if (limits.remaining > 0) {
+            _time.startMove(limits.remaining, limits.increment,
+                            board.movesMade() / 2, limits.moveMillis);
+        } else {
+            _time.startMove(limits.moveMillis);
+        }
+        return think(board, limits.depth > 0 ? limits.depth : MAX_PLY,
+                     limits.nodes, lines);
+    }
+
+    /** Set _storeMove to the best move for the side to move on BOARD,
+     *  returning its value.  The search uses as many threads as my
+     *  options say, searches at most MAXDEPTH plies (see search) and,
+     *  if MAXNODES is positive, about MAXNODES nodes, and stops in time
+     *  according to _time, which has been started for this move.  It
+     *  finds the best LINES moves, each with its principal variation.
+     *  Helper threads have no deadline of their own: they get the same
+     *  depth limit, with 0 resolved here as for search, and run until
+     *  the main search stops them. */
+    private int think(Board board, int maxDepth, long maxNodes,
+                      int lines) {
+        FlightEvents.Search event = new FlightEvents.Search();
+        event.begin();
+        if (maxDepth == 0) {
+            maxDepth = _time.deadline() < Long.MAX_VALUE ? MAX_PLY - 2
+                : EngineOptions.DEFAULT_DEPTH;
+        }
+        if (_options.table() != null) {
+            _table = _options.table();
+        } else if (_table == null
+                   || _table.megabytes() != _options.hashMegabytes()) {
+            _table = new TranspositionTable(_options.hashMegabytes());
+        }
+        if (_evalCache == null) {
+            _evalCache = new EvalCache(EVAL_CACHE_ENTRIES);
+        }
+        _table.newSearch();
+        int helpers = _options.threads() - 1;
+        if (_helpers.length != helpers) {
+            _helpers = new MachinePlayer[helpers];
+            for (int i = 0; i < helpers; i += 1) {
+                _helpers[i] = new MachinePlayer(this);
+            }
+        }
+        Thread[] workers = new Thread[helpers];
+        for (int i = 0; i < helpers; i += 1) {
+            MachinePlayer helper = _helpers[i];
+            Board copy = new Board(board, false);
+            helper._table = _table;
+            helper._evalCache = _evalCache;
+            helper._stop = false;
+            helper._maxDepth = maxDepth;
+            helper._maxNodes = 0;
+            helper._lines = 1;
+            helper._firstDepth = 1 + (i + 1) % 2;
+            helper._time.startMove(0);
+            workers[i] = new Thread(() -> helper.search(copy));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        _stop = false;
+        _maxDepth = maxDepth;
+        _maxNodes = maxNodes;
+        _lines = lines;
+        int value = search(board);
+        for (int i = 0; i < helpers; i += 1) {
+            _helpers[i]._stop = true;
+            try {
+                workers[i].join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            _stats.nodes += _helpers[i]._stats.nodes;
+            _stats.evals += _helpers[i]._stats.evals;
+            _stats.evalHits += _helpers[i]._stats.evalHits;
+        }
+        _time.endMove();
+        if (event.shouldCommit()) {
+            event.depth = _stats.depth;
+            event.score = value;
+            event.nodes = _stats.nodes;
+            event.threads = helpers + 1;
+            event.lines = lines;
+            event.bestMove = String.valueOf(_storeMove);
+            event.commit();
+        }
+        Reporter.debug(1, "%s", _stats);
+        Reporter.debug(1, "%s", _time);
+        return value;
+    }
+
+    /** Set _storeMove to the best move for the side to move on BOARD,
+     *  returning its value, searching until _time, _maxDepth, or _maxNodes
+     *  says to stop, or until _stop is set.  A _maxDepth of 0 means no
+     *  limit if there is a deadline, and otherwise the default depth.
+     *
+     *  We search with iterative deepening.  Each iteration after the
+     *  first starts with an aspiration window of ASPIRATION_WINDOW on
+     *  either side of the previous iteration's value, widening it and
+     *  searching again whenever the result falls outside.  The best move
+     *  so far is always searched first.  The first iteration always
+     *  completes; an iteration cut off by the clock is discarded.  After
+     *  each iteration, the listener (if any) is told of the result.
+     *
+     *  If _lines is more than 1, each iteration finds that many best
+     *  moves, one at a time: after the best move, it searches the root
+     *  again without it to find the second best, and so on.  Each such
+     *  line gets its own aspiration window around its previous value.
+     *  Search instability occasionally gives a later line a better value
+     *  than an earlier one, so the lines are sorted at the end.
+     *  The lines share the transposition table, history scores, and
+     *  move ordering, so each one after the first is mostly a matter of
+     *  proving that the moves already chosen are better than the rest,
+     *  which costs much less than a search of its own. */
+    private int search(Board board) {
+        _stats.reset();
+        long start = System.currentTimeMillis();
+        _deadline = Long.MAX_VALUE;
+        _nodeLimit = Long.MAX_VALUE;
+        _history.age(2);
+        _storeMove = board.winningMove();
+        if (_storeMove != null) {
+            _stats.depth = 1;
+            _stats.score = WIN_VALUE - 1;
+            report(board, new Move[] { _storeMove },
+                   new int[] { _stats.score }, 1);
+            return _stats.score;
+        }
+        int maxDepth = _maxDepth;
+        if (maxDepth == 0) {
+            maxDepth = _time.deadline() < Long.MAX_VALUE ? MAX_PLY - 2
+                : EngineOptions.DEFAULT_DEPTH;
+        }
+        maxDepth = Math.min(maxDepth, MAX_PLY - 2);
+        Move[] moves = buffer(0);
+        int n = rootMoves(board, moves);
+        _storeMove = n == 0 ? null : moves[0];
+        int lines = Math.min(_lines, n);
+        int[] values = new int[lines];
+        for (int depth = _firstDepth; depth <= maxDepth && n > 0;
+             depth += 1) {
+            Move previous = _storeMove;
+            FlightEvents.Iteration iteration = new FlightEvents.Iteration();
+            iteration.begin();
+            for (int k = 0; k < lines && !_stop; k += 1) {
+                int result =
+                    aspirationSearch(board, moves, k, n, depth, values[k]);
+                if (!_stop) {
+                    values[k] = result;
+                }
+            }
+            if (_stop) {
+                break;
+            }
+            sortLines(moves, values, lines);
+            _storeMove = moves[0];
+            _stats.depth = depth;
+            _stats.score = values[0];
+            _stats.millis = System.currentTimeMillis() - start;
+            Reporter.debug(2, "%s %s", _storeMove, _stats);
+            report(board, moves, values, lines);
+            if (iteration.shouldCommit()) {
+                iteration.depth = depth;
+                iteration.score = values[0];
+                iteration.nodes = _stats.nodes;
+                iteration.bestMove = String.valueOf(_storeMove);
+                iteration.commit();
+            }
+            if (!_time.nextIteration(_storeMove != previous)
+                || _maxNodes > 0 && _stats.nodes >= _maxNodes) {
                 break;
             }
-            int response;
-            response = -findBestMove(board,
-                        depth - 1, -move);
+            _deadline = _time.deadline();
+            _nodeLimit = _maxNodes > 0 ? _maxNodes : Long.MAX_VALUE;
+        }
+        _stats.millis = System.currentTimeMillis() - start;
+        return lines == 0 ? 0 : values[0];
+    }
+
+    /** Sort the first LINES MOVES and VALUES, which correspond, into
+     *  decreasing order of VALUES, keeping the order of equal values. */
+    private static void sortLines(Move[] moves, int[] values, int lines) {
+        for (int i = 1; i < lines; i += 1) {
+            Move move = moves[i];
+            int value = values[i];
+            int j;
+            for (j = i; j > 0 && values[j - 1] < value; j -= 1) {
+                moves[j] = moves[j - 1];
+                values[j] = values[j - 1];
+            }
+            moves[j] = move;
+            values[j] = value;
+        }
+    }
+
+    /** Tell the listener, if any, of the iteration just completed on
+     *  BOARD, whose best LINES moves are the first LINES MOVES, with the
+     *  corresponding VALUES. */
+    private void report(Board board, Move[] moves, int[] values,
+                        int lines) {
+        if (_listener == null) {
+            return;
+        }
+        long nodes = _stats.nodes;
+        for (MachinePlayer helper : _helpers) {
+            nodes += helper._stats.nodes;
+        }
+        for (int k = 0; k < lines; k += 1) {
+            _listener.iteration(k + 1, _stats.depth, values[k], nodes,
+                                _time.elapsed(),
+                                principalVariation(board, moves[k],
+                                                   _stats.depth));
+        }
+    }
+
+    /** Return the principal variation from the position on BOARD that
+     *  starts with FIRST, at most LENGTH moves long: FIRST, followed by
+     *  the best moves recorded in the transposition table for as long as
+     *  they are legal. */
+    private List<Move> principalVariation(Board board, Move first,
+                                          int length) {
+        List<Move> pv = new ArrayList<>();
+        for (Move move = first; move != null && pv.size() < length
+                 && !board.gameOver() && board.isLegal(move); ) {
+            pv.add(move);
+            board.makeMove(move);
+            long entry = _table.probe(board.key());
+            move = entry == 0 ? null : TranspositionTable.move(entry);
+        }
+        for (int i = 0; i < pv.size(); i += 1) {
+            board.retract();
+        }
+        return pv;
+    }
+
+    /** Search MOVES[FIRST .. N-1], moves from the position on BOARD, to
+     *  depth DEPTH, returning the best value, as for searchRoot.
+     *  PREVIOUS is the value found for the same line by the previous
+     *  iteration.  The result is meaningless if _stop is set on
+     *  return. */
+    private int aspirationSearch(Board board, Move[] moves, int first,
+                                 int n, int depth, int previous) {
+        if (depth == _firstDepth
+            || Math.abs(previous) >= WIN_VALUE - MAX_PLY) {
+            return searchRoot(board, moves, first, n, depth, -INFINITY,
+                              INFINITY);
+        }
+        int delta = ASPIRATION_WINDOW;
+        int alpha = previous - delta, beta = previous + delta;
+        while (true) {
+            int value =
+                searchRoot(board, moves, first, n, depth, alpha, beta);
+            if (_stop) {
+                return value;
+            } else if (value <= alpha && alpha > -INFINITY) {
+                _stats.failLows += 1;
+                alpha = Math.max(-INFINITY, value - delta);
+            } else if (value >= beta && beta < INFINITY) {
+                _stats.failHighs += 1;
+                beta = Math.min(INFINITY, value + delta);
+            } else {
+                return value;
+            }
+            delta *= ASPIRATION_GROWTH;
+        }
+    }
+
+    /** Start a helper searching the position that results from MOVE
+     *  while the opponent considers a reply. */
+    private void startPondering(Move move) {
+        Board board = new Board(getBoard(), false);
+        board.makeMove(move);
+        if (board.gameOver()) {
+            return;
+        }
+        if (_ponderer == null) {
+            _ponderer = new MachinePlayer(this);
+        }
+        _ponderer._table = _table;
+        _ponderer._evalCache = _evalCache;
+        _ponderer._stop = false;
+        _ponderer._maxDepth = _options.maxDepth();
+        _ponderer._maxNodes = 0;
+        _ponderer._time.startMove(PONDER_MILLIS);
+        _ponderThread = new Thread(() -> _ponderer.search(board));
+        _ponderThread.setDaemon(true);
+        _ponderThread.start();
+    }
+
+    /** Stop the pondering search, if any, and wait for it to finish. */
+    private void stopPondering() {
+        if (_ponderThread != null) {
+            _ponderer._stop = true;
+            try {
+                _ponderThread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            _ponderThread = null;
+        }
+    }
+
+    /** Store the legal moves on BOARD into MOVES and return their number,
+     *  leaving out those in noSameMovesFinal unless no others remain. */
+    private int rootMoves(Board board, Move[] moves) {
+        int n = board.legalMoves(moves);
+        int k = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (!noSameMovesFinal.contains(moves[i])) {
+                moves[k] = moves[i];
+                k += 1;
+            }
+        }
+        return k == 0 ? board.legalMoves(moves) : k;
+    }
+
+    /** Search MOVES[FIRST .. N-1], moves from the position on BOARD, to
+     *  depth DEPTH with window ALPHA .. BETA, returning the best value
+     *  found.  If some move's value exceeds ALPHA, move the best such
+     *  move to MOVES[FIRST], shifting the others up, and if FIRST is 0,
+     *  set _storeMove to it.  If _stop is set during the search, return
+     *  at once, leaving _storeMove and MOVES alone. */
+    private int searchRoot(Board board, Move[] moves, int first, int n,
+                           int depth, int alpha, int beta) {
+        _stats.nodes += 1;
+        int best = -INFINITY;
+        int bestIndex = -1;
+        for (int i = first; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            int value = pvs(board, depth - 1, 1, alpha, beta, i == first);
             board.retract();
-            if (noSameMovesFinal.contains(nextMove)) {
-                continue;
-            }
-            if (response > move) {
-                bestSofar = nextMove;
-                move = response;
-                if (response >= cutoff) {
-                    break;
+            if (_stop) {
+                return best;
+            }
+            if (value > best) {
+                best = value;
+                if (value > alpha) {
+                    alpha = value;
+                    bestIndex = i;
+                    if (alpha >= beta) {
+                        break;
+                    }
                 }
             }
         }
-        _storeMove = bestSofar;
-        return move;
+        if (bestIndex >= 0) {
+            Move move = moves[bestIndex];
+            System.arraycopy(moves, first, moves, first + 1,
+                             bestIndex - first);
+            moves[first] = move;
+            if (first == 0) {
+                _storeMove = move;
+            }
+        }
+        return best;
     }
 
-    /** Searches for the best value.
+    /** Return the value, for the side that just moved, of the position on
+     *  BOARD searched to depth DEPTH at distance PLY from the root, within
+     *  window ALPHA .. BETA.  Unless FIRST (the move leading here is the
+     *  first searched at its parent), first try a null window at ALPHA,
+     *  and re-search with the full window only if that shows the move
+     *  might be better than ALPHA. */
+    private int pvs(Board board, int depth, int ply, int alpha, int beta,
+                    boolean first) {
+        if (first) {
+            return -findBestMove(board, depth, ply, -beta, -alpha, true);
+        }
+        int value =
+            -findBestMove(board, depth, ply, -alpha - 1, -alpha, true);
+        if (value > alpha && value < beta) {
+            _stats.pvsResearches += 1;
+            value = -findBestMove(board, depth, ply, -beta, -alpha, true);
+        }
+        return value;
+    }
+
+    /** Returns the value of the position on BOARD for the side to move,
+     *  searching DEPTH more moves ahead.  PLY is the number of moves made
+     *  since the root.  The result is exact if it lies strictly between
+     *  ALPHA and BETA; otherwise it is a bound on the exact value.
+     *
+     *  Before searching, we ask the board for an immediately connecting
+     *  move.  If the side to move has one, the position is won and no
+     *  further search is needed; this prunes many subtrees near mates.
+     *  Next we consult the transposition table, which may settle the
+     *  value at once and otherwise may suggest a move to try first.  The
+     *  remaining moves are tried in order of their history scores; all
+     *  but the first are searched with a null window (principal
+     *  variation search).
+     *
+     *  Two kinds of selectivity are available (see setPruning).  With
+     *  null-move pruning, if passing and letting the opponent search
+     *  NULL_REDUCTION plies less still fails high, we assume some real
+     *  move would too.  A position where passing would actually be best
+     *  is rare in this game, but to guard against it the cutoff is
+     *  confirmed by a reduced-depth search of the real moves in which
+     *  null moves are not allowed.  With late-move reductions, quiet
+     *  moves far down the ordering are first searched one ply less
+     *  deep, and searched again at full depth if they beat ALPHA.
      * @param board the game board
-     * @param cutoff point where to end
-     * @return move integer of the best move*/
-    private int guessBestMove(Board board, double cutoff) {
-        Iterator<Move> boardIter = board.iterator();
-        Move bestSoFar = null;
-        int move = Integer.MIN_VALUE;
-        while (boardIter.hasNext()) {
-            Move nextMove = boardIter.next();
-            if (noSameMoves.contains(nextMove)) {
-                continue;
-            }
-            noSameMoves.add(nextMove);
-            board.makeMove(nextMove);
-            int moveVal = eval(board);
+     * @param depth the height of the search
+     * @param ply the distance from the root
+     * @param alpha the value already guaranteed to the side to move
+     * @param beta the value at which the opponent will avoid this node
+     * @param allowNull false if a null move may not be tried here
+     * @return the value of the position, or 0 if _stop is set */
+    private int findBestMove(Board board, int depth, int ply,
+                             int alpha, int beta, boolean allowNull) {
+        _stats.nodes += 1;
+        if ((_stats.nodes & CLOCK_MASK) == 0
+            && (System.currentTimeMillis() >= _deadline
+                || _stats.nodes >= _nodeLimit)) {
+            _stop = true;
+        }
+        if (_stop) {
+            return 0;
+        }
+        Piece winner = board.winner();
+        if (winner != null) {
+            return winner == board.turn() ? WIN_VALUE - ply
+                : -WIN_VALUE + ply;
+        }
+        if (board.winningMove() != null) {
+            return WIN_VALUE - ply - 1;
+        }
+        Tablebase tablebase = _options.tablebase();
+        if (tablebase != null) {
+            int entry = tablebase.probe(board);
+            if (entry != Tablebase.MISSING) {
+                _stats.tablebaseHits += 1;
+                return tablebaseValue(entry, ply);
+            }
+        }
+        if (depth <= 1 || ply >= MAX_PLY - 1) {
+            return guessBestMove(board, ply, alpha, beta);
+        }
+        long key = board.key();
+        long entry = _table.probe(key);
+        Move hashMove = null;
+        if (entry != 0) {
+            _stats.tableHits += 1;
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int value = fromTable(TranspositionTable.value(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER && value >= beta
+                    || bound == TranspositionTable.UPPER && value <= alpha) {
+                    return value;
+                }
+            }
+        }
+        if (_options.nullMove() && allowNull && depth > NULL_REDUCTION
+            && beta - alpha == 1 && board.lastMove() != null
+            && Math.abs(beta) < WIN_VALUE - MAX_PLY
+            && nullMoveFailsHigh(board, depth, ply, beta)) {
+            return beta;
+        }
+        Move[] moves = buffer(ply);
+        int n = board.legalMoves(moves);
+        if (n == 0) {
+            return -WIN_VALUE + ply;
+        }
+        orderByHistory(moves, n);
+        if (hashMove != null) {
+            toFront(hashMove, moves, n);
+        }
+        int alpha0 = alpha;
+        int best = -INFINITY;
+        Move bestMove = null;
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            int value;
+            if (_options.reductions() && i >= FULL_DEPTH_MOVES
+                && depth > REDUCTION_DEPTH
+                && moves[i].replacedPiece() == Piece.EMP) {
+                _stats.reductions += 1;
+                value = -findBestMove(board, depth - 2, ply + 1,
+                                      -alpha - 1, -alpha, true);
+                if (value > alpha) {
+                    _stats.reductionResearches += 1;
+                    value = pvs(board, depth - 1, ply + 1, alpha, beta,
+                                false);
+                }
+            } else {
+                value = pvs(board, depth - 1, ply + 1, alpha, beta, i == 0);
+            }
             board.retract();
-            if (moveVal > move) {
-                bestSoFar = nextMove;
-                move = moveVal;
-                if (moveVal >= cutoff) {
-                    break;
+            if (_stop) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                bestMove = moves[i];
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta) {
+                        _stats.cutoffs += 1;
+                        _history.add(moves[i], depth * depth);
+                        break;
+                    }
                 }
             }
         }
-        _storeMove = bestSoFar;
-        return move;
+        int bound = best >= beta ? TranspositionTable.LOWER
+            : best > alpha0 ? TranspositionTable.EXACT
+            : TranspositionTable.UPPER;
+        _table.store(key, depth, toTable(best, ply), bound, bestMove);
+        return best;
     }
 
-    /** Evaluation function for the board.
-     * @param board the current state of the game
-     * @return counter the number evaluation of the board */
-    private  int eval(Board board) {
-        int counter = 0;
-        if (board.piecesContiguous(board.turn()) == 1) {
-            return Integer.MIN_VALUE;
+    /** Move MOVE, if it is among the first N MOVES, to the front of
+     *  MOVES, keeping the others in order. */
+    private static void toFront(Move move, Move[] moves, int n) {
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == move) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
         }
-        for (int i = 1; isBounds(i); i++) {
-            for (int j = 1; isBounds(j); j++) {
-                if ((board.get(i, j) == board.turn())) {
-                    int current = board.piecesContiguous(board.turn());
-                    if (current > counter) {
-                        counter = current;
-                    }
-                } else if (board.get(i, j) == board.turn().opposite()) {
-                    int nextCurrent =
-                            board.piecesContiguous(board.turn().opposite());
-                    if (nextCurrent > counter) {
-                        counter = nextCurrent;
+    }
+
+    /** Return VALUE, the value of a position PLY moves from the root, in
+     *  the form stored in the transposition table.  Won and lost values
+     *  are adjusted to count moves from the position itself, so that
+     *  they stay correct when the position is reached at another
+     *  ply. */
+    private static int toTable(int value, int ply) {
+        if (value >= WIN_VALUE - MAX_PLY) {
+            return value + ply;
+        } else if (value <= -WIN_VALUE + MAX_PLY) {
+            return value - ply;
+        }
+        return value;
+    }
+
+    /** Return the value of a position PLY moves from the root whose table
+     *  value is VALUE.  The inverse of toTable. */
+    private static int fromTable(int value, int ply) {
+        if (value >= WIN_VALUE - MAX_PLY) {
+            return value - ply;
+        } else if (value <= -WIN_VALUE + MAX_PLY) {
+            return value + ply;
+        }
+        return value;
+    }
+
+    /** Return the value of a position PLY moves from the root whose
+     *  tablebase entry is ENTRY.  Distances too long to express as won or
+     *  lost values are shortened, so that the value still counts as a win
+     *  or loss; that keeps its sign, which is all that matters once the
+     *  position is in the tablebase. */
+    private static int tablebaseValue(int entry, int ply) {
+        if (Tablebase.wins(entry)) {
+            return WIN_VALUE
+                - Math.min(ply + Tablebase.distance(entry), MAX_PLY - 1);
+        } else if (Tablebase.loses(entry)) {
+            return -WIN_VALUE
+                + Math.min(ply + Tablebase.distance(entry), MAX_PLY - 1);
+        }
+        return 0;
+    }
+
+    /** Return true iff the null-move test shows that the position on
+     *  BOARD, to be searched to DEPTH at PLY, is worth at least BETA to
+     *  the side to move. */
+    private boolean nullMoveFailsHigh(Board board, int depth, int ply,
+                                      int beta) {
+        _stats.nullMoves += 1;
+        board.pass();
+        int value = -findBestMove(board, depth - 1 - NULL_REDUCTION,
+                                  ply + 1, -beta, -beta + 1, false);
+        board.retract();
+        if (value < beta) {
+            return false;
+        }
+        if (depth - NULL_REDUCTION > 1) {
+            value = findBestMove(board, depth - NULL_REDUCTION, ply,
+                                 beta - 1, beta, false);
+            if (value < beta) {
+                _stats.nullMoveRefutations += 1;
+                return false;
+            }
+        }
+        _stats.nullMoveCutoffs += 1;
+        return true;
+    }
+
+    /** Sort the first N MOVES by decreasing history score.  The sort is
+     *  stable, so moves with equal scores keep generation order. */
+    private void orderByHistory(Move[] moves, int n) {
+        for (int i = 1; i < n; i += 1) {
+            Move move = moves[i];
+            int score = _history.get(move);
+            int j;
+            for (j = i; j > 0 && _history.get(moves[j - 1]) < score;
+                 j -= 1) {
+                moves[j] = moves[j - 1];
+            }
+            moves[j] = move;
+        }
+    }
+
+    /** Return the move buffer for PLY, creating it if necessary. */
+    private Move[] buffer(int ply) {
+        if (_moves[ply] == null) {
+            _moves[ply] = new Move[Board.MAX_MOVES];
+        }
+        return _moves[ply];
+    }
+
+    /** Searches for the best value one move ahead, scoring each child of
+     *  the position on BOARD statically, in batches of LeafBatch.SIZE, and
+     *  stopping after the batch that produces a cutoff.  PLY, ALPHA, and
+     *  BETA are as for findBestMove.
+     * @param board the game board
+     * @param ply the distance from the root
+     * @param alpha the value already guaranteed to the side to move
+     * @param beta the value at which the opponent will avoid this node
+     * @return move integer of the best move*/
+    private int guessBestMove(Board board, int ply, int alpha, int beta) {
+        Move[] moves = buffer(ply);
+        int n = board.legalMoves(moves);
+        if (n == 0) {
+            return -WIN_VALUE + ply;
+        }
+        int best = -INFINITY;
+        _leavesReset = false;
+        for (int first = 0, last = 0, size = 1; first < n;
+             first = last, size = Math.min(2 * size, LeafBatch.SIZE)) {
+            last = Math.min(n, first + size);
+            eval(board, moves, first, last);
+            for (int i = first; i < last; i += 1) {
+                int moveVal = -leafValue(_leafValues[i - first], ply + 1);
+                if (moveVal > best) {
+                    best = moveVal;
+                    if (moveVal >= beta) {
+                        _stats.cutoffs += 1;
+                        return best;
                     }
                 }
             }
         }
-        return counter;
+        return best;
     }
 
-    /** Checks if rows and columns are in bound of the board.
-     * @param i the legal bounds within bounds
-     * @return i integer of the legal bounds */
-    private boolean isBounds(int i) {
-        return i >= 1 && i <= 8;
+    /** Return the value of a leaf PLY moves from the root whose static
+     *  evaluation (see LeafBatch) is VALUE: a finished game counts as won
+     *  or lost at that distance, like any other. */
+    private static int leafValue(int value, int ply) {
+        if (value == WIN_VALUE) {
+            return WIN_VALUE - ply;
+        } else if (value == -WIN_VALUE) {
+            return -WIN_VALUE + ply;
+        }
+        return value;
     }
 
-    /** Hash set that ensures no repeats of moves. */
-    private HashSet<Move> noSameMoves = new HashSet<Move>();
-    /** Hash set that ensures no repeats of final moves in the game. */
-    private HashSet<Move> noSameMovesFinal = new HashSet<Move>();
-}
+    /** Evaluate the positions reached from BOARD by MOVES[FIRST .. LAST -
+     *  1], at most LeafBatch.SIZE of them, from the point of view of their
+     *  sides to move (see LeafBatch), leaving the value of the position
+     *  reached by MOVES[I] in _leafValues[I - FIRST].  Values are
+     *  remembered in _evalCache, since the same leaves recur in each
+     *  iteration and through transpositions.  Those not found there are
+     *  computed together, as one LeafBatch, which is reset for BOARD
+     *  unless _leavesReset says it has been already. */
+    private void eval(Board board, Move[] moves, int first, int last) {
+        _leaves.clear();
+        for (int i = first; i < last; i += 1) {
+            _stats.evals += 1;
+            long key = board.keyAfter(moves[i]);
+            long cached = _evalCache.get(key);
+            if (cached != EvalCache.MISS) {
+                _stats.evalHits += 1;
+                _leafValues[i - first] = (int) cached;
+            } else {
+                if (!_leavesReset) {
+                    _leaves.reset(board);
+                    _leavesReset = true;
+                }
+                _leafSlots[_leaves.count] = i - first;
+                _leafKeys[_leaves.count] = key;
+                _leaves.add(moves[i]);
+            }
+        }
+        _leaves.score();
+        for (int k = 0; k < _leaves.count; k += 1) {
+            _leafValues[_leafSlots[k]] = _leaves.values[k];
+            _evalCache.put(_leafKeys[k], _leaves.values[k]);
+        }
+    }
+
+    /** Value of a won position (reduced by the number of moves needed to
+     *  win it). */
+    static final int WIN_VALUE = 1000000;
+
+    /** Return the number of moves, counting only those of the side to
+     *  move, in which a position of value VALUE is won (if positive) or
+     *  lost (if negative), or 0 if VALUE is not that of a decided
+     *  position. */
+    static int movesToMate(int value) {
+        if (value >= WIN_VALUE - MAX_PLY) {
+            return (WIN_VALUE - value + 1) / 2;
+        } else if (value <= -WIN_VALUE + MAX_PLY) {
+            return Math.min(-1, -(WIN_VALUE + value + 1) / 2);
+        }
+        return 0;
+    }
+
+    /** Return VALUE, as found by a search, in the form "cp V", or "mate M"
+     *  where M is as for movesToMate(VALUE) if that is not 0. */
+    static String scoreString(int value) {
+        int mate = movesToMate(value);
+        return mate == 0 ? "cp " + value : "mate " + mate;
+    }
+
+    /** A value greater than that of any position. */
+    private static final int INFINITY = WIN_VALUE + 1;
+
+    /** Weight of each group of pieces in the evaluation. */
+    static final int GROUP_WEIGHT = 20;
+
+    /** Weight of each unit of spread in the evaluation. */
+    static final int SPREAD_WEIGHT = 2;
+
+    /** Half-width of the initial aspiration window. */
+    private static final int ASPIRATION_WINDOW = 25;
+
+    /** Factor by which a failed aspiration window is widened. */
+    private static final int ASPIRATION_GROWTH = 4;
+
+    /** Depth by which a null-move search is reduced, beyond the move
+     *  itself. */
+    private static final int NULL_REDUCTION = 2;
+
+    /** Number of moves at each node that are never reduced. */
+    private static final int FULL_DEPTH_MOVES = 4;
+
+    /** Moves are reduced only at depths greater than this. */
+    private static final int REDUCTION_DEPTH = 2;
+
+    /** The clock is checked once every CLOCK_MASK + 1 nodes. */
+    private static final long CLOCK_MASK = 1023;
+
+    /** Longest time a pondering search may run, in milliseconds. */
+    private static final long PONDER_MILLIS = 60000;
+
+    /** Number of entries in the evaluation cache. */
+    private static final int EVAL_CACHE_ENTRIES = 1 << 18;
+
+    /** Longest line searched. */
+    private static final int MAX_PLY = 64;
+
+    /** Buffers for the legal moves at each ply, created as needed. */
+    private final Move[][] _moves = new Move[MAX_PLY][];
 
+    /** History scores: how often each move has caused a cutoff, weighted
+     *  by the depth of the cutoff. */
+    private final MoveIntMap _history = new MoveIntMap();
 
+    /** Statistics for the current or most recent search. */
+    private final SearchStats _stats = new SearchStats();
+
+    /** My settings. */
+    private final EngineOptions _options;
+
+    /** Transposition table, shared with my helpers. */
+    private TranspositionTable _table;
+
+    /** Cache of static evaluations, shared with my helpers. */
+    private EvalCache _evalCache;
+
+    /** Leaves being evaluated together (see eval). */
+    private final LeafBatch _leaves = new LeafBatch();
+
+    /** True iff _leaves has been reset for the position whose leaves are
+     *  being evaluated. */
+    private boolean _leavesReset;
+
+    /** Values of the leaves evaluated by the last call to eval. */
+    private final int[] _leafValues = new int[LeafBatch.SIZE];
+
+    /** For each leaf in _leaves, its index in _leafValues. */
+    private final int[] _leafSlots = new int[LeafBatch.SIZE];
+
+    /** For each leaf in _leaves, its hash key. */
+    private final long[] _leafKeys = new long[LeafBatch.SIZE];
+
+    /** Helper searchers, one for each thread after the first. */
+    private MachinePlayer[] _helpers = new MachinePlayer[0];
+
+    /** Searcher used for pondering. */
+    private MachinePlayer _ponderer;
+
+    /** Thread running _ponderer, or null if not pondering. */
+    private Thread _ponderThread;
+
+    /** Depth of the first iteration of each search.  Helpers start some
+     *  of their searches deeper, so that they do not all follow the main
+     *  searcher. */
+    private int _firstDepth = 1;
+
+    /** Decides how long to search for each move. */
+    private final TimeManager _time = new TimeManager();
+
+    /** Time at which the current search must stop. */
+    private long _deadline;
+
+    /** Depth limit for the current search (see search). */
+    private int _maxDepth;
+
+    /** Node limit for the current search, or 0 if none. */
+    private long _maxNodes;
+
+    /** Number of principal variations the current search finds. */
+    private int _lines = 1;
+
+    /** Number of nodes after which the current iteration must stop. */
+    private long _nodeLimit;
+
+    /** Receives reports of my progress, or null. */
+    private SearchListener _listener;
+
+    /** Set to stop the current search. */
+    private volatile boolean _stop;
+
+    /** Move set that ensures no repeats of final moves in the game. */
+    private MoveSet noSameMovesFinal = new MoveSet();
+}
@@ -1,6 +1,7 @@
 package loa;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
@@ -23,16 +24,50 @@ public class Main {
      *                      meesages up to level LEVEL.  0 indicates no
      *                      debugging messages (the default).  (This option
      *                      is not part of the spec.)
+     *      --threads=N     Search with N threads.
+     *      --hash=MB       Use a transposition table of MB megabytes.
+     *      --time=MS       Spend at most about MS milliseconds per move.
+     *      --depth=N       Search at most N moves deep.
+     *      --ponder        Search during the opponent's turn.
+     *      --protocol      Instead of playing interactively, accept
+     *                      commands from another program (see
+     *                      EngineProtocol).
+     *      --tablebase=FILE
+     *                      Consult the endgame tablebase in FILE (made by
+     *                      TablebaseGenerator) when searching.
+     *      --hash-file=FILE
+     *                      Keep the transposition table in FILE, creating
+     *                      it (of the size given by --hash) if need be, so
+     *                      that it survives from run to run and is shared
+     *                      by all the engines on this host that use it.
+     *      --worker=HOST:PORT
+     *                      Instead of playing, play self-play games for
+     *                      the SelfPlayCoordinator at PORT on HOST until
+     *                      it has no more.
+     *  The engine options may also be changed with the setoption
+     *  command.
      */
     public static void main(String... args) {
         CommandArgs options =
-            new CommandArgs("--debug=(\\d+){0,1} --display{0,1}", args);
+            new CommandArgs("--debug=(\\d+){0,1} --display{0,1}"
+                            + " --threads=(\\d+){0,1} --hash=(\\d+){0,1}"
+                            + " --time=(\\d+){0,1} --depth=(\\d+){0,1}"
+                            + " --ponder{0,1} --protocol{0,1}"
+                            + " --tablebase=(.+){0,1}"
+                            + " --hash-file=(.+){0,1}"
+                            + " --worker=(.+:\\d+){0,1}", args);
 
         if (!options.ok()) {
             usage();
         }
-        System.out.printf("Lines of Action.  Version %s.%nType ? for help.%n",
-                          VERSION);
+        if (options.contains("--worker")) {
+            worker(options.getFirst("--worker"));
+        }
+        boolean protocol = options.contains("--protocol");
+        if (!protocol) {
+            System.out.printf("Lines of Action.  Version %s.%n"
+                              + "Type ? for help.%n", VERSION);
+        }
 
         if (options.contains("--display")) {
             error(1, "--display not supported.");
@@ -40,12 +75,71 @@ public class Main {
 
         if (options.contains("--debug")) {
             Reporter.setMessageLevel(options.getInt("--debug"));
+            Reporter.setAsynchronous(true);
         }
 
-        Game game = new Game();
+        EngineOptions engine = new EngineOptions();
+        try {
+            for (String name : ENGINE_OPTIONS) {
+                if (options.contains("--" + name)) {
+                    engine.set(name, options.getFirst("--" + name));
+                }
+            }
+            if (options.contains("--ponder")) {
+                engine.set("ponder", "on");
+            }
+            if (options.contains("--tablebase")) {
+                File file = new File(options.getFirst("--tablebase"));
+                try {
+                    engine.setTablebase(Tablebase.open(file));
+                } catch (IOException excp) {
+                    error(1, "cannot load tablebase %s: %s%n", file,
+                          excp.getMessage());
+                }
+            }
+            if (options.contains("--hash-file")) {
+                File file = new File(options.getFirst("--hash-file"));
+                try {
+                    engine.setTable(TranspositionTable.open(
+                        file, engine.hashMegabytes()));
+                } catch (IOException excp) {
+                    error(1, "cannot open hash file %s: %s%n", file,
+                          excp.getMessage());
+                }
+            }
+        } catch (IllegalArgumentException excp) {
+            error(1, "%s%n", excp.getMessage());
+        }
+
+        if (protocol) {
+            new EngineProtocol(engine, new BufferedReader(
+                new InputStreamReader(System.in)), System.out).run();
+            System.exit(0);
+        }
+        Game game = new Game(engine);
         game.play();
     }
 
+    /** Play self-play games for the coordinator at ADDRESS (HOST:PORT)
+     *  until it has no more, and exit. */
+    private static void worker(String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            SelfPlayWorker.run(address.substring(0, colon),
+                               Integer.parseInt(address.substring(colon
+                                                                  + 1)));
+        } catch (IOException | NumberFormatException excp) {
+            error(1, "worker for %s: %s%n", address, excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Names of the numeric engine options settable from the command
+     *  line. */
+    private static final String[] ENGINE_OPTIONS = {
+        "threads", "hash", "time", "depth"
+    };
+
     /** Print brief description of the command-line format. */
     static void usage() {
         System.exit(1);
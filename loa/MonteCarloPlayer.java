@@ -0,0 +1,294 @@
+package loa;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** An automated Player that chooses moves by parallel Monte-Carlo tree
+ *  search with UCT selection and random playouts.
+ *
+ *  The search tree lives in a preallocated pool of nodes stored as
+ *  parallel arrays.  Searcher threads share the pool without locks:
+ *  counts are updated with atomic adds, a node is expanded by the thread
+ *  that first claims it with a compare-and-set, and the children of a
+ *  node are carved out of the pool with a single atomic add.  A thread
+ *  descending through a node counts a visit there immediately, before
+ *  its playout finishes; until the result arrives that visit looks like
+ *  a loss (a "virtual loss"), which steers other threads to different
+ *  parts of the tree.
+ *  @author Peter Lee
+ */
+class MonteCarloPlayer extends Player {
+
+    /** A MonteCarloPlayer that plays the SIDE pieces in GAME. */
+    MonteCarloPlayer(Piece side, Game game) {
+        this(side, game, Runtime.getRuntime().availableProcessors(),
+             Integer.MAX_VALUE, DEFAULT_MILLIS, DEFAULT_NODES);
+    }
+
+    /** A MonteCarloPlayer that plays the SIDE pieces in GAME, using the
+     *  number of threads and time per move (DEFAULT_MILLIS if none) in
+     *  OPTIONS, and a node pool of about the size given there for the
+     *  transposition table. */
+    MonteCarloPlayer(Piece side, Game game, EngineOptions options) {
+        this(side, game, options.threads(), Integer.MAX_VALUE,
+             options.moveMillis() > 0 ? options.moveMillis() : DEFAULT_MILLIS,
+             (int) Math.min(Integer.MAX_VALUE - 8,
+                            ((long) options.hashMegabytes() << 20)
+                            / NODE_BYTES));
+    }
+
+    /** A MonteCarloPlayer that plays the SIDE pieces in GAME, using
+     *  THREADS searcher threads and a node pool of NODES nodes.  It
+     *  stops searching for a move after PLAYOUTS playouts or MILLIS
+     *  milliseconds, whichever comes first. */
+    MonteCarloPlayer(Piece side, Game game, int threads, int playouts,
+                     long millis, int nodes) {
+        super(side, game);
+        _threads = Math.max(1, threads);
+        _playouts = playouts;
+        _millis = millis;
+        _move = new int[nodes];
+        _firstChild = new AtomicIntegerArray(nodes);
+        _childCount = new int[nodes];
+        _visits = new AtomicIntegerArray(nodes);
+        _score = new AtomicLongArray(nodes);
+    }
+
+    @Override
+    Move makeMove() {
+        return findMove(getBoard());
+    }
+
+    @Override
+    void stop() {
+        _deadline = 0;
+    }
+
+    /** Return the move chosen by a search from the position on BOARD,
+     *  which is left unchanged. */
+    Move findMove(Board board) {
+        resetTree();
+        _done.set(0);
+        long start = System.currentTimeMillis();
+        _deadline = start + _millis;
+        Thread[] workers = new Thread[_threads - 1];
+        for (int i = 0; i < workers.length; i += 1) {
+            long seed = getGame().randInt(Integer.MAX_VALUE);
+            Board copy = new Board(board, false);
+            workers[i] = new Thread(() -> search(copy, seed));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        search(new Board(board, false), getGame().randInt(Integer.MAX_VALUE));
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        int playouts = Math.min(_done.get(), _playouts);
+        Reporter.debug(1, "mcts: %d playouts, %d nodes, %d ms, %d playouts/s",
+                       playouts, _nextNode.get(), millis,
+                       playouts * 1000L / millis);
+        return bestChild();
+    }
+
+    /** Run playouts from the position on BOARD, whose contents this thread
+     *  owns, until the playout budget is used up.  SEED seeds this
+     *  thread's random numbers. */
+    private void search(Board board, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Move[] moves = new Move[Board.MAX_MOVES];
+        int[] path = new int[MAX_DEPTH + 1];
+        while (_done.getAndIncrement() < _playouts
+               && System.currentTimeMillis() < _deadline) {
+            int depth = 0;
+            int node = ROOT;
+            path[0] = node;
+            _visits.incrementAndGet(node);
+            while (board.winner() == null && depth < MAX_DEPTH) {
+                int first = _firstChild.get(node);
+                if (first == UNEXPANDED) {
+                    expand(node, board, moves);
+                    break;
+                } else if (first < 0) {
+                    break;
+                }
+                node = select(node, first);
+                board.makeMove(Move.get(_move[node]));
+                depth += 1;
+                path[depth] = node;
+                _visits.incrementAndGet(node);
+            }
+            Piece winner = playout(board, random, moves);
+            for (int i = depth; i > 0; i -= 1) {
+                Piece mover = Move.get(_move[path[i]]).movedPiece();
+                _score.addAndGet(path[i], reward(winner, mover));
+            }
+            for (int i = depth; i > 0; i -= 1) {
+                board.retract();
+            }
+        }
+    }
+
+    /** Return the child of NODE, whose children start at FIRST, with the
+     *  highest UCT value. */
+    private int select(int node, int first) {
+        double logN = Math.log(Math.max(1, _visits.get(node)));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int c = first; c < first + _childCount[node]; c += 1) {
+            int n = _visits.get(c);
+            double value;
+            if (n == 0) {
+                value = Double.MAX_VALUE;
+            } else {
+                value = _score.get(c) / (2.0 * n)
+                    + EXPLORATION * Math.sqrt(logN / n);
+            }
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Add children for the legal moves on BOARD to NODE, unless another
+     *  thread is already doing so or the pool is full.  MOVES is a
+     *  buffer of MAX_MOVES moves. */
+    private void expand(int node, Board board, Move[] moves) {
+        if (!_firstChild.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+            return;
+        }
+        int n = board.legalMoves(moves);
+        int first = _nextNode.getAndAdd(n);
+        if (n == 0 || first + n > _move.length) {
+            _firstChild.set(node, FULL);
+            return;
+        }
+        for (int i = 0; i < n; i += 1) {
+            _move[first + i] = moves[i].index();
+            _firstChild.set(first + i, UNEXPANDED);
+            _visits.set(first + i, 0);
+            _score.set(first + i, 0);
+        }
+        _childCount[node] = n;
+        _firstChild.set(node, first);
+    }
+
+    /** Play random moves on BOARD until one side wins or the playout
+     *  reaches its length limit, returning the winner (or null), and
+     *  restore BOARD.  RANDOM supplies the moves; MOVES is a buffer of
+     *  MAX_MOVES moves. */
+    private Piece playout(Board board, SplittableRandom random,
+                          Move[] moves) {
+        int made = 0;
+        Piece winner = board.winner();
+        while (winner == null && made < PLAYOUT_LENGTH) {
+            int n = board.legalMoves(moves);
+            if (n == 0) {
+                winner = board.turn().opposite();
+                break;
+            }
+            board.makeMove(moves[random.nextInt(n)]);
+            made += 1;
+            winner = board.winner();
+        }
+        for (; made > 0; made -= 1) {
+            board.retract();
+        }
+        return winner;
+    }
+
+    /** Return the score (in half points) for MOVER of a playout won by
+     *  WINNER (null for none). */
+    private static int reward(Piece winner, Piece mover) {
+        if (winner == null) {
+            return 1;
+        }
+        return winner == mover ? 2 : 0;
+    }
+
+    /** Return the most visited move from the root. */
+    private Move bestChild() {
+        int first = _firstChild.get(ROOT);
+        if (first < 0) {
+            Move[] moves = new Move[Board.MAX_MOVES];
+            return getBoard().legalMoves(moves) == 0 ? null : moves[0];
+        }
+        int best = first;
+        for (int c = first; c < first + _childCount[ROOT]; c += 1) {
+            if (_visits.get(c) > _visits.get(best)) {
+                best = c;
+            }
+        }
+        return Move.get(_move[best]);
+    }
+
+    /** Empty the node pool, leaving just an unexpanded root. */
+    private void resetTree() {
+        _nextNode.set(ROOT + 1);
+        _move[ROOT] = -1;
+        _firstChild.set(ROOT, UNEXPANDED);
+        _visits.set(ROOT, 0);
+        _score.set(ROOT, 0);
+    }
+
+    /** Default time limit per move, in milliseconds. */
+    static final long DEFAULT_MILLIS = 2000;
+    /** Default number of nodes in the pool. */
+    static final int DEFAULT_NODES = 1 << 20;
+
+    /** Bytes per node in the pool. */
+    private static final int NODE_BYTES = 24;
+
+    /** UCT exploration constant. */
+    private static final double EXPLORATION = 0.7;
+    /** Maximum depth of the tree. */
+    private static final int MAX_DEPTH = 200;
+    /** Maximum number of moves in one playout. */
+    private static final int PLAYOUT_LENGTH = 300;
+
+    /** Pool index of the root node. */
+    private static final int ROOT = 0;
+    /** Values of _firstChild for a node with no children yet, a node
+     *  being expanded, and a node that cannot be expanded. */
+    private static final int UNEXPANDED = -1, EXPANDING = -2, FULL = -3;
+
+    /** Number of searcher threads. */
+    private final int _threads;
+    /** Maximum number of playouts per move. */
+    private final int _playouts;
+    /** Maximum time per move, in milliseconds. */
+    private final long _millis;
+    /** Time at which the current search must stop. */
+    private volatile long _deadline;
+    /** Number of playouts started for the current move. */
+    private final AtomicInteger _done = new AtomicInteger();
+    /** Index of the next free node in the pool. */
+    private final AtomicInteger _nextNode = new AtomicInteger();
+
+    /* The node pool.  Node k's children, if any, are the nodes
+     * _firstChild[k] .. _firstChild[k] + _childCount[k] - 1. */
+
+    /** Index of the move leading to each node. */
+    private final int[] _move;
+    /** Index of each node's first child, or one of UNEXPANDED, EXPANDING,
+     *  FULL. */
+    private final AtomicIntegerArray _firstChild;
+    /** Number of children of each node. */
+    private final int[] _childCount;
+    /** Visits to each node, including those whose playouts are still in
+     *  progress. */
+    private final AtomicIntegerArray _visits;
+    /** Total score, in half points, of each node's completed playouts,
+     *  from the point of view of the side that moved into it (unused for
+     *  the root). */
+    private final AtomicLongArray _score;
+
+}
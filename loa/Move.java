@@ -1,28 +1,58 @@
 package loa;
 
-import static loa.Board.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static loa.Direction.*;
 import static loa.Piece.*;
 
 /** A move in Lines of Action.
  *  @author Peter Lee
+ */
 class Move {
 
     /* Implementation note: We create moves by means of static "factory
      * methods" all named create, which in turn use the single (private)
      * constructor.  There is a unique Move for each combination of arguments.
      * As a result the default equality operation (same as ==) will
-     * work. */
+     * work.
+     *
+     * Moves live in one flat table indexed by index(), and each is
+     * constructed the first time it is asked for, so loading this class
+     * costs one array allocation.  Lookup is a single index computation
+     * and array read.  The table is shared by all threads; a thread that
+     * constructs a move installs it only if no other thread got there
+     * first, and otherwise uses the one installed, so moves stay unique.
+     *
+     * Every Move also carries a dense integer index, computed from its
+     * starting square, ending square, moved piece, and replaced piece
+     * (see index()).  Squares are numbered as on the largest board (see
+     * Geometry.universal), so a move has the same index on boards of
+     * every size it fits on.  Engine code that needs to store moves in
+     * sets or tables should use the index rather than the Move itself;
+     * get(int) turns an index back into its Move in constant time. */
+
+    /** Largest board size, and the number of squares on such a board. */
+    private static final int M = Geometry.MAX_SIZE, SQUARES = M * M;
+
+    /** The number of distinct move indices.  Every index() is in the
+     *  range 0 .. INDICES - 1. */
+    static final int INDICES = SQUARES * SQUARES * 2 * 3;
+
+    /** Pattern matching a move at the start of a string. */
+    private static final Pattern MOVE_PATN =
+        Pattern.compile("([a-j](?:10|[1-9]))-([a-j](?:10|[1-9]))\\b.*");
 
     /** Return a move on BOARD denoted by a prefix of S (after trimming),
      *  or null if S denotes no valid move. */
     static Move create(String s, Board board) {
-        s = s.trim();
-        if (s.matches("[a-h][1-9]-[a-h][1-9]\\b.*")) {
-            String p1 = s.substring(0, 2);
-            String p2 = s.substring(3, 5);
-            return create(board.col(p1), board.row(p1),
-                          board.col(p2), board.row(p2), board);
+        Matcher m = MOVE_PATN.matcher(s.trim());
+        if (m.matches()) {
+            String p1 = m.group(1);
+            String p2 = m.group(2);
+            return create(Board.col(p1), Board.row(p1),
+                          Board.col(p2), Board.row(p2), board);
         } else {
             return null;
         }
@@ -32,16 +62,18 @@ class Move {
      *  BOARD or null if this move is always invalid. */
     static Move create(int column0, int row0, int column1, int row1,
                        Board board) {
-        if (!inBounds(column0, row0) || !inBounds(column1, row1)) {
+        Geometry geometry = board.geometry();
+        if (!geometry.inBounds(column0, row0)
+            || !geometry.inBounds(column1, row1)) {
             return null;
         }
         Piece movedPiece = board.get(column0, row0);
         if (movedPiece == EMP) {
             return null;
         }
-        int moved = movedPiece.ordinal();
-        int replaced = board.get(column1, row1).ordinal();
-        return _moves[column0][row0][column1][row1][moved][replaced];
+        return get(index(universal(column0, row0), universal(column1, row1),
+                         movedPiece.ordinal(),
+                         board.get(column1, row1).ordinal()));
     }
 
     /** Return a K step move from (COLUMN0, ROW0) in the direction DIR on
@@ -57,8 +89,7 @@ class Move {
      *  that it replaces. */
     private Move(int col0, int row0, int col1, int row1,
                  Piece moved, Piece replaced) {
-        assert 1 <= col0 && col0 <= M && 1 <= row0 && row0 <= M
-            && 1 <= col1 && col1 <= M && 1 <= row1 && row1 <= M
+        assert inBounds(col0, row0) && inBounds(col1, row1)
             && (col0 == col1 || row0 == row1 || col0 + row0 == col1 + row1
                 || col0 - row0 == col1 - row1)
             && moved != EMP && moved != null && replaced != null;
@@ -68,24 +99,73 @@ class Move {
         _row1 = row1;
         _moved = moved;
         _replaced = replaced;
+        _index = index(universal(col0, row0), universal(col1, row1),
+                       moved.ordinal(), replaced.ordinal());
     }
 
-    /** Return the column at which this move starts, as an index in 1--8. */
+    /** Return the move whose index() is INDEX, or null if there is no
+     *  such move. */
+    static Move get(int index) {
+        if (index < 0 || index >= INDICES) {
+            return null;
+        }
+        Move move = _byIndex.get(index);
+        return move != null ? move : install(index);
+    }
+
+    /** Return the move whose index() is INDEX, constructing and recording
+     *  it if no other thread has yet, or null if there is no such move.
+     *  Assumes 0 <= INDEX < INDICES. */
+    private static Move install(int index) {
+        int replaced = index % 3, moved = index / 3 % 2;
+        int from = index / 6 / SQUARES, to = index / 6 % SQUARES;
+        int c0 = from % M + 1, r0 = from / M + 1,
+            c1 = to % M + 1, r1 = to / M + 1;
+        if (from == to || moved == replaced
+            || (c0 != c1 && r0 != r1 && c0 + r0 != c1 + r1
+                && c0 - r0 != c1 - r1)) {
+            return null;
+        }
+        Move move = new Move(c0, r0, c1, r1, PIECES[moved], PIECES[replaced]);
+        if (_byIndex.compareAndSet(index, null, move)) {
+            return move;
+        }
+        return _byIndex.get(index);
+    }
+
+    /** Return the index of the move from square FROM to square TO that
+     *  moves the piece with ordinal MOVED and replaces the piece with
+     *  ordinal REPLACED.  FROM and TO are as for Geometry.universal. */
+    static int index(int from, int to, int moved, int replaced) {
+        return ((from * SQUARES + to) * 2 + moved) * 3 + replaced;
+    }
+
+    /** Return my dense index, a value in 0 .. INDICES - 1 that uniquely
+     *  identifies me among all moves. */
+    int index() {
+        return _index;
+    }
+
+    /** Return the column at which this move starts, as an index in
+     *  1 .. Geometry.MAX_SIZE. */
     int getCol0() {
         return _col0;
     }
 
-    /** Return the row at which this move starts, as an index in 1--8. */
+    /** Return the row at which this move starts, as an index in
+     *  1 .. Geometry.MAX_SIZE. */
     int getRow0() {
         return _row0;
     }
 
-    /** Return the column at which this move ends, as an index in 1--8. */
+    /** Return the column at which this move ends, as an index in
+     *  1 .. Geometry.MAX_SIZE. */
     int getCol1() {
         return _col1;
     }
 
-    /** Return the row at which this move ends, as an index in 1--8. */
+    /** Return the row at which this move ends, as an index in
+     *  1 .. Geometry.MAX_SIZE. */
     int getRow1() {
         return _row1;
     }
@@ -106,12 +186,17 @@ class Move {
         return Math.max(Math.abs(_row1 - _row0), Math.abs(_col1 - _col0));
     }
 
-    /** Return true IFF (C, R) denotes a square on the board, that is if
-     *  1 <= C <= M, 1 <= R <= M. */
+    /** Return true IFF (C, R) denotes a square on the largest board, that
+     *  is if 1 <= C <= M, 1 <= R <= M. */
     private static boolean inBounds(int c, int r) {
         return 1 <= c && c <= M && 1 <= r && r <= M;
     }
 
+    /** Return the universal index of column C, row R. */
+    private static int universal(int c, int r) {
+        return (r - 1) * M + c - 1;
+    }
+
     @Override
     public String toString() {
         return String.format("%c%d-%c%d", (char) (_col0 - 1 + 'a'), _row0,
@@ -120,7 +205,7 @@ class Move {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return _index / (2 * 3);
     }
 
 
@@ -140,45 +225,14 @@ class Move {
     private final Piece _moved;
     /** Piece replaced. */
     private final Piece _replaced;
+    /** My dense index. */
+    private final int _index;
 
-    /** The set of all possible Moves, indexed by row and column of
-     *  start, row and column of destination, piece moved and piece replaced. */
-    private static Move[][][][][][] _moves =
-        new Move[M + 1][M + 1][M + 1][M + 1][2][3];
-
-    static {
-        for (int m = 0; m <= 1; m += 1) {
-            for (int r = 0; r <= 2; r += 1) {
-                Piece pm = Piece.values()[m], pr = Piece.values()[r];
-                if (pm == pr || pm == EMP) {
-                    continue;
-                }
-                for (int r0 = 1; r0 <= M; r0 += 1) {
-                    for (int c0 = 1; c0 <= M; c0 += 1) {
-                        for (int k = 1; k <= M; k += 1) {
-                            if (k != r0) {
-                                _moves[c0][r0][c0][k][m][r] =
-                                    new Move(c0, r0, c0, k, pm, pr);
-                                if ((char) (c0 - r0 + k - 1) < M) {
-                                    _moves[c0][r0][c0 - r0 + k][k][m][r]
-                                        = new Move(c0, r0, c0 - r0 + k, k,
-                                                   pm, pr);
-                                }
-                            }
-                            if (k != c0) {
-                                _moves[c0][r0][k][r0][m][r] =
-                                    new Move(c0, r0, k, r0, pm, pr);
-                                if ((char) (c0 + r0 - k - 1) < M) {
-                                    _moves[c0][r0][k][c0 + r0 - k][m][r]
-                                        = new Move(c0, r0, k, c0 + r0 - k,
-                                                   pm, pr);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-    }
+    /** The pieces, indexed by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+
+    /** The Moves constructed so far, indexed by index(). */
+    private static final AtomicReferenceArray<Move> _byIndex =
+        new AtomicReferenceArray<>(INDICES);
 
 }
@@ -0,0 +1,481 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ucb.util.CommandArgs;
+
+import static loa.Piece.*;
+
+/** A differential fuzzer that checks Board against ReferenceBoard.
+ *
+ *  Each worker thread generates positions from its own seeded random
+ *  source, alternating between random playouts from the initial position
+ *  of a random board size (which exercise Board's incrementally
+ *  maintained state over long move sequences) and random scatterings of
+ *  pieces (which reach positions playouts rarely do).  In each position
+ *  it compares the contents, the hash key against that of a freshly
+ *  built board, the legal moves, isLegal for every move along every
+ *  line from every piece of the side to move, gameOver, winner, the
+ *  group counts, winningMove, and the state after making and retracting
+ *  each legal move and a pass.
+ *
+ *  The first discrepancy stops all workers.  The position is then
+ *  minimized by removing pieces one at a time for as long as the
+ *  discrepancy persists, and reported with the seed that produced it.
+ *  Usage:
+ *      java loa.MoveFuzzer [--seconds=N] [--threads=N] [--seed=N]
+ *                          [--size=N]
+ *  @author Peter Lee
+ */
+class MoveFuzzer {
+
+    /** A fuzzer whose workers use seeds derived from SEED, running on
+     *  THREADS threads, and testing boards of size SIZE, or of random
+     *  sizes if SIZE is 0. */
+    MoveFuzzer(long seed, int threads, int size) {
+        if (size != 0) {
+            Geometry.of(size);
+        }
+        _seed = seed;
+        _threads = threads;
+        _size = size;
+    }
+
+    /** Check positions until at least POSITIONS have been checked (if
+     *  POSITIONS > 0), MILLIS milliseconds have passed (if MILLIS > 0),
+     *  or a discrepancy is found.  Return a report of the discrepancy,
+     *  or null if none was found. */
+    String run(long positions, long millis) {
+        _positions.set(0);
+        _failure.set(null);
+        _done = false;
+        long deadline = millis > 0 ? System.currentTimeMillis() + millis
+            : Long.MAX_VALUE;
+        long quota = positions > 0 ? positions : Long.MAX_VALUE;
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        for (int i = 0; i < _threads; i += 1) {
+            long seed = _seed + i;
+            pool.execute(() -> work(seed, quota, deadline));
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.DAYS)) {
+                continue;
+            }
+        } catch (InterruptedException excp) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return _failure.get();
+    }
+
+    /** Return the number of positions checked by the last run. */
+    long positions() {
+        return _positions.get();
+    }
+
+    /** Check positions generated from the random seed SEED until QUOTA
+     *  positions have been checked by all workers, the time is DEADLINE,
+     *  or some worker finds a discrepancy. */
+    private void work(long seed, long quota, long deadline) {
+        Random random = new Random(seed);
+        Move[] moves = new Move[Board.MAX_MOVES];
+        List<String> history = new ArrayList<>();
+        for (long game = 0; _failure.get() == null; game += 1) {
+            int size = _size != 0 ? _size
+                : Geometry.MIN_SIZE
+                + random.nextInt(Geometry.MAX_SIZE - Geometry.MIN_SIZE + 1);
+            Board board;
+            if (game % 2 == 0) {
+                board = new Board(size);
+            } else {
+                board = new Board(scatter(size, random),
+                                  random.nextBoolean() ? BP : WP);
+            }
+            ReferenceBoard ref = new ReferenceBoard(board);
+            Piece[][] start = ref.contents();
+            Piece startTurn = ref.turn();
+            history.clear();
+            for (int ply = 0; ply < MAX_PLIES; ply += 1) {
+                String error = compare(board, ref);
+                long checked = _positions.incrementAndGet();
+                if (error != null) {
+                    fail(seed, start, startTurn, history, ref, error);
+                    return;
+                }
+                if (checked >= quota
+                    || (checked & CLOCK_MASK) == 0
+                    && System.currentTimeMillis() >= deadline) {
+                    _done = true;
+                }
+                if (_done || _failure.get() != null || ref.gameOver()) {
+                    break;
+                }
+                int n = board.legalMoves(moves);
+                if (n == 0) {
+                    board.pass();
+                    ref = new ReferenceBoard(ref.contents(),
+                                             ref.turn().opposite());
+                    history.add("pass");
+                    continue;
+                }
+                Move move = moves[random.nextInt(n)];
+                board.makeMove(move);
+                ref.makeMove(move.getCol0(), move.getRow0(),
+                             move.getCol1(), move.getRow1());
+                history.add(move.toString());
+            }
+            if (_done) {
+                return;
+            }
+        }
+    }
+
+    /** Return a random position on a SIZE x SIZE board. */
+    private static Piece[][] scatter(int size, Random random) {
+        Piece[][] contents = new Piece[size][size];
+        for (Piece[] row : contents) {
+            java.util.Arrays.fill(row, EMP);
+        }
+        int maxPieces = 2 * (size - 2);
+        for (Piece side : new Piece[] { BP, WP }) {
+            for (int n = 1 + random.nextInt(maxPieces); n > 0; ) {
+                int c = random.nextInt(size), r = random.nextInt(size);
+                if (contents[r][c] == EMP) {
+                    contents[r][c] = side;
+                    n -= 1;
+                }
+            }
+        }
+        return contents;
+    }
+
+    /** Record the discrepancy ERROR, found by the worker using SEED in
+     *  position REF, reached from START with STARTTURN to move by the
+     *  moves in HISTORY.  Only the first discrepancy found is kept. */
+    private void fail(long seed, Piece[][] start, Piece startTurn,
+                      List<String> history, ReferenceBoard ref,
+                      String error) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Discrepancy (seed %d): %s%n", seed,
+                                    error));
+        Piece[][] contents = ref.contents();
+        if (compare(new Board(contents, ref.turn()),
+                    new ReferenceBoard(contents, ref.turn())) == null) {
+            report.append(String.format("Not reproducible on a fresh board;"
+                                        + " reached from%n%s%nby %s%n",
+                                        new ReferenceBoard(start, startTurn),
+                                        history));
+            report.append(String.format("Position:%n%s%n", ref));
+        } else {
+            ReferenceBoard min = minimize(contents, ref.turn());
+            report.append(String.format("Minimized position:%n%s%n%s%n",
+                                        min, compare(new Board(min.contents(),
+                                                               min.turn()),
+                                                     min)));
+        }
+        _failure.compareAndSet(null, report.toString());
+    }
+
+    /** Return a position with a subset of the pieces in CONTENTS, with
+     *  TURN to move, in which Board and ReferenceBoard still disagree and
+     *  from which no single piece can be removed without making them
+     *  agree.  Assumes they disagree on CONTENTS. */
+    static ReferenceBoard minimize(Piece[][] contents, Piece turn) {
+        ReferenceBoard ref = new ReferenceBoard(contents, turn);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 1; r <= ref.size(); r += 1) {
+                for (int c = 1; c <= ref.size(); c += 1) {
+                    Piece p = ref.get(c, r);
+                    if (p == EMP) {
+                        continue;
+                    }
+                    ref.set(c, r, EMP);
+                    Board board = new Board(ref.contents(), turn);
+                    if (compare(board, ref) != null) {
+                        changed = true;
+                    } else {
+                        ref.set(c, r, p);
+                    }
+                }
+            }
+        }
+        return ref;
+    }
+
+    /** Return a description of the first difference found between BOARD
+     *  and REF, which are supposed to represent the same position, or
+     *  null if there is none.  Leaves BOARD unchanged. */
+    static String compare(Board board, ReferenceBoard ref) {
+        int size = ref.size();
+        if (board.size() != size) {
+            return "size " + board.size() + " != " + size;
+        }
+        if (board.turn() != ref.turn()) {
+            return "turn " + board.turn();
+        }
+        for (int r = 1; r <= size; r += 1) {
+            for (int c = 1; c <= size; c += 1) {
+                if (board.get(c, r) != ref.get(c, r)) {
+                    return String.format("contents of %c%d: %s",
+                                         (char) ('a' + c - 1), r,
+                                         board.get(c, r));
+                }
+            }
+        }
+        if (board.key() != expectedKey(ref)) {
+            return "key differs from that of a fresh board";
+        }
+        String error = compareMoves(board, ref);
+        if (error == null) {
+            error = compareConnectivity(board, ref);
+        }
+        if (error == null) {
+            error = compareMakeRetract(board);
+        }
+        return error;
+    }
+
+    /** Return the key that a Board built from scratch in the position of
+     *  REF would have. */
+    private static long expectedKey(ReferenceBoard ref) {
+        Geometry geometry = Geometry.of(ref.size());
+        long key = ref.turn() == WP ? geometry.zobristTurn() : 0;
+        for (int r = 1; r <= ref.size(); r += 1) {
+            for (int c = 1; c <= ref.size(); c += 1) {
+                Piece p = ref.get(c, r);
+                if (p != EMP) {
+                    key ^= geometry.zobrist(p.ordinal(), geometry.sq(c, r));
+                }
+            }
+        }
+        return key;
+    }
+
+    /** Return a description of the first difference between the legal
+     *  moves of BOARD and REF, or null if there is none. */
+    private static String compareMoves(Board board, ReferenceBoard ref) {
+        Move[] moves = new Move[Board.MAX_MOVES];
+        int n = board.legalMoves(moves);
+        int[] actual = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            Move move = moves[i];
+            if (move.movedPiece() != ref.get(move.getCol0(), move.getRow0())
+                || move.replacedPiece()
+                   != ref.get(move.getCol1(), move.getRow1())) {
+                return "wrong pieces in move " + move;
+            }
+            actual[i] = ReferenceBoard.code(move);
+        }
+        int[] expected = ref.legalMoves();
+        Arrays.sort(actual);
+        Arrays.sort(expected);
+        if (!Arrays.equals(actual, expected)) {
+            Set<String> missing = new TreeSet<>(), extra = new TreeSet<>();
+            for (int code : expected) {
+                if (Arrays.binarySearch(actual, code) < 0) {
+                    missing.add(ReferenceBoard.name(code));
+                }
+            }
+            for (int i = 0; i < n; i += 1) {
+                if (i > 0 && actual[i] == actual[i - 1]) {
+                    extra.add(ReferenceBoard.name(actual[i]) + " (twice)");
+                } else if (Arrays.binarySearch(expected, actual[i]) < 0) {
+                    extra.add(ReferenceBoard.name(actual[i]));
+                }
+            }
+            return "legalMoves: missing " + missing + ", extra " + extra;
+        }
+        for (int r0 = 1; r0 <= ref.size(); r0 += 1) {
+            for (int c0 = 1; c0 <= ref.size(); c0 += 1) {
+                if (ref.get(c0, r0) != ref.turn()) {
+                    continue;
+                }
+                for (int dc = -1; dc <= 1; dc += 1) {
+                    for (int dr = -1; dr <= 1; dr += 1) {
+                        for (int k = 1; k < ref.size(); k += 1) {
+                            int c1 = c0 + k * dc, r1 = r0 + k * dr;
+                            if ((dc == 0 && dr == 0)
+                                || ref.get(c1, r1) == null) {
+                                break;
+                            }
+                            Move move = Move.create(c0, r0, c1, r1, board);
+                            if (board.isLegal(move)
+                                != ref.isLegal(c0, r0, c1, r1)) {
+                                return "isLegal(" + move + ") is "
+                                    + board.isLegal(move);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return a description of the first difference between BOARD and REF
+     *  in connectivity, or null if there is none. */
+    private static String compareConnectivity(Board board,
+                                              ReferenceBoard ref) {
+        for (Piece side : new Piece[] { BP, WP }) {
+            if (board.piecesContiguous(side) != ref.components(side)) {
+                return "piecesContiguous(" + side + ") is "
+                    + board.piecesContiguous(side);
+            }
+        }
+        if (board.gameOver() != ref.gameOver()) {
+            return "gameOver() is " + board.gameOver();
+        }
+        if (board.winner() != ref.winner()) {
+            return "winner() is " + board.winner();
+        }
+        Move win = board.winningMove();
+        Piece side = ref.turn();
+        if (win != null) {
+            if (!ref.isLegal(win.getCol0(), win.getRow0(), win.getCol1(),
+                             win.getRow1())) {
+                return "winningMove() " + win + " is illegal";
+            }
+            ReferenceBoard after = new ReferenceBoard(ref);
+            after.makeMove(win.getCol0(), win.getRow0(), win.getCol1(),
+                           win.getRow1());
+            if (after.components(side) != 1) {
+                return "winningMove() " + win + " does not connect";
+            }
+        } else if (ref.components(side) > 1) {
+            ReferenceBoard after = new ReferenceBoard(ref);
+            for (int code : ref.legalMoves()) {
+                int c0 = ReferenceBoard.coordinate(code, 0),
+                    r0 = ReferenceBoard.coordinate(code, 1),
+                    c1 = ReferenceBoard.coordinate(code, 2),
+                    r1 = ReferenceBoard.coordinate(code, 3);
+                Piece replaced = after.get(c1, r1);
+                after.makeMove(c0, r0, c1, r1);
+                if (after.components(side) == 1) {
+                    return "winningMove() missed "
+                        + ReferenceBoard.name(code);
+                }
+                after.retract(c0, r0, c1, r1, replaced);
+            }
+        }
+        return null;
+    }
+
+    /** Return a description of the first error found in making and
+     *  retracting each legal move and a pass on BOARD, or null if there
+     *  is none. */
+    private static String compareMakeRetract(Board board) {
+        Move[] moves = new Move[Board.MAX_MOVES];
+        int n = board.legalMoves(moves);
+        Position before = board.position();
+        long key = board.key();
+        int made = board.movesMade();
+        Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < n; i += 1) {
+            Move move = moves[i];
+            long expected = board.keyAfter(move);
+            board.makeMove(move);
+            if (board.key() != expected || board.lastMove() != move
+                || board.get(move.getCol1(), move.getRow1())
+                   != move.movedPiece()
+                || board.get(move.getCol0(), move.getRow0()) != EMP) {
+                board.retract();
+                return "makeMove(" + move + ")";
+            }
+            keys.add(board.key());
+            board.retract();
+            if (board.key() != key || !board.position().equals(before)
+                || board.movesMade() != made) {
+                return "retract after " + move;
+            }
+        }
+        if (keys.size() != n) {
+            return "two moves lead to positions with the same key";
+        }
+        board.pass();
+        if (board.turn() != before.turn().opposite()
+            || board.lastMove() != null) {
+            board.retract();
+            return "pass";
+        }
+        board.retract();
+        if (board.key() != key || !board.position().equals(before)) {
+            return "retract after pass";
+        }
+        return null;
+    }
+
+    /** Run the fuzzer as described in the class comment.  ARGS are the
+     *  command-line options. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--seconds=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --seed=(\\d+){0,1} --size=(\\d+){0,1}",
+                            args);
+        if (!options.ok()) {
+            Main.error(1, "usage: java loa.MoveFuzzer [--seconds=N]"
+                       + " [--threads=N] [--seed=N] [--size=N]%n");
+        }
+        long seconds = options.contains("--seconds")
+            ? options.getLong("--seconds") : DEFAULT_SECONDS;
+        int threads = options.contains("--threads")
+            ? options.getInt("--threads")
+            : Runtime.getRuntime().availableProcessors();
+        long seed = options.contains("--seed") ? options.getLong("--seed")
+            : System.nanoTime();
+        int size = options.contains("--size") ? options.getInt("--size") : 0;
+        MoveFuzzer fuzzer;
+        try {
+            fuzzer = new MoveFuzzer(seed, Math.max(1, threads), size);
+        } catch (IllegalArgumentException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+            return;
+        }
+        long start = System.currentTimeMillis();
+        String failure = fuzzer.run(0, seconds * 1000);
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.printf("%d positions in %d ms (%d/s) on %d threads,"
+                          + " seed %d%n", fuzzer.positions(), millis,
+                          fuzzer.positions() * 1000 / millis, threads, seed);
+        if (failure != null) {
+            System.out.print(failure);
+            System.exit(1);
+        }
+        System.out.println("No discrepancies.");
+    }
+
+    /** Default running time, in seconds. */
+    private static final int DEFAULT_SECONDS = 60;
+    /** Longest playout, in plies. */
+    private static final int MAX_PLIES = 200;
+    /** The clock is read when the number of positions checked has all
+     *  these bits clear. */
+    private static final long CLOCK_MASK = 255;
+
+    /** Base seed. */
+    private final long _seed;
+    /** Number of worker threads. */
+    private final int _threads;
+    /** Board size, or 0 for random sizes. */
+    private final int _size;
+    /** Number of positions checked in the current run. */
+    private final AtomicLong _positions = new AtomicLong();
+    /** Report of the first discrepancy found in the current run. */
+    private final AtomicReference<String> _failure = new AtomicReference<>();
+    /** True once the current run has reached its quota or deadline. */
+    private volatile boolean _done;
+
+}
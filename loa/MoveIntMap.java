@@ -0,0 +1,61 @@
+package loa;
+
+import java.util.Arrays;
+
+/** A mapping from Moves to ints, stored in a flat array indexed by
+ *  Move index.  Moves that have never been put have the map's default
+ *  value.  Intended for search bookkeeping such as history counters.
+ *  @author Peter Lee
+ */
+class MoveIntMap {
+
+    /** A MoveIntMap in which every move initially maps to DEFLT. */
+    MoveIntMap(int deflt) {
+        _default = deflt;
+        _values = new int[Move.INDICES];
+        Arrays.fill(_values, deflt);
+    }
+
+    /** An empty MoveIntMap whose default value is 0. */
+    MoveIntMap() {
+        this(0);
+    }
+
+    /** Return the value for MOVE. */
+    int get(Move move) {
+        return _values[move.index()];
+    }
+
+    /** Return the value for the move with index INDEX. */
+    int getIndex(int index) {
+        return _values[index];
+    }
+
+    /** Set the value for MOVE to VALUE. */
+    void put(Move move, int value) {
+        _values[move.index()] = value;
+    }
+
+    /** Add DELTA to the value for MOVE, returning the new value. */
+    int add(Move move, int delta) {
+        return _values[move.index()] += delta;
+    }
+
+    /** Divide every value by 2**SHIFT (used to age counters). */
+    void age(int shift) {
+        for (int i = 0; i < _values.length; i += 1) {
+            _values[i] >>= shift;
+        }
+    }
+
+    /** Reset every move to the default value. */
+    void clear() {
+        Arrays.fill(_values, _default);
+    }
+
+    /** The value of moves that have not been put. */
+    private final int _default;
+    /** Values, indexed by Move index. */
+    private final int[] _values;
+
+}
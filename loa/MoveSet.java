@@ -0,0 +1,80 @@
+package loa;
+
+import java.util.BitSet;
+
+/** A set of Moves, represented as a bit set over Move indices.  Adding,
+ *  removing, and testing membership neither allocate nor hash, which
+ *  makes MoveSets suitable for bookkeeping inside the search.
+ *  @author Peter Lee
+ */
+class MoveSet {
+
+    /** An empty MoveSet. */
+    MoveSet() {
+        _members = new BitSet(Move.INDICES);
+    }
+
+    /** Add MOVE to me, if not null.  Return true iff MOVE was not
+     *  already present. */
+    boolean add(Move move) {
+        if (move == null || _members.get(move.index())) {
+            return false;
+        }
+        _members.set(move.index());
+        _size += 1;
+        return true;
+    }
+
+    /** Remove MOVE from me, if present.  Return true iff it was. */
+    boolean remove(Move move) {
+        if (move == null || !_members.get(move.index())) {
+            return false;
+        }
+        _members.clear(move.index());
+        _size -= 1;
+        return true;
+    }
+
+    /** Return true iff MOVE is in me. */
+    boolean contains(Move move) {
+        return move != null && _members.get(move.index());
+    }
+
+    /** Return true iff the move with index INDEX is in me. */
+    boolean containsIndex(int index) {
+        return _members.get(index);
+    }
+
+    /** Return the number of moves in me. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff I am empty. */
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /** Remove all moves from me. */
+    void clear() {
+        if (_size > 0) {
+            _members.clear();
+            _size = 0;
+        }
+    }
+
+    /** Return the first move in me whose index is >= FROM, or null if
+     *  none.  Iterate over my members with
+     *      for (Move m = s.next(0); m != null; m = s.next(m.index() + 1))
+     */
+    Move next(int from) {
+        int i = _members.nextSetBit(from);
+        return i < 0 ? null : Move.get(i);
+    }
+
+    /** Bits indicating which move indices are present. */
+    private final BitSet _members;
+    /** Number of moves present. */
+    private int _size;
+
+}
@@ -18,6 +18,13 @@ public abstract class Player {
      *  command stops play. */
     abstract Move makeMove();
 
+    /** Stop thinking about the current move as soon as possible, so that
+     *  makeMove returns the best move found so far.  May be called from
+     *  any thread, before or during makeMove.  Players that do not think
+     *  ignore it. */
+    void stop() {
+    }
+
     /** Return which side I'm playing. */
     Piece side() {
         return _side;
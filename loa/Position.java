@@ -0,0 +1,89 @@
+package loa;
+
+/** An immutable snapshot of the contents of a Board and the side to move,
+ *  without any move history.  A Position occupies a few words, so it is
+ *  cheap to create, store, and restore with Board.copyFrom.
+ *  @author Peter Lee
+ */
+final class Position {
+
+    /** A Position on a board with GEOMETRY, with black pieces on BLACK
+     *  and BLACKHIGH and white pieces on WHITE and WHITEHIGH (as for
+     *  Board.bits and Board.bitsHigh), TURN to move, and hash key KEY. */
+    Position(Geometry geometry, long black, long white, long blackHigh,
+             long whiteHigh, Piece turn, long key) {
+        _geometry = geometry;
+        _black = black;
+        _white = white;
+        _blackHigh = blackHigh;
+        _whiteHigh = whiteHigh;
+        _turn = turn;
+        _key = key;
+    }
+
+    /** Return the shape of the board. */
+    Geometry geometry() {
+        return _geometry;
+    }
+
+    /** Return the squares occupied by black pieces (the low word in the
+     *  wide layout). */
+    long black() {
+        return _black;
+    }
+
+    /** Return the squares occupied by white pieces (the low word in the
+     *  wide layout). */
+    long white() {
+        return _white;
+    }
+
+    /** Return the high word of the squares occupied by black pieces. */
+    long blackHigh() {
+        return _blackHigh;
+    }
+
+    /** Return the high word of the squares occupied by white pieces. */
+    long whiteHigh() {
+        return _whiteHigh;
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return _turn;
+    }
+
+    /** Return the hash key of this position (as for Board.key). */
+    long key() {
+        return _key;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Position)) {
+            return false;
+        }
+        Position other = (Position) obj;
+        return _geometry == other._geometry
+            && _black == other._black && _white == other._white
+            && _blackHigh == other._blackHigh
+            && _whiteHigh == other._whiteHigh && _turn == other._turn;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_key ^ (_key >>> 32));
+    }
+
+    /** Shape of the board. */
+    private final Geometry _geometry;
+    /** Squares occupied by each side. */
+    private final long _black, _white;
+    /** High words of the squares occupied by each side. */
+    private final long _blackHigh, _whiteHigh;
+    /** Side to move. */
+    private final Piece _turn;
+    /** Hash key. */
+    private final long _key;
+
+}
@@ -0,0 +1,326 @@
+package loa;
+
+import java.util.Arrays;
+
+import static loa.Board.*;
+
+/** A depth-first proof-number (df-pn) solver that determines whether the
+ *  side to move in a given position can force a win.
+ *
+ *  Proof and disproof numbers are kept from the point of view of the
+ *  attacker (the side to move at the root): a node's proof number is the
+ *  minimum number of leaves that must be shown to be wins to prove that
+ *  the attacker wins there, and its disproof number the minimum number
+ *  that must be shown not to be wins to disprove it.  Numbers for
+ *  interior nodes live in a fixed-size, two-way set-associative table, so
+ *  memory use is bounded no matter how long the search runs; when two
+ *  positions compete for a slot, the one whose subtree cost less work is
+ *  replaced.
+ *
+ *  A position that repeats one on the current path counts as not a win
+ *  for the attacker.  As a result, proofs are always sound, but a
+ *  disproof may occasionally reflect only that the defender can steer
+ *  toward repetition.  A path that reaches the depth limit proves
+ *  nothing either way; it ends the search as running out of nodes does,
+ *  so that the result is UNKNOWN unless the root was already decided.
+ *  @author Peter Lee
+ */
+class ProofNumberSearch {
+
+    /** Possible outcomes of solve. */
+    enum Result {
+        /** The side to move can force a win. */
+        WIN,
+        /** The side to move cannot force a win. */
+        NO_WIN,
+        /** The search ran out of nodes or time. */
+        UNKNOWN
+    }
+
+    /** A solver whose node table holds at least ENTRIES positions. */
+    ProofNumberSearch(int entries) {
+        this(entries, MAX_PLY);
+    }
+
+    /** A solver whose node table holds at least ENTRIES positions, and
+     *  which searches no more than MAXPLY moves deep. */
+    ProofNumberSearch(int entries, int maxPly) {
+        int size = Integer.highestOneBit(Math.max(2, entries - 1)) << 1;
+        _keys = new long[size];
+        _proof = new int[size];
+        _disproof = new int[size];
+        _work = new int[size];
+        _maxPly = maxPly;
+        _moves = new Move[maxPly][];
+        _childKeys = new long[maxPly][];
+        _childInit = new int[maxPly][];
+        _path = new long[maxPly];
+    }
+
+    /** Determine whether the side to move on BOARD can force a win,
+     *  examining at most MAXNODES nodes and spending at most MAXMILLIS
+     *  milliseconds (where a value <= 0 means no limit).  BOARD is
+     *  restored to its original state on return. */
+    Result solve(Board board, long maxNodes, long maxMillis) {
+        clearTable();
+        _attacker = board.turn();
+        _nodes = 0;
+        _maxNodes = maxNodes <= 0 ? Long.MAX_VALUE : maxNodes;
+        _start = System.currentTimeMillis();
+        _deadline = maxMillis <= 0 ? Long.MAX_VALUE : _start + maxMillis;
+        _aborted = false;
+        _bestMove = null;
+
+        mid(board, 0, INFINITY, INFINITY);
+        _millis = System.currentTimeMillis() - _start;
+
+        int slot = find(board.key());
+        if (slot >= 0 && _proof[slot] == 0) {
+            _bestMove = provingMove(board);
+            return Result.WIN;
+        } else if (slot >= 0 && _disproof[slot] == 0) {
+            return Result.NO_WIN;
+        } else {
+            return Result.UNKNOWN;
+        }
+    }
+
+    /** Return the winning move found by the last call to solve, or null if
+     *  it did not return WIN. */
+    Move bestMove() {
+        return _bestMove;
+    }
+
+    /** Return the number of nodes examined by the last call to solve. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the time in milliseconds taken by the last call to
+     *  solve. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Expand the position on BOARD, which is PLY moves below the root,
+     *  until its proof number reaches THPN, its disproof number reaches
+     *  THDN, or the search is aborted. */
+    private void mid(Board board, int ply, int thpn, int thdn) {
+        _nodes += 1;
+        if (_nodes >= _maxNodes
+            || ((_nodes & CLOCK_MASK) == 0
+                && System.currentTimeMillis() >= _deadline)) {
+            _aborted = true;
+            return;
+        }
+        long key = board.key();
+        Piece winner = board.winner();
+        if (winner != null) {
+            boolean won = winner == _attacker;
+            store(key, won ? 0 : INFINITY, won ? INFINITY : 0, 1);
+            return;
+        }
+        if (ply >= _maxPly - 1) {
+            _aborted = true;
+            return;
+        }
+        if (_moves[ply] == null) {
+            _moves[ply] = new Move[MAX_MOVES];
+            _childKeys[ply] = new long[MAX_MOVES];
+            _childInit[ply] = new int[MAX_MOVES];
+        }
+        Move[] moves = _moves[ply];
+        long[] keys = _childKeys[ply];
+        int[] init = _childInit[ply];
+        int n = board.legalMoves(moves);
+        boolean attacking = board.turn() == _attacker;
+        if (n == 0) {
+            store(key, attacking ? INFINITY : 0, attacking ? 0 : INFINITY, 1);
+            return;
+        }
+        for (int i = 0; i < n; i += 1) {
+            keys[i] = board.keyAfter(moves[i]);
+            init[i] = initialNumbers(board, moves[i]);
+        }
+        _path[ply] = key;
+
+        long work0 = _nodes;
+        int pn, dn;
+        while (true) {
+            int best = -1, bestValue = INFINITY + 1, second = INFINITY,
+                sum = 0, bestOther = 0;
+            for (int i = 0; i < n; i += 1) {
+                int cpn, cdn;
+                int slot = onPath(keys[i], ply) ? -2 : find(keys[i]);
+                if (slot == -2) {
+                    cpn = INFINITY;
+                    cdn = 0;
+                } else if (slot < 0) {
+                    cpn = init[i] == PROVEN ? 0
+                        : init[i] == DISPROVEN ? INFINITY : 1;
+                    cdn = init[i] == DISPROVEN ? 0
+                        : init[i] == PROVEN ? INFINITY : 1;
+                } else {
+                    cpn = _proof[slot];
+                    cdn = _disproof[slot];
+                }
+                int select = attacking ? cpn : cdn,
+                    other = attacking ? cdn : cpn;
+                sum = Math.min(INFINITY, sum + other);
+                if (select < bestValue) {
+                    second = Math.min(second, bestValue);
+                    best = i;
+                    bestValue = select;
+                    bestOther = other;
+                } else if (select < second) {
+                    second = select;
+                }
+            }
+            pn = attacking ? bestValue : sum;
+            dn = attacking ? sum : bestValue;
+            if (pn >= thpn || dn >= thdn || _aborted) {
+                break;
+            }
+            int cthpn, cthdn;
+            if (attacking) {
+                cthpn = Math.min(thpn, second + 1);
+                cthdn = thdn - dn + bestOther;
+            } else {
+                cthpn = thpn - pn + bestOther;
+                cthdn = Math.min(thdn, second + 1);
+            }
+            board.makeMove(moves[best]);
+            mid(board, ply + 1, cthpn, cthdn);
+            board.retract();
+        }
+        store(key, pn, dn, _nodes - work0);
+    }
+
+    /** Return PROVEN, DISPROVEN, or UNKNOWN according as the position
+     *  resulting from MOVE on BOARD is already won for the attacker,
+     *  already lost for the attacker, or neither.  These values stand in
+     *  for a child's numbers until it has a table entry; keeping them
+     *  out of the table keeps the table from filling up with leaves. */
+    private int initialNumbers(Board board, Move move) {
+        board.makeMove(move);
+        Piece winner = board.winner();
+        board.retract();
+        if (winner == null) {
+            return UNKNOWN;
+        } else {
+            return winner == _attacker ? PROVEN : DISPROVEN;
+        }
+    }
+
+    /** Return a move from the position on BOARD, already proven a win,
+     *  that leads to a proven win. */
+    private Move provingMove(Board board) {
+        Move[] moves = new Move[MAX_MOVES];
+        int n = board.legalMoves(moves);
+        for (int i = 0; i < n; i += 1) {
+            int slot = find(board.keyAfter(moves[i]));
+            if (slot >= 0 ? _proof[slot] == 0
+                : initialNumbers(board, moves[i]) == PROVEN) {
+                return moves[i];
+            }
+        }
+        return null;
+    }
+
+    /** Return true iff KEY is the key of one of the first PLY positions on
+     *  the current path. */
+    private boolean onPath(long key, int ply) {
+        for (int i = ply; i >= 0; i -= 1) {
+            if (_path[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the table slot holding KEY, or -1 if none. */
+    private int find(long key) {
+        int slot = (int) key & (_keys.length - 2);
+        if (_keys[slot] == key && _work[slot] != 0) {
+            return slot;
+        } else if (_keys[slot + 1] == key && _work[slot + 1] != 0) {
+            return slot + 1;
+        }
+        return -1;
+    }
+
+    /** Record proof number PN and disproof number DN for KEY, whose
+     *  subtree took WORK more nodes to search.  If KEY is not already
+     *  present, it replaces the entry in its set that took less work. */
+    private void store(long key, int pn, int dn, long work) {
+        int slot = find(key);
+        if (slot >= 0) {
+            work += _work[slot];
+        } else {
+            slot = (int) key & (_keys.length - 2);
+            if (_work[slot] != 0
+                && (_work[slot + 1] == 0 || _work[slot + 1] < _work[slot])) {
+                slot += 1;
+            }
+        }
+        _keys[slot] = key;
+        _proof[slot] = pn;
+        _disproof[slot] = dn;
+        _work[slot] = (int) Math.min(Integer.MAX_VALUE, Math.max(1, work));
+    }
+
+    /** Empty the node table. */
+    private void clearTable() {
+        Arrays.fill(_work, 0);
+    }
+
+    /** Proof or disproof number of a node that is certainly lost or won,
+     *  respectively. */
+    private static final int INFINITY = 1 << 28;
+
+    /** Initial states of a child node. */
+    private static final int UNKNOWN = 0, PROVEN = 1, DISPROVEN = 2;
+
+    /** Default depth limit. */
+    private static final int MAX_PLY = 400;
+
+    /** The clock is checked once every CLOCK_MASK + 1 nodes. */
+    private static final long CLOCK_MASK = 1023;
+
+    /** Keys of table entries. */
+    private final long[] _keys;
+    /** Proof numbers of table entries. */
+    private final int[] _proof;
+    /** Disproof numbers of table entries. */
+    private final int[] _disproof;
+    /** Work spent on table entries (0 for an empty slot). */
+    private final int[] _work;
+
+    /** Deepest ply the solver will search to, plus 1. */
+    private final int _maxPly;
+    /** Buffers for the legal moves at each ply, allocated as needed. */
+    private final Move[][] _moves;
+    /** Keys of the children at each ply, allocated as needed. */
+    private final long[][] _childKeys;
+    /** Initial states of the children at each ply, allocated as
+     *  needed. */
+    private final int[][] _childInit;
+    /** Keys of the positions on the current path. */
+    private final long[] _path;
+
+    /** The side trying to force a win. */
+    private Piece _attacker;
+    /** Nodes examined so far. */
+    private long _nodes;
+    /** Node limit. */
+    private long _maxNodes;
+    /** Start time and time limit, in milliseconds. */
+    private long _start, _deadline;
+    /** Time taken by the last solve. */
+    private long _millis;
+    /** True iff the current search has run out of nodes or time. */
+    private boolean _aborted;
+    /** Winning move found by the last solve. */
+    private Move _bestMove;
+
+}
@@ -0,0 +1,265 @@
+package loa;
+
+import java.util.Arrays;
+import java.util.Formatter;
+
+import static loa.Piece.*;
+
+/** A deliberately simple implementation of the rules of Lines of Action,
+ *  used as an oracle when testing Board.  Like the original Board, it
+ *  keeps the contents in an array of Pieces and computes everything by
+ *  walking the board square by square, so it shares none of Board's
+ *  tables, bit sets, or incrementally maintained state.  Speed is not a
+ *  concern; clarity is.
+ *  @author Peter Lee
+ */
+class ReferenceBoard {
+
+    /** Column and row steps of the eight directions of movement. */
+    private static final int[][] STEPS = {
+        { 0, 1 }, { 1, 1 }, { 1, 0 }, { 1, -1 },
+        { 0, -1 }, { -1, -1 }, { -1, 0 }, { -1, 1 }
+    };
+
+    /** A board with contents copied from CONTENTS (indexed as for
+     *  Board(Piece[][], Piece)) and TURN to move. */
+    ReferenceBoard(Piece[][] contents, Piece turn) {
+        _size = contents.length;
+        _contents = new Piece[_size][];
+        for (int r = 0; r < _size; r += 1) {
+            _contents[r] = contents[r].clone();
+        }
+        _turn = turn;
+    }
+
+    /** A board with the same contents and side to move as BOARD. */
+    ReferenceBoard(Board board) {
+        _size = board.size();
+        _contents = new Piece[_size][_size];
+        for (int r = 1; r <= _size; r += 1) {
+            for (int c = 1; c <= _size; c += 1) {
+                _contents[r - 1][c - 1] = board.get(c, r);
+            }
+        }
+        _turn = board.turn();
+    }
+
+    /** A copy of BOARD. */
+    ReferenceBoard(ReferenceBoard board) {
+        this(board._contents, board._turn);
+    }
+
+    /** Return my size. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return _turn;
+    }
+
+    /** Return the contents of column C, row R, or null if that is not a
+     *  square of this board. */
+    Piece get(int c, int r) {
+        if (c < 1 || c > _size || r < 1 || r > _size) {
+            return null;
+        }
+        return _contents[r - 1][c - 1];
+    }
+
+    /** Set column C, row R to V. */
+    void set(int c, int r, Piece v) {
+        _contents[r - 1][c - 1] = v;
+    }
+
+    /** Return a copy of my contents, indexed as for
+     *  Board(Piece[][], Piece). */
+    Piece[][] contents() {
+        return new ReferenceBoard(this)._contents;
+    }
+
+    /** Return true iff moving the piece at column C0, row R0 to column
+     *  C1, row R1 is legal for the side to move. */
+    boolean isLegal(int c0, int r0, int c1, int r1) {
+        if (get(c0, r0) != _turn || get(c1, r1) == null
+            || get(c1, r1) == _turn) {
+            return false;
+        }
+        int dc = Integer.signum(c1 - c0), dr = Integer.signum(r1 - r0);
+        int dist = Math.max(Math.abs(c1 - c0), Math.abs(r1 - r0));
+        if (dist == 0 || (dc != 0 && dr != 0
+                          && Math.abs(c1 - c0) != Math.abs(r1 - r0))) {
+            return false;
+        }
+        if (dist != piecesOnLine(c0, r0, dc, dr)) {
+            return false;
+        }
+        for (int k = 1; k < dist; k += 1) {
+            if (get(c0 + k * dc, r0 + k * dr) == _turn.opposite()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the codes (see code) of all legal moves for the side to
+     *  move. */
+    int[] legalMoves() {
+        int[] moves = new int[8 * _size * _size];
+        int n = 0;
+        for (int r = 1; r <= _size; r += 1) {
+            for (int c = 1; c <= _size; c += 1) {
+                if (get(c, r) != _turn) {
+                    continue;
+                }
+                for (int[] step : STEPS) {
+                    int k = piecesOnLine(c, r, step[0], step[1]);
+                    int c1 = c + k * step[0], r1 = r + k * step[1];
+                    if (isLegal(c, r, c1, r1)) {
+                        moves[n] = code(c, r, c1, r1);
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(moves, n);
+    }
+
+    /** Move the piece at column C0, row R0 to column C1, row R1 and give
+     *  the move to the other side.  Assumes the move is legal. */
+    void makeMove(int c0, int r0, int c1, int r1) {
+        set(c1, r1, get(c0, r0));
+        set(c0, r0, EMP);
+        _turn = _turn.opposite();
+    }
+
+    /** Undo makeMove(C0, R0, C1, R1), which replaced REPLACED. */
+    void retract(int c0, int r0, int c1, int r1, Piece replaced) {
+        _turn = _turn.opposite();
+        set(c0, r0, _turn);
+        set(c1, r1, replaced);
+    }
+
+    /** Return the number of 8-connected groups of SIDE's pieces. */
+    int components(Piece side) {
+        boolean[] seen = new boolean[_size * _size];
+        int[] stack = new int[_size * _size];
+        int count = 0;
+        for (int start = 0; start < seen.length; start += 1) {
+            if (seen[start] || pieceAt(start) != side) {
+                continue;
+            }
+            count += 1;
+            seen[start] = true;
+            int top = 0;
+            stack[top++] = start;
+            while (top > 0) {
+                int sq = stack[--top];
+                int c = sq % _size + 1, r = sq / _size + 1;
+                for (int[] step : STEPS) {
+                    int c1 = c + step[0], r1 = r + step[1];
+                    int sq1 = (r1 - 1) * _size + c1 - 1;
+                    if (get(c1, r1) == side && !seen[sq1]) {
+                        seen[sq1] = true;
+                        stack[top++] = sq1;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Return the contents of the square numbered SQ, counting by rows
+     *  from 0 at a1. */
+    private Piece pieceAt(int sq) {
+        return _contents[sq / _size][sq % _size];
+    }
+
+    /** Return true iff either side's pieces are contiguous. */
+    boolean gameOver() {
+        return components(BP) == 1 || components(WP) == 1;
+    }
+
+    /** Return the winner, as for Board.winner. */
+    Piece winner() {
+        Piece mover = _turn.opposite();
+        if (components(mover) == 1) {
+            return mover;
+        } else if (components(_turn) == 1) {
+            return _turn;
+        } else {
+            return null;
+        }
+    }
+
+    /** Return a code identifying the move from column C0, row R0 to
+     *  column C1, row R1: the four coordinates packed in four bits
+     *  each. */
+    static int code(int c0, int r0, int c1, int r1) {
+        return c0 | (r0 << 4) | (c1 << 8) | (r1 << 12);
+    }
+
+    /** Return the code of MOVE. */
+    static int code(Move move) {
+        return code(move.getCol0(), move.getRow0(), move.getCol1(),
+                    move.getRow1());
+    }
+
+    /** Return the column or row (selected by K = 0 .. 3, in the order of
+     *  the arguments of code(int, int, int, int)) of the move with code
+     *  CODE. */
+    static int coordinate(int code, int k) {
+        return (code >>> (4 * k)) & 0xF;
+    }
+
+    /** Return the name of the move with code CODE, as for
+     *  Move.toString. */
+    static String name(int code) {
+        return String.format("%c%d-%c%d",
+                             (char) (coordinate(code, 0) - 1 + 'a'),
+                             coordinate(code, 1),
+                             (char) (coordinate(code, 2) - 1 + 'a'),
+                             coordinate(code, 3));
+    }
+
+    @Override
+    public String toString() {
+        Formatter out = new Formatter();
+        out.format("===%n");
+        for (int r = _size; r >= 1; r -= 1) {
+            out.format("    ");
+            for (int c = 1; c <= _size; c += 1) {
+                out.format("%s ", get(c, r).abbrev());
+            }
+            out.format("%n");
+        }
+        out.format("Next move: %s%n===", _turn.fullName());
+        return out.toString();
+    }
+
+    /** Return the number of pieces on the line through column C, row R
+     *  in direction (DC, DR), counting both ways. */
+    private int piecesOnLine(int c, int r, int dc, int dr) {
+        int n = get(c, r) == EMP ? 0 : 1;
+        for (int dir = -1; dir <= 1; dir += 2) {
+            for (int k = 1; ; k += 1) {
+                Piece p = get(c + k * dir * dc, r + k * dir * dr);
+                if (p == null) {
+                    break;
+                } else if (p != EMP) {
+                    n += 1;
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Board size. */
+    private final int _size;
+    /** Contents, indexed by row - 1 and column - 1. */
+    private final Piece[][] _contents;
+    /** Side to move. */
+    private Piece _turn;
+
+}
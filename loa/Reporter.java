@@ -1,7 +1,17 @@
 package loa;
 
 /** Utility for reporting informational or debugging messages conditionally,
- *  based on an adjustable parameter.
+ *  based on an adjustable parameter.  Messages are printed on the
+ *  standard error, either at once by the reporting thread or, once
+ *  setAsynchronous(true) is called, by a background thread that drains a
+ *  fixed ring of pending messages, so that the reporting thread neither
+ *  formats nor writes.  (Arguments other than strings, numbers, and the
+ *  like are still converted to strings when reported, since they may
+ *  change before they are printed.  If the ring is full, messages are
+ *  dropped and their number reported with the next one printed.)  The
+ *  fixed-arity forms of debug allocate nothing unless the level is
+ *  enabled; the varargs form always allocates its argument array, so
+ *  frequent call sites should use the others or test enabled first.
  *  @author Peter Lee
  */
 public class Reporter {
@@ -18,17 +28,229 @@ public class Reporter {
         return _messageLevel;
     }
 
+    /** Return true iff messages at LEVEL are printed. */
+    public static boolean enabled(int level) {
+        return level > 0 && level <= _messageLevel;
+    }
+
+    /** Print messages from a background thread iff ON.  Turning this off
+     *  first prints any pending messages. */
+    public static void setAsynchronous(boolean on) {
+        if (!on) {
+            flush();
+        }
+        synchronized (LOCK) {
+            if (on && _drainer == null) {
+                _drainer = new Thread(Reporter::drain, "loa-reporter");
+                _drainer.setDaemon(true);
+                _drainer.start();
+                Runtime.getRuntime().addShutdownHook(
+                    new Thread(Reporter::flush));
+            }
+            _asynchronous = on;
+        }
+    }
+
+    /** Wait until all pending messages are printed. */
+    public static void flush() {
+        synchronized (LOCK) {
+            while (_head != _tail || _printing) {
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
     /** Print a message on the standard error if LEVEL is positive and <= the
      *  current message level. FORMAT and ARGS are as for the .printf
      *  methods. */
     public static void debug(int level, String format, Object... args) {
-        if (level > 0 && level <= _messageLevel) {
-            System.err.printf(format, args);
-            System.err.println();
+        if (enabled(level)) {
+            if (args.length > MAX_ARGS) {
+                debug(level, "%s", String.format(format, args));
+                return;
+            }
+            Slot slot = stage(format, args.length, 0);
+            for (int i = 0; i < args.length; i += 1) {
+                slot.objects[i] = snapshot(args[i]);
+            }
+            commit(slot);
+        }
+    }
+
+    /** As for debug(LEVEL, FORMAT, ARG). */
+    public static void debug(int level, String format, Object arg) {
+        if (enabled(level)) {
+            Slot slot = stage(format, 1, 0);
+            slot.objects[0] = snapshot(arg);
+            commit(slot);
+        }
+    }
+
+    /** As for debug(LEVEL, FORMAT, ARG0, ARG1). */
+    public static void debug(int level, String format, Object arg0,
+                             Object arg1) {
+        if (enabled(level)) {
+            Slot slot = stage(format, 2, 0);
+            slot.objects[0] = snapshot(arg0);
+            slot.objects[1] = snapshot(arg1);
+            commit(slot);
         }
     }
 
+    /** As for debug(LEVEL, FORMAT, ARG0, ARG1, ARG2, ARG3), without
+     *  boxing the arguments until the message is printed. */
+    public static void debug(int level, String format, long arg0,
+                             long arg1, long arg2, long arg3) {
+        if (enabled(level)) {
+            Slot slot = stage(format, MAX_ARGS, LONGS);
+            slot.longs[0] = arg0;
+            slot.longs[1] = arg1;
+            slot.longs[2] = arg2;
+            slot.longs[3] = arg3;
+            commit(slot);
+        }
+    }
+
+    /** Return this thread's staging slot, set up for a message with
+     *  format FORMAT and ARITY arguments, of which those indicated by
+     *  LONGMASK are integers. */
+    private static Slot stage(String format, int arity, int longMask) {
+        Slot slot = STAGED.get();
+        slot.format = format;
+        slot.arity = arity;
+        slot.longMask = longMask;
+        return slot;
+    }
+
+    /** Print the message in SLOT, or queue a copy of it if printing
+     *  asynchronously. */
+    private static void commit(Slot slot) {
+        if (!_asynchronous) {
+            print(slot);
+            return;
+        }
+        synchronized (LOCK) {
+            if (_tail - _head == RING_SIZE) {
+                _dropped += 1;
+                return;
+            }
+            RING[(int) (_tail & (RING_SIZE - 1))].copy(slot);
+            _tail += 1;
+            LOCK.notifyAll();
+        }
+    }
+
+    /** Print queued messages, forever. */
+    private static void drain() {
+        Slot slot = new Slot();
+        while (true) {
+            long dropped;
+            synchronized (LOCK) {
+                _printing = false;
+                LOCK.notifyAll();
+                while (_head == _tail) {
+                    try {
+                        LOCK.wait();
+                    } catch (InterruptedException excp) {
+                        return;
+                    }
+                }
+                slot.copy(RING[(int) (_head & (RING_SIZE - 1))]);
+                _head += 1;
+                dropped = _dropped;
+                _dropped = 0;
+                _printing = true;
+            }
+            if (dropped > 0) {
+                System.err.printf("(%d messages dropped)%n", dropped);
+            }
+            print(slot);
+        }
+    }
+
+    /** Print the message in SLOT. */
+    private static void print(Slot slot) {
+        Object[] args = new Object[slot.arity];
+        for (int i = 0; i < slot.arity; i += 1) {
+            args[i] = (slot.longMask & (1 << i)) != 0 ? (Object) slot.longs[i]
+                : slot.objects[i];
+        }
+        System.err.printf(slot.format, args);
+        System.err.println();
+    }
+
+    /** Return OBJ, or its printed form if it might change before it is
+     *  printed. */
+    private static Object snapshot(Object obj) {
+        if (obj == null || obj instanceof String || obj instanceof Number
+            || obj instanceof Boolean || obj instanceof Character) {
+            return obj;
+        }
+        return obj.toString();
+    }
+
+    /** A pending message. */
+    private static final class Slot {
+        /** Its format. */
+        private String format;
+        /** Its number of arguments. */
+        private int arity;
+        /** Bit K is set iff argument K is in longs rather than objects. */
+        private int longMask;
+        /** Its object arguments. */
+        private final Object[] objects = new Object[MAX_ARGS];
+        /** Its integer arguments. */
+        private final long[] longs = new long[MAX_ARGS];
+
+        /** Make me a copy of OTHER. */
+        void copy(Slot other) {
+            format = other.format;
+            arity = other.arity;
+            longMask = other.longMask;
+            System.arraycopy(other.objects, 0, objects, 0, MAX_ARGS);
+            System.arraycopy(other.longs, 0, longs, 0, MAX_ARGS);
+        }
+    }
+
+    /** Most arguments held in a Slot by the fixed-arity forms. */
+    private static final int MAX_ARGS = 4;
+    /** A longMask for MAX_ARGS integer arguments. */
+    private static final int LONGS = (1 << MAX_ARGS) - 1;
+    /** Number of messages that may be pending. */
+    private static final int RING_SIZE = 1024;
+
     /** The current package-wide message level. */
     private static int _messageLevel = 0;
 
+    /** Guards the ring and the fields describing it. */
+    private static final Object LOCK = new Object();
+    /** Pending messages, at positions _head to _tail - 1 (modulo
+     *  RING_SIZE). */
+    private static final Slot[] RING = new Slot[RING_SIZE];
+    /** Each thread's message under construction. */
+    private static final ThreadLocal<Slot> STAGED =
+        ThreadLocal.withInitial(Slot::new);
+
+    static {
+        for (int i = 0; i < RING_SIZE; i += 1) {
+            RING[i] = new Slot();
+        }
+    }
+
+    /** Number of messages taken from and put in the ring. */
+    private static long _head, _tail;
+    /** Number of messages dropped since the last one printed. */
+    private static long _dropped;
+    /** True while the background thread prints a message. */
+    private static boolean _printing;
+    /** True iff messages are queued for the background thread. */
+    private static volatile boolean _asynchronous;
+    /** The background thread, once started. */
+    private static Thread _drainer;
+
 }
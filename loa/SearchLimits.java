@@ -0,0 +1,41 @@
+package loa;
+
+/** Limits on a single search by a MachinePlayer, as given by a "go"
+ *  command, and the number of lines it is to find.  Each limit is 0 if
+ *  not given.
+ *  @author Peter Lee
+ */
+class SearchLimits {
+
+    /** Return true iff some limit is given, or the search is to be
+     *  infinite. */
+    boolean limited() {
+        return infinite || depth > 0 || nodes > 0 || moveMillis > 0
+            || remaining > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d nodes %d movetime %d remaining %d"
+                             + " increment %d%s lines %d", depth, nodes,
+                             moveMillis, remaining, increment,
+                             infinite ? " infinite" : "", lines);
+    }
+
+    /** Greatest depth to search. */
+    int depth;
+    /** Approximate number of nodes to search. */
+    long nodes;
+    /** Time to spend, in milliseconds. */
+    long moveMillis;
+    /** Time left on the clock of the side to move, in milliseconds. */
+    long remaining;
+    /** Time added to that clock after each move, in milliseconds. */
+    long increment;
+    /** True iff the search continues until stopped. */
+    boolean infinite;
+    /** Number of best moves to find, each with its principal variation
+     *  (1 if 0). */
+    int lines;
+
+}
@@ -0,0 +1,20 @@
+package loa;
+
+import java.util.List;
+
+/** Receives reports of the progress of a MachinePlayer's search.  Reports
+ *  come from the searching thread, so implementations must be prepared to
+ *  be called on a thread other than the one that started the search.
+ *  @author Peter Lee
+ */
+interface SearchListener {
+
+    /** Note that an iteration of the search has finished at depth DEPTH
+     *  after searching NODES nodes in MILLIS milliseconds, and that its
+     *  LINEth best move (counting from 1) has value SCORE for the side to
+     *  move, with principal variation PV, starting with that move.  An
+     *  iteration that finds several lines reports each in turn. */
+    void iteration(int line, int depth, int score, long nodes, long millis,
+                   List<Move> pv);
+
+}
@@ -0,0 +1,82 @@
+package loa;
+
+/** Counters describing one search by a MachinePlayer, for tuning and
+ *  debugging output.
+ *  @author Peter Lee
+ */
+class SearchStats {
+
+    /** Zero all counters. */
+    void reset() {
+        nodes = evals = cutoffs = 0;
+        failLows = failHighs = pvsResearches = 0;
+        nullMoves = nullMoveCutoffs = nullMoveRefutations = 0;
+        reductions = reductionResearches = 0;
+        tableHits = evalHits = tablebaseHits = 0;
+        depth = 0;
+        score = 0;
+        millis = 0;
+    }
+
+    /** Return the total number of re-searches of any kind. */
+    long researches() {
+        return failLows + failHighs + pvsResearches + reductionResearches;
+    }
+
+    /** Return the percentage of evaluations found in the cache. */
+    long evalHitRate() {
+        return evals == 0 ? 0 : evalHits * 100 / evals;
+    }
+
+    /** Return the number of nodes searched per second. */
+    long nodesPerSecond() {
+        return nodes * 1000 / Math.max(1, millis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d score %d nodes %d evals %d (%d%% cached)"
+                             + " cutoffs %d"
+                             + " aspiration %d/%d pvs %d null %d/%d/%d"
+                             + " lmr %d/%d tt %d tb %d time %d ms (%d nps)",
+                             depth, score, nodes, evals, evalHitRate(),
+                             cutoffs, failLows,
+                             failHighs, pvsResearches, nullMoves,
+                             nullMoveCutoffs, nullMoveRefutations,
+                             reductions, reductionResearches, tableHits,
+                             tablebaseHits,
+                             millis,
+                             nodesPerSecond());
+    }
+
+    /** Interior and leaf nodes visited. */
+    long nodes;
+    /** Static evaluations performed. */
+    long evals;
+    /** Beta cutoffs. */
+    long cutoffs;
+    /** Aspiration searches that failed low, and that failed high, each
+     *  requiring a re-search with a wider window. */
+    long failLows, failHighs;
+    /** Null-window searches that had to be repeated with a full window. */
+    long pvsResearches;
+    /** Null-move searches tried, those that produced a cutoff, and those
+     *  whose cutoff the verification search overturned. */
+    long nullMoves, nullMoveCutoffs, nullMoveRefutations;
+    /** Moves searched at reduced depth, and those that then had to be
+     *  searched again at full depth. */
+    long reductions, reductionResearches;
+    /** Evaluations found in the evaluation cache. */
+    long evalHits;
+    /** Transposition table probes that found an entry. */
+    long tableHits;
+    /** Positions whose values were found in the endgame tablebase. */
+    long tablebaseHits;
+    /** Deepest iteration completed. */
+    int depth;
+    /** Value of the deepest completed iteration. */
+    int score;
+    /** Elapsed time in milliseconds. */
+    long millis;
+
+}
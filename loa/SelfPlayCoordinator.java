@@ -0,0 +1,275 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ucb.util.CommandArgs;
+
+/** The coordinator of a distributed self-play run.  It listens on a TCP
+ *  port for SelfPlayWorkers (on this or other hosts), hands each one job
+ *  at a time (see SelfPlayJob), and collects the records of the games
+ *  they play.  Workers may join at any time; a job whose worker
+ *  disconnects before answering is handed to another.  Since a worker
+ *  only ever waits for its next job, throughput grows with the number of
+ *  workers until the coordinator's one line per game becomes the
+ *  bottleneck, which is far beyond any useful number.
+ *  @author Peter Lee
+ */
+class SelfPlayCoordinator {
+
+    /** A coordinator for JOBS, numbered consecutively from 0, listening on
+     *  PORT (0 for any free port). */
+    SelfPlayCoordinator(List<SelfPlayJob> jobs, int port) throws IOException {
+        _jobs.addAll(jobs);
+        _total = jobs.size();
+        _server = new ServerSocket(port);
+    }
+
+    /** Return the port I am listening on. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Serve jobs to workers until every job has been answered, and
+     *  return the answers (see SelfPlayWorker), in order of job
+     *  number. */
+    List<String> run() throws InterruptedException {
+        Thread acceptor = new Thread(this::accept);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        synchronized (this) {
+            while (_results.size() < _total) {
+                wait();
+            }
+        }
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            /* Ignore: we are done with it. */
+        }
+        synchronized (this) {
+            return new ArrayList<>(_results.values());
+        }
+    }
+
+    /** Start NUMBER worker processes on this host, running the same Java
+     *  and class path as this one, returning them. */
+    List<Process> spawn(int number) throws IOException {
+        List<Process> workers = new ArrayList<>();
+        String java = Paths.get(System.getProperty("java.home"), "bin",
+                                "java").toString();
+        for (int k = 0; k < number; k += 1) {
+            workers.add(new ProcessBuilder(java, "-cp",
+                                           System.getProperty(
+                                               "java.class.path"),
+                                           "loa.Main",
+                                           "--worker=localhost:" + port())
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start());
+        }
+        return workers;
+    }
+
+    /** Accept workers, serving each on its own thread, until the server
+     *  socket is closed. */
+    private void accept() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = _server.accept();
+            } catch (IOException excp) {
+                return;
+            }
+            Thread server = new Thread(() -> serve(socket));
+            server.setDaemon(true);
+            server.start();
+        }
+    }
+
+    /** Hand jobs to the worker connected to SOCKET until all are
+     *  answered.  If it disconnects while playing a job, return that job
+     *  to the queue. */
+    private void serve(Socket socket) {
+        SelfPlayJob job = null;
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                 socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            while (!finished()) {
+                job = _jobs.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (job == null) {
+                    continue;
+                }
+                out.println(job);
+                String answer = in.readLine();
+                if (answer == null) {
+                    break;
+                }
+                record(job, answer);
+                job = null;
+            }
+            out.println("done");
+        } catch (IOException | InterruptedException excp) {
+            /* Treated as a disconnection. */
+        }
+        if (job != null) {
+            _jobs.add(job);
+        }
+    }
+
+    /** Return true iff every job has been answered. */
+    private synchronized boolean finished() {
+        return _results.size() == _total;
+    }
+
+    /** Record ANSWER as the answer to JOB. */
+    private synchronized void record(SelfPlayJob job, String answer) {
+        _results.put(job.id(), answer);
+        notifyAll();
+    }
+
+    /** Run a self-play match, as described by ARGS:
+     *      --games=N       Number of games (default 100).
+     *      --black=SPEC    Engine playing black (see SelfPlayJob;
+     *                      default "ab").
+     *      --white=SPEC    Engine playing white (default "ab").
+     *      --size=N        Board size (default 8).
+     *      --opening=N     Random opening moves (default 4).
+     *      --max-plies=N   Moves after which a game is abandoned (default
+     *                      300).
+     *      --seed=N        Seed of the first game; game K uses N + K
+     *                      (default: the time).
+     *      --port=N        Port to listen on (default: any free port,
+     *                      which is printed).
+     *      --spawn=N       Start N workers on this host (default 0: wait
+     *                      for workers started elsewhere).
+     *      FILE            Where to write the game records (default: the
+     *                      standard output).
+     *  A summary of the results follows the records. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --black=(\\S+){0,1}"
+                            + " --white=(\\S+){0,1} --size=(\\d+){0,1}"
+                            + " --opening=(\\d+){0,1}"
+                            + " --max-plies=(\\d+){0,1} --seed=(\\d+){0,1}"
+                            + " --port=(\\d+){0,1} --spawn=(\\d+){0,1}"
+                            + " --={0,1}", args);
+        if (!options.ok()) {
+            Main.error(1, "usage: java loa.SelfPlayCoordinator [--games=N]"
+                       + " [--black=SPEC] [--white=SPEC] [--size=N]"
+                       + " [--opening=N] [--max-plies=N] [--seed=N]"
+                       + " [--port=N] [--spawn=N] [FILE]%n");
+        }
+        int games = intOption(options, "--games", DEFAULT_GAMES);
+        long seed = options.contains("--seed") ? options.getLong("--seed")
+            : System.currentTimeMillis();
+        List<SelfPlayJob> jobs = new ArrayList<>();
+        SelfPlayCoordinator coordinator;
+        try {
+            for (int k = 0; k < games; k += 1) {
+                jobs.add(new SelfPlayJob(
+                    k, seed + k,
+                    intOption(options, "--size", Board.M),
+                    intOption(options, "--opening", DEFAULT_OPENING),
+                    intOption(options, "--max-plies", DEFAULT_MAX_PLIES),
+                    stringOption(options, "--black", "ab"),
+                    stringOption(options, "--white", "ab")));
+            }
+            coordinator = new SelfPlayCoordinator(
+                jobs, intOption(options, "--port", 0));
+        } catch (IllegalArgumentException | IOException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+            return;
+        }
+        System.err.printf("Listening on port %d.%n", coordinator.port());
+        long start = System.currentTimeMillis();
+        List<String> results;
+        List<Process> workers = new ArrayList<>();
+        try {
+            workers = coordinator.spawn(intOption(options, "--spawn", 0));
+            results = coordinator.run();
+            for (Process worker : workers) {
+                worker.waitFor();
+            }
+        } catch (IOException | InterruptedException excp) {
+            for (Process worker : workers) {
+                worker.destroy();
+            }
+            Main.error(1, "%s%n", excp.getMessage());
+            return;
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        PrintStream out = System.out;
+        if (options.contains("--")) {
+            File file = new File(options.getFirst("--"));
+            try {
+                out = new PrintStream(file, StandardCharsets.UTF_8);
+            } catch (IOException excp) {
+                Main.error(1, "%s: %s%n", file, excp.getMessage());
+            }
+        }
+        int[] wins = new int[3];
+        for (String result : results) {
+            out.println(result);
+            String[] words = result.split(" ");
+            wins[words[0].equals("result") && !words[2].equals("none")
+                 ? Piece.playerValueOf(words[2]).ordinal() : 2] += 1;
+        }
+        out.flush();
+        System.out.printf("%d games in %d ms (%.2f/s): black %d, white %d,"
+                          + " other %d%n", results.size(), millis,
+                          results.size() * 1000.0 / millis, wins[0],
+                          wins[1], wins[2]);
+    }
+
+    /** Return the value of integer option NAME in OPTIONS, or DEFLT if it
+     *  is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int deflt) {
+        return options.contains(name) ? options.getInt(name) : deflt;
+    }
+
+    /** Return the value of option NAME in OPTIONS, or DEFLT if it is
+     *  absent. */
+    private static String stringOption(CommandArgs options, String name,
+                                       String deflt) {
+        return options.contains(name) ? options.getFirst(name) : deflt;
+    }
+
+    /** Default number of games. */
+    private static final int DEFAULT_GAMES = 100;
+    /** Default number of random opening moves. */
+    private static final int DEFAULT_OPENING = 4;
+    /** Default number of moves after which a game is abandoned. */
+    private static final int DEFAULT_MAX_PLIES = 300;
+    /** Time between checks for completion by an idle server thread, in
+     *  milliseconds. */
+    private static final long POLL_MILLIS = 100;
+
+    /** Jobs not yet handed out (or handed back). */
+    private final LinkedBlockingQueue<SelfPlayJob> _jobs =
+        new LinkedBlockingQueue<>();
+    /** Number of jobs. */
+    private final int _total;
+    /** Answers received, by job number. */
+    private final TreeMap<Integer, String> _results = new TreeMap<>();
+    /** Socket on which workers connect. */
+    private final ServerSocket _server;
+
+}
@@ -0,0 +1,138 @@
+package loa;
+
+/** One game of self-play, as handed out by a SelfPlayCoordinator to a
+ *  worker: which engines play each side and with what options, from
+ *  what opening, and the seed that makes it reproducible.  A job is sent
+ *  as a single line
+ *      job ID SEED SIZE OPENING MAXPLIES BLACK WHITE
+ *  where OPENING is the number of random moves (chosen with SEED) that
+ *  start the game, MAXPLIES is the number of moves after which the game
+ *  is abandoned as a draw, and BLACK and WHITE are engine
+ *  specifications: "ab" (the alpha-beta engine) or "mcts" (Monte-Carlo
+ *  tree search), optionally followed by a colon and a comma-separated
+ *  list of engine options NAME=VALUE, as in "ab:depth=3,null=off".
+ *  @author Peter Lee
+ */
+final class SelfPlayJob {
+
+    /** A job numbered ID, played with seed SEED on a SIZE x SIZE board,
+     *  starting with OPENING random moves, abandoned after MAXPLIES moves,
+     *  between engines specified by BLACK and WHITE.  Throws
+     *  IllegalArgumentException if any of these is invalid. */
+    SelfPlayJob(int id, long seed, int size, int opening, int maxPlies,
+                String black, String white) {
+        if (size < Geometry.MIN_SIZE || size > Geometry.MAX_SIZE) {
+            throw new IllegalArgumentException("unsupported board size: "
+                                               + size);
+        }
+        if (id < 0 || opening < 0 || maxPlies <= 0) {
+            throw new IllegalArgumentException("bad job parameters");
+        }
+        options(black);
+        options(white);
+        _id = id;
+        _seed = seed;
+        _size = size;
+        _opening = opening;
+        _maxPlies = maxPlies;
+        _black = black;
+        _white = white;
+    }
+
+    /** Return the job described by LINE, as produced by toString.  Throws
+     *  IllegalArgumentException if LINE is not a valid job. */
+    static SelfPlayJob parse(String line) {
+        String[] words = line.trim().split("\\s+");
+        if (words.length != 8 || !words[0].equals("job")) {
+            throw new IllegalArgumentException("bad job: " + line);
+        }
+        try {
+            return new SelfPlayJob(Integer.parseInt(words[1]),
+                                   Long.parseLong(words[2]),
+                                   Integer.parseInt(words[3]),
+                                   Integer.parseInt(words[4]),
+                                   Integer.parseInt(words[5]),
+                                   words[6], words[7]);
+        } catch (NumberFormatException excp) {
+            throw new IllegalArgumentException("bad job: " + line);
+        }
+    }
+
+    /** Return my number. */
+    int id() {
+        return _id;
+    }
+
+    /** Return my random seed. */
+    long seed() {
+        return _seed;
+    }
+
+    /** Return the board size. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of random opening moves. */
+    int opening() {
+        return _opening;
+    }
+
+    /** Return the number of moves after which the game is abandoned. */
+    int maxPlies() {
+        return _maxPlies;
+    }
+
+    /** Return a new player for SIDE in GAME, as specified for that
+     *  side. */
+    Player player(Piece side, Game game) {
+        String spec = side == Piece.BP ? _black : _white;
+        EngineOptions options = options(spec);
+        if (spec.startsWith("mcts")) {
+            return new MonteCarloPlayer(side, game, options);
+        }
+        return new MachinePlayer(side, game, options);
+    }
+
+    /** Return the engine options given by engine specification SPEC.
+     *  Throws IllegalArgumentException if SPEC is invalid. */
+    static EngineOptions options(String spec) {
+        String[] parts = spec.split(":", 2);
+        if (!parts[0].equals("ab") && !parts[0].equals("mcts")) {
+            throw new IllegalArgumentException("unknown engine: "
+                                               + parts[0]);
+        }
+        EngineOptions options = new EngineOptions();
+        if (parts.length > 1) {
+            for (String setting : parts[1].split(",")) {
+                String[] nameValue = setting.split("=", 2);
+                if (nameValue.length != 2) {
+                    throw new IllegalArgumentException("bad engine option: "
+                                                       + setting);
+                }
+                options.set(nameValue[0], nameValue[1]);
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("job %d %d %d %d %d %s %s", _id, _seed, _size,
+                             _opening, _maxPlies, _black, _white);
+    }
+
+    /** Job number. */
+    private final int _id;
+    /** Random seed. */
+    private final long _seed;
+    /** Board size. */
+    private final int _size;
+    /** Number of random opening moves. */
+    private final int _opening;
+    /** Moves after which the game is abandoned. */
+    private final int _maxPlies;
+    /** Engine specifications for black and white. */
+    private final String _black, _white;
+
+}
@@ -0,0 +1,91 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static loa.Piece.*;
+
+/** A headless player of self-play games for a SelfPlayCoordinator (run as
+ *  "java loa.Main --worker=HOST:PORT").  It connects to the coordinator,
+ *  and then, until told "done", reads a job (see SelfPlayJob), plays it,
+ *  and answers with its record, one line of the form
+ *      result ID WINNER PLIES MOVE ...
+ *  where WINNER is black, white, or none (if the game was abandoned), and
+ *  the moves are all those of the game, including the opening.  A job
+ *  that cannot be played is answered with "error ID MESSAGE".
+ *  @author Peter Lee
+ */
+final class SelfPlayWorker {
+
+    /** Not instantiable. */
+    private SelfPlayWorker() {
+    }
+
+    /** Play jobs from the coordinator listening on PORT at HOST until it
+     *  has no more, returning the number of games played. */
+    static int run(String host, int port) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                 socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            int games = 0;
+            for (String line = in.readLine();
+                 line != null && !line.equals("done");
+                 line = in.readLine()) {
+                try {
+                    out.println(play(SelfPlayJob.parse(line)));
+                    games += 1;
+                } catch (IllegalArgumentException excp) {
+                    String[] words = line.trim().split("\\s+");
+                    out.printf("error %s %s%n",
+                               words.length > 1 ? words[1] : "-",
+                               excp.getMessage());
+                }
+            }
+            return games;
+        }
+    }
+
+    /** Play JOB, returning its record. */
+    static String play(SelfPlayJob job) {
+        Game game = new Game();
+        game.setSeed(job.seed());
+        Board board = new Board(job.size());
+        game.setBoard(board);
+        StringBuilder moves = new StringBuilder();
+        Random random = new Random(job.seed());
+        Move[] legal = new Move[Board.MAX_MOVES];
+        for (int k = 0; k < job.opening() && !board.gameOver(); k += 1) {
+            int n = board.legalMoves(legal);
+            if (n == 0) {
+                break;
+            }
+            Move move = legal[random.nextInt(n)];
+            board.makeMove(move);
+            moves.append(' ').append(move);
+        }
+        Player[] players = { job.player(BP, game), job.player(WP, game) };
+        Piece winner = board.winner();
+        while (winner == null && board.movesMade() < job.maxPlies()) {
+            Move move = players[board.turn().ordinal()].makeMove();
+            if (move == null || !board.isLegal(move)) {
+                winner = board.turn().opposite();
+                break;
+            }
+            board.makeMove(move);
+            moves.append(' ').append(move);
+            winner = board.winner();
+        }
+        return String.format("result %d %s %d%s", job.id(),
+                             winner == null ? "none" : winner.fullName(),
+                             board.movesMade(), moves);
+    }
+
+}
@@ -0,0 +1,278 @@
+package loa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static loa.Piece.*;
+
+/** An endgame tablebase: for every position on a board of one size in
+ *  which each side has from 2 to maxPieces() pieces, whether the side to
+ *  move can force a win, will lose against best play, or neither, and
+ *  in how many moves.  (A side with one piece is connected, so positions
+ *  with fewer pieces are decided already.)  Tablebases are made by
+ *  TablebaseGenerator.
+ *
+ *  A tablebase file is a 16-byte header (MAGIC, board size, maximum
+ *  pieces per side, and a reserved word, as big-endian ints) followed by
+ *  one table for each combination of numbers of black and white pieces,
+ *  in order of number of black pieces and then of white pieces.  Each
+ *  table has one byte for each position, at the position's index (see
+ *  index).  An entry is 0 for a position that neither side can force
+ *  a win from, D + 1 for one the side to move wins D moves (plies) later,
+ *  and -(D + 1) for one it loses D moves later.  Files are mapped into
+ *  memory rather than read, so that only the parts used are loaded, and
+ *  several processes share one copy.
+ *
+ *  Positions are indexed perfectly: the index is a number less than the
+ *  number of positions in the table, different for every position.  It
+ *  is computed from the ranks of the sets of black and white squares
+ *  among all sets of the same size, where the squares are numbered from
+ *  0 by rows without gaps, and the white squares are renumbered to
+ *  leave out those occupied by black.
+ *  @author Peter Lee
+ */
+final class Tablebase {
+
+    /** Entry meaning "not in this tablebase". */
+    static final int MISSING = Integer.MIN_VALUE;
+
+    /** Longest distance that can be recorded. */
+    static final int MAX_DISTANCE = Byte.MAX_VALUE - 1;
+
+    /** Largest supported number of pieces per side. */
+    static final int MAX_PIECES = 6;
+
+    /** Identifies tablebase files, and their format. */
+    static final int MAGIC = 0x4c4f4101;
+
+    /** Bytes before the first table. */
+    static final int HEADER_BYTES = 16;
+
+    /** Return the tablebase in FILE, mapped into memory. */
+    static Tablebase open(File file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("tablebase file too large: " + file);
+            }
+            return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY,
+                                             0, channel.size()));
+        } catch (IllegalArgumentException excp) {
+            throw new IOException(file + ": " + excp.getMessage());
+        }
+    }
+
+    /** A tablebase whose contents, in the format of a tablebase file, are
+     *  DATA.  Throws IllegalArgumentException if DATA is not in that
+     *  format. */
+    Tablebase(ByteBuffer data) {
+        if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a tablebase");
+        }
+        _data = data;
+        _size = data.getInt(4);
+        _maxPieces = data.getInt(8);
+        if (_size < Geometry.MIN_SIZE || _size > Geometry.NARROW_STRIDE
+            || _maxPieces < 2 || _maxPieces > MAX_PIECES) {
+            throw new IllegalArgumentException("bad tablebase header");
+        }
+        _geometry = Geometry.of(_size);
+        _offsets = offsets(_size, _maxPieces);
+        if (_offsets[_maxPieces + 1][0] != data.capacity()) {
+            throw new IllegalArgumentException("wrong tablebase length");
+        }
+    }
+
+    /** Return the size of the boards I cover. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the largest number of pieces per side I cover. */
+    int maxPieces() {
+        return _maxPieces;
+    }
+
+    /** Return my entry for the position on BOARD, or MISSING if it is not
+     *  covered. */
+    int probe(Board board) {
+        long black = board.bits(BP), white = board.bits(WP);
+        int nb = Long.bitCount(black), nw = Long.bitCount(white);
+        if (nb < 2 || nb > _maxPieces || nw < 2 || nw > _maxPieces
+            || board.size() != _size) {
+            return MISSING;
+        }
+        long index = index(_size, dense(_geometry, black),
+                           dense(_geometry, white), board.turn());
+        return _data.get((int) (_offsets[nb][nw] + index));
+    }
+
+    /** Return true iff ENTRY is that of a position the side to move
+     *  wins. */
+    static boolean wins(int entry) {
+        return entry > 0 && entry != MISSING;
+    }
+
+    /** Return true iff ENTRY is that of a position the side to move
+     *  loses. */
+    static boolean loses(int entry) {
+        return entry < 0 && entry != MISSING;
+    }
+
+    /** Return the number of moves until the end of the game recorded in
+     *  ENTRY, which is that of a won or lost position. */
+    static int distance(int entry) {
+        return Math.abs(entry) - 1;
+    }
+
+    /** Return the entry for a position won (if WON) or lost in DISTANCE
+     *  moves. */
+    static byte entry(boolean won, int distance) {
+        if (distance > MAX_DISTANCE) {
+            throw new IllegalStateException("distance too large to record");
+        }
+        return (byte) (won ? distance + 1 : -distance - 1);
+    }
+
+    /** Return the offsets in a file for SIZE x SIZE boards and MAXPIECES
+     *  pieces per side of the tables for each number of black and white
+     *  pieces: result[B][W] is the offset of the table for B black and W
+     *  white pieces, and result[MAXPIECES + 1][0] is the length of the
+     *  file.  Throws IllegalArgumentException if the file would be too
+     *  large to map. */
+    static long[][] offsets(int size, int maxPieces) {
+        long[][] offsets = new long[maxPieces + 2][maxPieces + 1];
+        long offset = HEADER_BYTES;
+        for (int nb = 2; nb <= maxPieces; nb += 1) {
+            for (int nw = 2; nw <= maxPieces; nw += 1) {
+                offsets[nb][nw] = offset;
+                offset += positions(size, nb, nw);
+            }
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("tablebase too large");
+        }
+        offsets[maxPieces + 1][0] = offset;
+        return offsets;
+    }
+
+    /** Return the number of positions on a SIZE x SIZE board with NB
+     *  black and NW white pieces. */
+    static long positions(int size, int nb, int nw) {
+        int squares = size * size;
+        return 2 * binomial(squares, nb) * binomial(squares - nb, nw);
+    }
+
+    /** Return the index, in its table, of the position on a SIZE x SIZE
+     *  board with black pieces on the squares in BLACK and white pieces on
+     *  those in WHITE, and TURN to move.  Squares are numbered by rows
+     *  without gaps (see dense). */
+    static long index(int size, long black, long white, Piece turn) {
+        int squares = size * size;
+        int nb = Long.bitCount(black), nw = Long.bitCount(white);
+        long rank = rank(black) * binomial(squares - nb, nw)
+            + rank(compress(white, black));
+        return 2 * rank + turn.ordinal();
+    }
+
+    /** Return the rank of SET among the sets of the same size, ordered by
+     *  their values as numbers. */
+    static long rank(long set) {
+        long rank = 0;
+        int k = 1;
+        for (long b = set; b != 0; b &= b - 1, k += 1) {
+            rank += binomial(Long.numberOfTrailingZeros(b), k);
+        }
+        return rank;
+    }
+
+    /** Return SET with the squares in OMIT removed from the numbering: each
+     *  square is renumbered by subtracting the number of squares in OMIT
+     *  below it.  SET and OMIT are disjoint. */
+    static long compress(long set, long omit) {
+        long result = 0;
+        for (long b = set; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            result |= 1L << (sq - Long.bitCount(omit & ((1L << sq) - 1)));
+        }
+        return result;
+    }
+
+    /** Return the set of squares that compresses to SET when the squares
+     *  in OMIT are removed from the numbering.  The inverse of
+     *  compress. */
+    static long expand(long set, long omit) {
+        long result = 0;
+        long free = ~omit;
+        for (; set != 0; free &= free - 1) {
+            if ((set & 1) != 0) {
+                result |= Long.lowestOneBit(free);
+            }
+            set >>>= 1;
+        }
+        return result;
+    }
+
+    /** Return the squares in BITS, a set of squares in the layout of
+     *  GEOMETRY, numbered from 0 by rows without gaps. */
+    static long dense(Geometry geometry, long bits) {
+        if (geometry.size() == Geometry.NARROW_STRIDE) {
+            return bits;
+        }
+        long result = 0;
+        for (long b = bits; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            result |= 1L << ((geometry.row(sq) - 1) * geometry.size()
+                             + geometry.col(sq) - 1);
+        }
+        return result;
+    }
+
+    /** Return the set of squares in the layout of GEOMETRY that are
+     *  numbered DENSE by rows without gaps.  The inverse of dense. */
+    static long bits(Geometry geometry, long dense) {
+        if (geometry.size() == Geometry.NARROW_STRIDE) {
+            return dense;
+        }
+        long result = 0;
+        for (long b = dense; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            result |= 1L << geometry.sq(sq % geometry.size() + 1,
+                                        sq / geometry.size() + 1);
+        }
+        return result;
+    }
+
+    /** Return N choose K (0 if K > N). */
+    static long binomial(int n, int k) {
+        return BINOMIAL[n][k];
+    }
+
+    /** Binomial coefficients, indexed by N and K. */
+    private static final long[][] BINOMIAL =
+        new long[Long.SIZE + 1][MAX_PIECES + 2];
+
+    static {
+        for (int n = 0; n <= Long.SIZE; n += 1) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= MAX_PIECES + 1 && n > 0; k += 1) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    /** The tables, with the header. */
+    private final ByteBuffer _data;
+    /** Board size. */
+    private final int _size;
+    /** Largest number of pieces per side. */
+    private final int _maxPieces;
+    /** Shape of the board. */
+    private final Geometry _geometry;
+    /** Offsets of the tables (see offsets). */
+    private final long[][] _offsets;
+
+}
@@ -0,0 +1,560 @@
+package loa;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import ucb.util.CommandArgs;
+
+import static loa.Piece.*;
+
+/** A generator of endgame tablebases (see Tablebase) by retrograde
+ *  analysis.
+ *
+ *  Tables are generated in order of the total number of pieces, so that
+ *  every position reached by a capture is either decided or in a table
+ *  already generated.  Each table is made in two phases.  The first
+ *  examines every position with Board's own move generator: it decides
+ *  the positions in which the game is over, and for the others counts the
+ *  moves that are not captures (which stay in the table) and looks up
+ *  the values of the positions reached by captures.  That phase is
+ *  divided among threads by ranges of positions.  The second works back
+ *  from the decided positions in order of distance, as in a breadth-first
+ *  search, generating the moves that lead to each one by unmaking
+ *  non-capturing moves.  A predecessor of a position lost in D moves is
+ *  won in D + 1.  A predecessor of a position won in D has one move fewer
+ *  whose outcome is unknown; when none is left, and no capture saves it,
+ *  it is lost in one more than its longest resistance.  Positions never
+ *  decided are draws: neither side can force a win.
+ *
+ *  Only boards of up to 8 x 8 are supported, so that a set of squares
+ *  fits in one long.
+ *  @author Peter Lee
+ */
+class TablebaseGenerator {
+
+    /** A generator of the tablebase for SIZE x SIZE boards with up to
+     *  MAXPIECES pieces per side, using THREADS threads.  Throws
+     *  IllegalArgumentException if the size or number of pieces is not
+     *  supported, or the tablebase would be too large. */
+    TablebaseGenerator(int size, int maxPieces, int threads) {
+        if (size < Geometry.MIN_SIZE || size > Geometry.NARROW_STRIDE) {
+            throw new IllegalArgumentException("tablebases need a board size"
+                                               + " from " + Geometry.MIN_SIZE
+                                               + " to "
+                                               + Geometry.NARROW_STRIDE);
+        }
+        if (maxPieces < 2 || maxPieces > Tablebase.MAX_PIECES) {
+            throw new IllegalArgumentException("pieces per side must be"
+                                               + " from 2 to "
+                                               + Tablebase.MAX_PIECES);
+        }
+        _length = Tablebase.offsets(size, maxPieces)[maxPieces + 1][0];
+        _size = size;
+        _squares = size * size;
+        _maxPieces = maxPieces;
+        _threads = Math.max(1, threads);
+        _geometry = Geometry.of(size);
+        _tables = new byte[maxPieces + 1][maxPieces + 1][];
+        _lines = new long[STEPS.length / 2][_squares];
+        for (int sq = 0; sq < _squares; sq += 1) {
+            for (int k = 0; k < STEPS.length / 2; k += 1) {
+                for (int dir = -1; dir <= 1; dir += 2) {
+                    for (int d = 0; ; d += 1) {
+                        int to = step(sq, dir * STEPS[2 * k],
+                                      dir * STEPS[2 * k + 1], d);
+                        if (to < 0) {
+                            break;
+                        }
+                        _lines[k][sq] |= 1L << to;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Generate all tables, in order of total number of pieces. */
+    void generate() {
+        for (int total = 4; total <= 2 * _maxPieces; total += 1) {
+            for (int nb = Math.max(2, total - _maxPieces);
+                 nb <= Math.min(_maxPieces, total - 2); nb += 1) {
+                generate(nb, total - nb);
+            }
+        }
+    }
+
+    /** Return the generated tablebase, held in memory. */
+    Tablebase tablebase() {
+        ByteBuffer data = ByteBuffer.allocate((int) _length);
+        data.put(header());
+        for (int nb = 2; nb <= _maxPieces; nb += 1) {
+            for (int nw = 2; nw <= _maxPieces; nw += 1) {
+                data.put(_tables[nb][nw]);
+            }
+        }
+        return new Tablebase(data);
+    }
+
+    /** Write the generated tablebase to FILE. */
+    void write(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(header());
+            for (int nb = 2; nb <= _maxPieces; nb += 1) {
+                for (int nw = 2; nw <= _maxPieces; nw += 1) {
+                    out.write(_tables[nb][nw]);
+                }
+            }
+        }
+    }
+
+    /** Return the number of positions, of each kind, in the tables
+     *  generated so far: won, lost, and drawn by the side to move. */
+    long[] counts() {
+        long[] counts = new long[3];
+        for (byte[][] row : _tables) {
+            for (byte[] table : row) {
+                for (int k = 0; table != null && k < table.length; k += 1) {
+                    counts[Tablebase.wins(table[k]) ? 0
+                           : Tablebase.loses(table[k]) ? 1 : 2] += 1;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /** Return the header of a tablebase file. */
+    private byte[] header() {
+        return ByteBuffer.allocate(Tablebase.HEADER_BYTES)
+            .putInt(Tablebase.MAGIC).putInt(_size).putInt(_maxPieces)
+            .putInt(0).array();
+    }
+
+    /** Generate the table for NB black and NW white pieces.  The tables
+     *  reached by captures must have been generated. */
+    private void generate(int nb, int nw) {
+        int positions = (int) Tablebase.positions(_size, nb, nw);
+        byte[] values = new byte[positions];
+        byte[] unknown = new byte[positions];
+        byte[] longest = new byte[positions];
+        Frontier frontier = new Frontier();
+        long blackSets = Tablebase.binomial(_squares, nb);
+        Thread[] workers = new Thread[_threads];
+        Frontier[] found = new Frontier[_threads];
+        for (int k = 0; k < _threads; k += 1) {
+            long first = blackSets * k / _threads,
+                last = blackSets * (k + 1) / _threads;
+            Frontier part = found[k] = new Frontier();
+            workers[k] = new Thread(() -> examine(nb, nw, first, last, values,
+                                                  unknown, longest, part));
+            workers[k].start();
+        }
+        for (int k = 0; k < _threads; k += 1) {
+            try {
+                workers[k].join();
+            } catch (InterruptedException excp) {
+                throw new IllegalStateException("generation interrupted");
+            }
+            frontier.addAll(found[k]);
+        }
+        retrograde(nb, nw, values, unknown, longest, frontier);
+        _tables[nb][nw] = values;
+    }
+
+    /** Examine the positions in the table for NB black and NW white pieces
+     *  whose sets of black squares have ranks from FIRST to LAST - 1.
+     *  Record those in which the game is over in VALUES, and in
+     *  FRONTIER.  For the others, record in UNKNOWN the number of
+     *  non-capturing moves, and in LONGEST the longest distance to a loss
+     *  by capturing; add those that a capture wins to FRONTIER, and mark
+     *  those that a capture wins or draws by adding 1 to UNKNOWN, so that
+     *  they are never found lost. */
+    private void examine(int nb, int nw, long first, long last,
+                         byte[] values, byte[] unknown, byte[] longest,
+                         Frontier frontier) {
+        if (first == last) {
+            return;
+        }
+        Board board = new Board(_size);
+        Move[] moves = new Move[Board.MAX_MOVES];
+        long whiteSets = Tablebase.binomial(_squares - nb, nw);
+        long black = unrank(first, nb);
+        for (long rb = first; rb < last; rb += 1) {
+            long white = (1L << nw) - 1;
+            for (long rw = 0; rw < whiteSets; rw += 1) {
+                long whiteSquares = Tablebase.expand(white, black);
+                for (Piece turn : SIDES) {
+                    int p = (int) (2 * (rb * whiteSets + rw)
+                                   + turn.ordinal());
+                    board.copyFrom(new Position(_geometry,
+                        Tablebase.bits(_geometry, black),
+                        Tablebase.bits(_geometry, whiteSquares),
+                        0, 0, turn, 0));
+                    Piece winner = board.winner();
+                    if (winner != null) {
+                        values[p] = Tablebase.entry(winner == turn, 0);
+                        frontier.add(values[p], p);
+                        continue;
+                    }
+                    int n = board.legalMoves(moves);
+                    int quiet = 0, win = -1, resist = -1;
+                    boolean draw = false;
+                    for (int k = 0; k < n; k += 1) {
+                        if (moves[k].replacedPiece() == EMP) {
+                            quiet += 1;
+                            continue;
+                        }
+                        board.makeMove(moves[k]);
+                        int entry = value(board);
+                        board.retract();
+                        if (Tablebase.loses(entry)) {
+                            int d = Tablebase.distance(entry) + 1;
+                            win = win < 0 ? d : Math.min(win, d);
+                        } else if (Tablebase.wins(entry)) {
+                            resist = Math.max(resist,
+                                              Tablebase.distance(entry));
+                        } else {
+                            draw = true;
+                        }
+                    }
+                    if (win >= 0) {
+                        frontier.seed(win, p);
+                    }
+                    if (quiet == 0 && win < 0 && !draw) {
+                        values[p] = Tablebase.entry(false, resist + 1);
+                        frontier.add(values[p], p);
+                    }
+                    unknown[p] = (byte) (quiet + (win >= 0 || draw ? 1 : 0));
+                    longest[p] = (byte) resist;
+                }
+                if (rw + 1 < whiteSets) {
+                    white = nextSubset(white);
+                }
+            }
+            if (rb + 1 < last) {
+                black = nextSubset(black);
+            }
+        }
+    }
+
+    /** Return the entry for the position on BOARD, whose table must have
+     *  been generated, or which must be decided. */
+    private int value(Board board) {
+        Piece winner = board.winner();
+        if (winner != null) {
+            return Tablebase.entry(winner == board.turn(), 0);
+        }
+        long black = Tablebase.dense(_geometry, board.bits(BP)),
+            white = Tablebase.dense(_geometry, board.bits(WP));
+        byte[] table = _tables[Long.bitCount(black)][Long.bitCount(white)];
+        return table[(int) Tablebase.index(_size, black, white,
+                                           board.turn())];
+    }
+
+    /** Complete the table for NB black and NW white pieces, whose
+     *  positions have been examined, by working back from the positions
+     *  in FRONTIER in order of distance.  VALUES, UNKNOWN, and LONGEST
+     *  are as left by examine. */
+    private void retrograde(int nb, int nw, byte[] values, byte[] unknown,
+                            byte[] longest, Frontier frontier) {
+        long whiteSets = Tablebase.binomial(_squares - nb, nw);
+        for (int d = 0; d <= Tablebase.MAX_DISTANCE; d += 1) {
+            IntList seeds = frontier.seeds(d);
+            for (int k = 0; k < seeds.size(); k += 1) {
+                int p = seeds.get(k);
+                if (values[p] == 0) {
+                    values[p] = Tablebase.entry(true, d);
+                    frontier.add(values[p], p);
+                }
+            }
+            for (boolean won : new boolean[] { false, true }) {
+                IntList level = frontier.level(won, d);
+                for (int k = 0; k < level.size(); k += 1) {
+                    int p = level.get(k);
+                    long rank = p >>> 1;
+                    long black = unrank(rank / whiteSets, nb);
+                    long white = Tablebase.expand(unrank(rank % whiteSets,
+                                                         nw), black);
+                    Piece turn = SIDES[p & 1];
+                    if (turn == BP) {
+                        unmoves(white, black, WP, won, d, values, unknown,
+                                longest, frontier);
+                    } else {
+                        unmoves(black, white, BP, won, d, values, unknown,
+                                longest, frontier);
+                    }
+                }
+            }
+        }
+        if (frontier.pending()) {
+            throw new IllegalStateException("distance too large to record");
+        }
+    }
+
+    /** Update the predecessors of a position decided at distance D, in
+     *  which MOVER, with pieces on the squares in OWN, has just moved, and
+     *  the side to move, with pieces on OTHER, has won (if WON) or lost.
+     *  The predecessors are the positions from which MOVER reaches it by
+     *  a non-capturing move.  VALUES, UNKNOWN, LONGEST, and FRONTIER are
+     *  as for retrograde. */
+    private void unmoves(long own, long other, Piece mover, boolean won,
+                         int d, byte[] values, byte[] unknown,
+                         byte[] longest, Frontier frontier) {
+        long occupied = own | other;
+        for (long b = own; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            for (int k = 0; k < STEPS.length; k += 1) {
+                int line = k % (STEPS.length / 2);
+                int dist = Long.bitCount(occupied & _lines[line][to]);
+                int dc = -STEPS[2 * (k % 4)], dr = -STEPS[2 * (k % 4) + 1];
+                if (k >= STEPS.length / 2) {
+                    dc = -dc;
+                    dr = -dr;
+                }
+                int from = step(to, dc, dr, dist);
+                if (from < 0 || (occupied & (1L << from)) != 0
+                    || (other & between(to, dc, dr, dist)) != 0) {
+                    continue;
+                }
+                long before = own ^ (1L << to) ^ (1L << from);
+                int p = (int) (mover == BP
+                               ? Tablebase.index(_size, before, other, BP)
+                               : Tablebase.index(_size, other, before, WP));
+                if (values[p] != 0) {
+                    continue;
+                }
+                if (!won) {
+                    values[p] = Tablebase.entry(true, d + 1);
+                    frontier.add(values[p], p);
+                } else {
+                    longest[p] = (byte) Math.max(longest[p], d);
+                    unknown[p] -= 1;
+                    if (unknown[p] == 0) {
+                        values[p] = Tablebase.entry(false, longest[p] + 1);
+                        frontier.add(values[p], p);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the squares strictly between square SQ and the square DIST
+     *  steps of (DC, DR) from it. */
+    private long between(int sq, int dc, int dr, int dist) {
+        long result = 0;
+        for (int d = 1; d < dist; d += 1) {
+            result |= 1L << step(sq, dc, dr, d);
+        }
+        return result;
+    }
+
+    /** Return the square D steps of (DC, DR) from square SQ, with squares
+     *  numbered by rows without gaps, or -1 if that is off the board. */
+    private int step(int sq, int dc, int dr, int d) {
+        int c = sq % _size + d * dc, r = sq / _size + d * dr;
+        if (c < 0 || c >= _size || r < 0 || r >= _size) {
+            return -1;
+        }
+        return r * _size + c;
+    }
+
+    /** Return the set of K squares with rank RANK (see Tablebase.rank). */
+    static long unrank(long rank, int k) {
+        long set = 0;
+        int c = Long.SIZE;
+        for (int i = k; i >= 1; i -= 1) {
+            do {
+                c -= 1;
+            } while (Tablebase.binomial(c, i) > rank);
+            set |= 1L << c;
+            rank -= Tablebase.binomial(c, i);
+        }
+        return set;
+    }
+
+    /** Return the set with the same number of squares as SET and the next
+     *  higher rank. */
+    static long nextSubset(long set) {
+        long low = set & -set;
+        long ripple = set + low;
+        return ripple
+            | Long.divideUnsigned((set ^ ripple) >>> 2, low);
+    }
+
+    /** Positions to work back from, by distance. */
+    private static class Frontier {
+
+        /** Record position P, decided with entry VALUE. */
+        void add(byte value, int p) {
+            level(Tablebase.wins(value), Tablebase.distance(value)).add(p);
+        }
+
+        /** Record that position P wins in D moves by a capture unless a
+         *  faster win is found first. */
+        void seed(int d, int p) {
+            seeds(d).add(p);
+        }
+
+        /** Return the positions decided as won (if WON) or lost at
+         *  distance D. */
+        IntList level(boolean won, int d) {
+            return list(won ? _wins : _losses, d);
+        }
+
+        /** Return the positions that win by capture in D moves. */
+        IntList seeds(int d) {
+            return list(_seeds, d);
+        }
+
+        /** Add all positions in OTHER to mine. */
+        void addAll(Frontier other) {
+            addAll(_wins, other._wins);
+            addAll(_losses, other._losses);
+            addAll(_seeds, other._seeds);
+        }
+
+        /** Return true iff any position lies beyond the longest distance
+         *  that can be recorded. */
+        boolean pending() {
+            return _wins[Tablebase.MAX_DISTANCE + 1] != null
+                || _losses[Tablebase.MAX_DISTANCE + 1] != null
+                || _seeds[Tablebase.MAX_DISTANCE + 1] != null;
+        }
+
+        /** Return LISTS[D], creating it if needed. */
+        private static IntList list(IntList[] lists, int d) {
+            if (lists[d] == null) {
+                lists[d] = new IntList();
+            }
+            return lists[d];
+        }
+
+        /** Add the lists in FROM to those in TO. */
+        private static void addAll(IntList[] to, IntList[] from) {
+            for (int d = 0; d < from.length; d += 1) {
+                if (from[d] != null) {
+                    list(to, d).addAll(from[d]);
+                }
+            }
+        }
+
+        /** Positions won, lost, and won by capture, by distance. */
+        private final IntList[] _wins = new IntList[LEVELS],
+            _losses = new IntList[LEVELS],
+            _seeds = new IntList[LEVELS];
+
+        /** Number of distances, including one too many to record. */
+        private static final int LEVELS = Tablebase.MAX_DISTANCE + 2;
+
+    }
+
+    /** A growable list of ints. */
+    private static class IntList {
+
+        /** Return the number of items. */
+        int size() {
+            return _size;
+        }
+
+        /** Return item K. */
+        int get(int k) {
+            return _items[k];
+        }
+
+        /** Append X. */
+        void add(int x) {
+            if (_size == _items.length) {
+                _items = Arrays.copyOf(_items, 2 * _size);
+            }
+            _items[_size] = x;
+            _size += 1;
+        }
+
+        /** Append the items of OTHER. */
+        void addAll(IntList other) {
+            for (int k = 0; k < other._size; k += 1) {
+                add(other._items[k]);
+            }
+        }
+
+        /** The items, followed by unused space. */
+        private int[] _items = new int[16];
+        /** Number of items. */
+        private int _size;
+
+    }
+
+    /** Generate a tablebase, as described by ARGS:
+     *      --size=N      Board size (default 8).
+     *      --pieces=N    Maximum pieces per side (default 2).
+     *      --threads=N   Worker threads (default: the number of
+     *                    processors).
+     *      FILE          Where to write it. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--size=(\\d+){0,1} --pieces=(\\d+){0,1}"
+                            + " --threads=(\\d+){0,1} --={1}", args);
+        if (!options.ok() || !options.contains("--")) {
+            Main.error(1, "usage: java loa.TablebaseGenerator [--size=N]"
+                       + " [--pieces=N] [--threads=N] FILE%n");
+        }
+        int size = options.contains("--size") ? options.getInt("--size")
+            : Geometry.NARROW_STRIDE;
+        int pieces = options.contains("--pieces")
+            ? options.getInt("--pieces") : 2;
+        int threads = options.contains("--threads")
+            ? options.getInt("--threads")
+            : Runtime.getRuntime().availableProcessors();
+        TablebaseGenerator generator;
+        try {
+            generator = new TablebaseGenerator(size, pieces, threads);
+        } catch (IllegalArgumentException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+            return;
+        }
+        long start = System.currentTimeMillis();
+        generator.generate();
+        long[] counts = generator.counts();
+        System.out.printf("%d won, %d lost, %d drawn in %d ms%n", counts[0],
+                          counts[1], counts[2],
+                          System.currentTimeMillis() - start);
+        File file = new File(options.getFirst("--"));
+        try {
+            generator.write(file);
+        } catch (IOException excp) {
+            Main.error(1, "%s: %s%n", file, excp.getMessage());
+        }
+    }
+
+    /** Column and row steps of one direction along each of the four lines
+     *  of movement (the other directions are their opposites), in the
+     *  order of _lines. */
+    private static final int[] STEPS = {
+        1, 0, 0, 1, 1, 1, 1, -1
+    };
+
+    /** The sides, indexed by ordinal. */
+    private static final Piece[] SIDES = { BP, WP };
+
+    /** Board size. */
+    private final int _size;
+    /** Number of squares. */
+    private final int _squares;
+    /** Largest number of pieces per side. */
+    private final int _maxPieces;
+    /** Number of worker threads. */
+    private final int _threads;
+    /** Shape of the board. */
+    private final Geometry _geometry;
+    /** Length of the tablebase file. */
+    private final long _length;
+    /** The tables generated, indexed by numbers of black and white
+     *  pieces. */
+    private final byte[][][] _tables;
+    /** _lines[K][SQ] is the set of squares on the line through square SQ
+     *  in direction K (of the first four STEPS), including SQ. */
+    private final long[][] _lines;
+
+}
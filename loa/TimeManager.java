@@ -0,0 +1,156 @@
+package loa;
+
+/** Decides how long a MachinePlayer may think about each move.
+ *
+ *  For each move there is a soft limit, the time the search ought to take,
+ *  and a hard limit, after which it is stopped in mid-iteration.  Under a
+ *  game clock, the soft limit is an equal share of the remaining time
+ *  over the moves likely to remain, plus most of the increment; the hard
+ *  limit is a multiple of that, never more than a fraction of what is
+ *  left.  A new iteration is started only if it can reasonably be
+ *  expected to finish within the soft limit, which is stretched while
+ *  the best move keeps changing between iterations and shrunk while it
+ *  stays the same.  Moves that take longer than their hard limit are
+ *  counted as overruns, and each one increases the time held in reserve
+ *  for the overhead of communicating a move.
+ *  @author Peter Lee
+ */
+class TimeManager {
+
+    /** Prepare for a move to be made within MILLIS milliseconds, or with
+     *  no limit if MILLIS is 0. */
+    void startMove(long millis) {
+        _start = System.currentTimeMillis();
+        _soft = _hard = millis > 0 ? millis : UNLIMITED;
+        _scale = 1.0;
+        _stable = 0;
+    }
+
+    /** Prepare for a move to be made with REMAINING milliseconds left on
+     *  the clock, INCREMENT milliseconds added after each move, and
+     *  MOVENUMBER moves already made by the player.  If MAXMILLIS is
+     *  positive, take no more than that. */
+    void startMove(long remaining, long increment, int moveNumber,
+                   long maxMillis) {
+        startMove(maxMillis);
+        long available = Math.max(0, remaining - _overhead);
+        int movesToGo = Math.max(MIN_MOVES_TO_GO, EXPECTED_MOVES - moveNumber);
+        long soft = available / movesToGo + increment * 3 / 4;
+        long hard = Math.min(soft * MAX_STRETCH, available / 2);
+        hard = Math.max(MIN_MILLIS, Math.min(hard, _hard));
+        _hard = hard;
+        _soft = Math.max(MIN_MILLIS, Math.min(soft, hard));
+    }
+
+    /** Note that an iteration of the search has finished and that the
+     *  best move CHANGED (or not) during it.  Return true iff another
+     *  iteration should be started. */
+    boolean nextIteration(boolean changed) {
+        if (changed) {
+            _stable = 0;
+            _scale = Math.min(MAX_SCALE, _scale * UNSTABLE_FACTOR);
+        } else {
+            _stable += 1;
+            if (_stable >= STABLE_ITERATIONS) {
+                _scale = Math.max(MIN_SCALE, _scale * STABLE_FACTOR);
+            }
+        }
+        if (_soft == UNLIMITED) {
+            return true;
+        }
+        return elapsed() < _soft * _scale * NEXT_ITERATION_FRACTION;
+    }
+
+    /** Return the time at which the search must stop, or Long.MAX_VALUE if
+     *  there is no limit. */
+    long deadline() {
+        return _hard == UNLIMITED ? Long.MAX_VALUE : _start + _hard;
+    }
+
+    /** Note that the current move is finished, recording an overrun if it
+     *  took longer than its hard limit. */
+    void endMove() {
+        long late = elapsed() - _hard;
+        if (_hard != UNLIMITED && late > 0) {
+            _overruns += 1;
+            _worstOverrun = Math.max(_worstOverrun, late);
+            _overhead = Math.min(MAX_OVERHEAD, _overhead + late);
+        }
+    }
+
+    /** Return the number of milliseconds since startMove. */
+    long elapsed() {
+        return System.currentTimeMillis() - _start;
+    }
+
+    /** Return the current soft limit, in milliseconds. */
+    long softLimit() {
+        return _soft;
+    }
+
+    /** Return the current hard limit, in milliseconds. */
+    long hardLimit() {
+        return _hard;
+    }
+
+    /** Return the number of moves that took longer than their hard
+     *  limits. */
+    int overruns() {
+        return _overruns;
+    }
+
+    @Override
+    public String toString() {
+        if (_hard == UNLIMITED) {
+            return String.format("time %d ms (no limit)", elapsed());
+        }
+        return String.format("time %d ms (soft %d, hard %d, scale %.2f,"
+                             + " overruns %d, worst %d ms)", elapsed(),
+                             _soft, _hard, _scale, _overruns,
+                             _worstOverrun);
+    }
+
+    /** Limit value meaning "no limit". */
+    private static final long UNLIMITED = Long.MAX_VALUE / 4;
+    /** Number of moves each player is assumed to make in a game. */
+    private static final int EXPECTED_MOVES = 40;
+    /** Fewest moves assumed to remain. */
+    private static final int MIN_MOVES_TO_GO = 10;
+    /** Largest ratio of hard to soft limit. */
+    private static final long MAX_STRETCH = 4;
+    /** Shortest limit, in milliseconds. */
+    private static final long MIN_MILLIS = 10;
+    /** Initial and largest time reserved for overhead, in
+     *  milliseconds. */
+    private static final long INITIAL_OVERHEAD = 50, MAX_OVERHEAD = 1000;
+    /** An iteration is started only if less than this fraction of the
+     *  (scaled) soft limit is gone, since each iteration takes longer
+     *  than all the previous ones together. */
+    private static final double NEXT_ITERATION_FRACTION = 0.5;
+    /** Factor by which the soft limit grows when the best move changes,
+     *  and the largest resulting scale. */
+    private static final double UNSTABLE_FACTOR = 1.5, MAX_SCALE = 2.5;
+    /** Factor by which the soft limit shrinks for each iteration after
+     *  STABLE_ITERATIONS that does not change the best move, and the
+     *  smallest resulting scale. */
+    private static final double STABLE_FACTOR = 0.8, MIN_SCALE = 0.4;
+    /** Iterations without a change of best move before the soft limit
+     *  starts to shrink. */
+    private static final int STABLE_ITERATIONS = 3;
+
+    /** Time at which the current move was started. */
+    private long _start;
+    /** Soft and hard limits for the current move, in milliseconds. */
+    private long _soft, _hard;
+    /** Current factor applied to the soft limit. */
+    private double _scale;
+    /** Consecutive iterations that have not changed the best move. */
+    private int _stable;
+    /** Time reserved for overhead, in milliseconds. */
+    private long _overhead = INITIAL_OVERHEAD;
+    /** Number of moves that overran their hard limits. */
+    private int _overruns;
+    /** Longest overrun, in milliseconds. */
+    private long _worstOverrun;
+
+}
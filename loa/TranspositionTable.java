@@ -0,0 +1,334 @@
+package loa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/** A fixed-size table of search results keyed by Board.key(), shared by
+ *  all the threads searching for one player.
+ *
+ *  Each entry is two longs: the data, packed as described below, and the
+ *  key XORed with the data.  A reader accepts an entry only if the two
+ *  words XOR back to the key it is looking for, so an entry torn by two
+ *  threads writing at once is simply ignored; no locking is needed.
+ *  Entries come in sets of two.  A new result replaces the entry in its
+ *  set that was stored by an earlier search or, failing that, the one
+ *  searched to lesser depth.
+ *
+ *  The entries are kept off the Java heap, so that a table of many
+ *  gigabytes costs the garbage collector nothing.  A table may also be
+ *  a file mapped into memory (see open), which keeps its contents
+ *  between runs and is shared by all the processes on one host that map
+ *  it: since entries check themselves, processes may store into it at
+ *  once just as threads do.
+ *  @author Peter Lee
+ */
+class TranspositionTable {
+
+    /** Kinds of bound on a stored value: the exact value, a lower bound
+     *  (the search failed high), or an upper bound (it failed low).  All
+     *  are nonzero, so no stored entry is 0. */
+    static final int EXACT = 3, LOWER = 1, UPPER = 2;
+
+    /** A table occupying about MEGABYTES megabytes. */
+    TranspositionTable(int megabytes) {
+        FlightEvents.Table event = new FlightEvents.Table();
+        event.begin();
+        int size = size(megabytes);
+        _chunks = new LongBuffer[chunks(size)];
+        for (int k = 0; k < _chunks.length; k += 1) {
+            _chunks[k] = ByteBuffer.allocateDirect(chunkBytes(size, k))
+                .order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        _mask = 2 * size - 4;
+        _header = null;
+        _readOnly = false;
+        _megabytes = megabytes;
+        record(event, "allocate");
+    }
+
+    /** A table whose header and entries are HEADER and CHUNKS, as mapped
+     *  from a file, which is read-only iff READONLY. */
+    private TranspositionTable(LongBuffer header, LongBuffer[] chunks,
+                               boolean readOnly) {
+        int size = (int) header.get(SIZE_WORD);
+        _chunks = chunks;
+        _mask = 2 * size - 4;
+        _header = header;
+        _megabytes = (int) ((long) size * ENTRY_BYTES >> 20);
+        _generation = (int) header.get(GENERATION_WORD) & GENERATION_MASK;
+        _readOnly = readOnly;
+    }
+
+    /** Return the table in FILE, mapped into memory.  If FILE does not
+     *  exist, it is created to hold about MEGABYTES megabytes of entries;
+     *  otherwise, it keeps its size, and its entries are found by later
+     *  searches as if they had been made by an earlier search in this
+     *  run.  If FILE cannot be written, the table is read-only: it is
+     *  probed but never changed. */
+    static TranspositionTable open(File file, int megabytes)
+        throws IOException {
+        FlightEvents.Table event = new FlightEvents.Table();
+        event.begin();
+        boolean exists = file.exists();
+        boolean writable = !exists || Files.isWritable(file.toPath());
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE
+            : FileChannel.MapMode.READ_ONLY;
+        try (FileChannel channel = writable
+             ? FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.CREATE)
+             : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                if (exists && channel.size() > 0 || !writable) {
+                    throw new IOException("not a transposition table: "
+                                          + file);
+                }
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(1), HEADER_BYTES
+                              + ENTRY_BYTES * size(megabytes) - 1);
+                LongBuffer fresh = map(channel, mode, 0, HEADER_BYTES);
+                fresh.put(MAGIC_WORD, MAGIC);
+                fresh.put(SIZE_WORD, size(megabytes));
+            }
+            LongBuffer header = map(channel, mode, 0, HEADER_BYTES);
+            long size = header.get(SIZE_WORD);
+            if (header.get(MAGIC_WORD) != MAGIC || size < 2
+                || size > MAX_ENTRIES || Long.bitCount(size) != 1
+                || channel.size() != HEADER_BYTES + ENTRY_BYTES * size) {
+                throw new IOException("not a transposition table: "
+                                      + file);
+            }
+            LongBuffer[] chunks = new LongBuffer[chunks((int) size)];
+            for (int k = 0; k < chunks.length; k += 1) {
+                chunks[k] = map(channel, mode,
+                                HEADER_BYTES + (long) k * CHUNK_BYTES,
+                                chunkBytes((int) size, k));
+            }
+            TranspositionTable table =
+                new TranspositionTable(header, chunks, !writable);
+            table.record(event, "open");
+            return table;
+        }
+    }
+
+    /** Return the LENGTH bytes at POSITION in CHANNEL, mapped in MODE, as
+     *  longs in native order. */
+    private static LongBuffer map(FileChannel channel,
+                                  FileChannel.MapMode mode,
+                                  long position, int length)
+        throws IOException {
+        return channel.map(mode, position, length)
+            .order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    /** Return the number of entries in a table of about MEGABYTES
+     *  megabytes. */
+    private static int size(int megabytes) {
+        long entries = ((long) megabytes << 20) / ENTRY_BYTES;
+        return Integer.highestOneBit((int) Math.min(MAX_ENTRIES,
+                                                    Math.max(2, entries)));
+    }
+
+    /** Return the number of chunks holding SIZE entries. */
+    private static int chunks(int size) {
+        return (int) ((ENTRY_BYTES * size + CHUNK_BYTES - 1) / CHUNK_BYTES);
+    }
+
+    /** Return the length in bytes of chunk K of a table of SIZE
+     *  entries. */
+    private static int chunkBytes(int size, int k) {
+        return (int) Math.min(CHUNK_BYTES,
+                              ENTRY_BYTES * size - (long) k * CHUNK_BYTES);
+    }
+
+    /** Return the size of this table, in megabytes, as given to the
+     *  constructor or found in my file. */
+    int megabytes() {
+        return _megabytes;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        FlightEvents.Table event = new FlightEvents.Table();
+        event.begin();
+        if (!_readOnly) {
+            for (LongBuffer chunk : _chunks) {
+                for (int i = 0; i < chunk.capacity(); i += 1) {
+                    chunk.put(i, 0);
+                }
+            }
+            _generation = 0;
+            saveGeneration();
+        }
+        record(event, "clear");
+    }
+
+    /** Commit EVENT, begun before ACTION was done to me, if it is
+     *  enabled. */
+    private void record(FlightEvents.Table event, String action) {
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.megabytes = _megabytes;
+            event.commit();
+        }
+    }
+
+    /** Note the start of a new search, so that entries from earlier
+     *  searches are replaced first. */
+    void newSearch() {
+        _generation = (_generation + 1) & GENERATION_MASK;
+        saveGeneration();
+    }
+
+    /** Record the current generation in my file, if any, so that the
+     *  next run starts after it. */
+    private void saveGeneration() {
+        if (_header != null && !_readOnly) {
+            _header.put(GENERATION_WORD, _generation);
+        }
+    }
+
+    /** Return the entry stored for KEY, or 0 if there is none.  Use the
+     *  static methods below to unpack it. */
+    long probe(long key) {
+        int slot = slot(key);
+        LongBuffer chunk = _chunks[slot >>> CHUNK_SHIFT];
+        slot &= CHUNK_MASK;
+        for (int i = slot; i < slot + 4; i += 2) {
+            long data = chunk.get(i + 1);
+            if ((chunk.get(i) ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /** Record that the position with key KEY, searched to depth DEPTH,
+     *  has a value bounded by VALUE as indicated by BOUND, and that MOVE
+     *  (possibly null) was the best move found.  Does nothing if I am
+     *  read-only. */
+    void store(long key, int depth, int value, int bound, Move move) {
+        if (_readOnly) {
+            return;
+        }
+        long data = ((long) value << VALUE_SHIFT)
+            | ((long) _generation << GENERATION_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+            | (move == null ? 0 : move.index() + 1);
+        int slot = slot(key);
+        LongBuffer chunk = _chunks[slot >>> CHUNK_SHIFT];
+        slot &= CHUNK_MASK;
+        int victim = slot;
+        for (int i = slot; i < slot + 4; i += 2) {
+            long old = chunk.get(i + 1);
+            if ((chunk.get(i) ^ old) == key || old == 0) {
+                victim = i;
+                break;
+            }
+            long other = chunk.get(victim + 1);
+            if (generation(old) != _generation
+                && generation(other) == _generation) {
+                victim = i;
+            } else if (generation(old) == generation(other)
+                       && depth(old) < depth(other)) {
+                victim = i;
+            }
+        }
+        chunk.put(victim, key ^ data);
+        chunk.put(victim + 1, data);
+    }
+
+    /** Return the value recorded in ENTRY. */
+    static int value(long entry) {
+        return (int) (entry >> VALUE_SHIFT);
+    }
+
+    /** Return the depth recorded in ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the kind of bound (EXACT, LOWER, or UPPER) recorded in
+     *  ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the best move recorded in ENTRY, or null if none. */
+    static Move move(long entry) {
+        int index = (int) entry & MOVE_MASK;
+        return index == 0 ? null : Move.get(index - 1);
+    }
+
+    /** Return the search generation recorded in ENTRY. */
+    private static int generation(long entry) {
+        return (int) (entry >>> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+
+    /** Return the index of the first word of the set for KEY, counting
+     *  the words of all my chunks in order. */
+    private int slot(long key) {
+        return (int) (key >>> 32) & _mask;
+    }
+
+    /* Layout of a data word, from the low-order bit: the move index plus
+     * one (0 for none), the depth, the bound, the generation, and the
+     * value. */
+
+    /** Width mask of the move field. */
+    private static final int MOVE_MASK = 0xFFFF;
+    /** Position and width mask of the depth field. */
+    private static final int DEPTH_SHIFT = 16, DEPTH_MASK = 0xFF;
+    /** Position and width mask of the bound field. */
+    private static final int BOUND_SHIFT = 24, BOUND_MASK = 3;
+    /** Position and width mask of the generation field. */
+    private static final int GENERATION_SHIFT = 26, GENERATION_MASK = 0x3F;
+    /** Position of the value field. */
+    private static final int VALUE_SHIFT = 32;
+
+    /** Bytes per entry. */
+    private static final long ENTRY_BYTES = 16;
+    /** Largest number of entries. */
+    private static final int MAX_ENTRIES = 1 << 29;
+    /** Log2 of the number of words in a chunk, and a mask for the index
+     *  of a word within its chunk.  Sets never straddle chunks. */
+    private static final int CHUNK_SHIFT = 27,
+        CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    /** Bytes in a full chunk. */
+    private static final long CHUNK_BYTES = 8L << CHUNK_SHIFT;
+
+    /* A table file is a header of HEADER_BYTES, of which the first
+     * words are MAGIC, the number of entries, and the generation of the
+     * latest search, followed by the words of the entries. */
+
+    /** Identifies table files, and their format. */
+    private static final long MAGIC = 0x4c4f4154540001L;
+    /** Bytes before the first entry of a table file (one page, so
+     *  that the entries are page-aligned). */
+    private static final int HEADER_BYTES = 4096;
+    /** Indices of the header words. */
+    private static final int MAGIC_WORD = 0, SIZE_WORD = 1,
+        GENERATION_WORD = 2;
+
+    /** Pairs of words (key ^ data, data), in chunks of at most
+     *  CHUNK_BYTES bytes, since a buffer holds at most 2**31 bytes. */
+    private final LongBuffer[] _chunks;
+    /** Mask selecting the index of a set from a key. */
+    private final int _mask;
+    /** My file's header, or null if I have no file. */
+    private final LongBuffer _header;
+    /** True iff I am never to be changed. */
+    private final boolean _readOnly;
+    /** Size requested or found, in megabytes. */
+    private final int _megabytes;
+    /** Generation of the current search. */
+    private int _generation;
+
+}
@@ -13,7 +13,8 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(BoardTest.class, UnitTest.class);
+        textui.runClasses(BoardTest.class, EngineTest.class,
+                          UnitTest.class);
     }
 
     /** A dummy test to avoid complaint. */
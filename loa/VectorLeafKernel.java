@@ -0,0 +1,45 @@
+package loa;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A LeafKernel that scores as many children at once as there are int
+ *  lanes in the machine's preferred vector shape (8 with AVX2).  It uses
+ *  the jdk.incubator.vector module, so it is loaded only by reflection
+ *  (see LeafBatch.KERNEL), and only if that module is present.
+ *  @author Peter Lee
+ */
+final class VectorLeafKernel implements LeafKernel {
+
+    @Override
+    public void score(LeafBatch batch, int first, int last) {
+        int lanes = SPECIES.length();
+        int i;
+        for (i = first; i + lanes <= last; i += lanes) {
+            IntVector c0 = IntVector.fromArray(SPECIES, batch.centerCols, i),
+                r0 = IntVector.fromArray(SPECIES, batch.centerRows, i);
+            IntVector total = IntVector.zero(SPECIES);
+            for (int j = 0; j < batch.pieces; j += 1) {
+                int k = j * LeafBatch.SIZE + i;
+                IntVector dc =
+                    IntVector.fromArray(SPECIES, batch.cols, k).sub(c0).abs(),
+                    dr =
+                    IntVector.fromArray(SPECIES, batch.rows, k).sub(r0).abs();
+                total = total.add(dc.max(dr));
+            }
+            IntVector groups =
+                IntVector.fromArray(SPECIES, batch.moverGroups, i)
+                .sub(IntVector.fromArray(SPECIES, batch.otherGroups, i));
+            total.sub(IntVector.fromArray(SPECIES, batch.otherSpread, i))
+                .mul(MachinePlayer.SPREAD_WEIGHT)
+                .add(groups.mul(MachinePlayer.GROUP_WEIGHT))
+                .intoArray(batch.values, i);
+        }
+        LeafBatch.SCALAR.score(batch, i, last);
+    }
+
+    /** Shape of the vectors. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+}